@@ -0,0 +1,190 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package org.serverless.workflow.impl.actions;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.serverless.workflow.api.WorkflowManager;
+import org.serverless.workflow.api.actions.Action;
+import org.serverless.workflow.api.events.Event;
+import org.serverless.workflow.api.events.TriggerEvent;
+import org.serverless.workflow.api.states.EventState;
+import org.serverless.workflow.impl.utils.WorkflowUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class ActionDispatcher {
+
+    private final ActionExecutor actionExecutor;
+    private final ExecutorService executorService;
+
+    private static Logger logger = LoggerFactory.getLogger(ActionDispatcher.class);
+
+    public ActionDispatcher(ActionExecutor actionExecutor,
+                            ExecutorService executorService) {
+        if (actionExecutor == null) {
+            throw new IllegalArgumentException("Action executor must not be null");
+        }
+        if (executorService == null) {
+            throw new IllegalArgumentException("Executor service must not be null");
+        }
+        this.actionExecutor = actionExecutor;
+        this.executorService = executorService;
+    }
+
+    public List<ActionResult> dispatch(Event event) {
+        if (event.getActions() == null || event.getActions().isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        if (event.getActionMode() == Event.ActionMode.PARALLEL) {
+            return dispatchParallel(event.getActions());
+        }
+
+        return dispatchSequential(event.getActions());
+    }
+
+    public List<ActionResult> dispatch(EventState eventState,
+                                       TriggerEvent triggerEvent,
+                                       WorkflowManager workflowManager) {
+        List<ActionResult> results = new ArrayList<>();
+        for (Event event : eventState.getEvents()) {
+            if (workflowManager.getExpressionEvaluator().evaluate(event.getEventExpression(),
+                                                                  triggerEvent)) {
+                results.addAll(dispatch(event));
+            }
+        }
+        return results;
+    }
+
+    public List<ActionResult> dispatchSequential(List<Action> actions) {
+        List<ActionResult> results = new ArrayList<>(actions.size());
+        for (Action action : actions) {
+            ActionResult result;
+            if (WorkflowUtils.getDuration(action.getTimeout()) == null) {
+                result = execute(action,
+                                 Long.MAX_VALUE);
+            } else {
+                long deadline = deadline(action,
+                                         System.nanoTime());
+                result = await(action,
+                               submit(action,
+                                      deadline),
+                               deadline);
+            }
+            results.add(result);
+
+            // sequential actions depend on their predecessors, so stop at the first one that did not complete
+            if (!result.isCompleted()) {
+                break;
+            }
+        }
+        return results;
+    }
+
+    public List<ActionResult> dispatchParallel(List<Action> actions) {
+        long start = System.nanoTime();
+
+        long[] deadlines = new long[actions.size()];
+        List<Future<ActionResult>> futures = new ArrayList<>(actions.size());
+        for (int i = 0; i < actions.size(); i++) {
+            deadlines[i] = deadline(actions.get(i),
+                                    start);
+            futures.add(submit(actions.get(i),
+                               deadlines[i]));
+        }
+
+        // timeouts are measured from the common start, so the whole batch finishes in max(latency)
+        List<ActionResult> results = new ArrayList<>(actions.size());
+        for (int i = 0; i < actions.size(); i++) {
+            results.add(await(actions.get(i),
+                              futures.get(i),
+                              deadlines[i]));
+        }
+        return results;
+    }
+
+    private Future<ActionResult> submit(Action action,
+                                        long deadline) {
+        return executorService.submit(() -> execute(action,
+                                                    deadline));
+    }
+
+    private ActionResult execute(Action action,
+                                 long deadline) {
+        try {
+            Object result = actionExecutor.execute(action);
+            // an action finishing after its deadline is still a timeout, even if nobody was waiting on it yet
+            if (deadline != Long.MAX_VALUE && System.nanoTime() - deadline > 0) {
+                return ActionResult.timedOut(action);
+            }
+            return ActionResult.completed(action,
+                                          result);
+        } catch (Exception e) {
+            return ActionResult.failed(action,
+                                       e);
+        }
+    }
+
+    private ActionResult await(Action action,
+                               Future<ActionResult> future,
+                               long deadline) {
+        try {
+            if (deadline == Long.MAX_VALUE) {
+                return future.get();
+            }
+
+            return future.get(Math.max(0L,
+                                       deadline - System.nanoTime()),
+                              TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            logger.debug("Action {} timed out after {}",
+                         functionName(action),
+                         action.getTimeout());
+            return ActionResult.timedOut(action);
+        } catch (ExecutionException e) {
+            return ActionResult.failed(action,
+                                       e.getCause());
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            return ActionResult.failed(action,
+                                       e);
+        }
+    }
+
+    private static long deadline(Action action,
+                                 long start) {
+        Duration timeout = WorkflowUtils.getDuration(action.getTimeout());
+        return timeout == null ? Long.MAX_VALUE : start + timeout.toNanos();
+    }
+
+    private static String functionName(Action action) {
+        return action.getFunction() == null ? null : action.getFunction().getName();
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package org.serverless.workflow.impl.actions;
+
+import org.serverless.workflow.api.actions.Action;
+
+public class ActionResult {
+
+    public enum Status {
+        COMPLETED,
+        FAILED,
+        TIMED_OUT
+    }
+
+    private final Action action;
+    private final Status status;
+    private final Object result;
+    private final Throwable error;
+
+    private ActionResult(Action action,
+                         Status status,
+                         Object result,
+                         Throwable error) {
+        this.action = action;
+        this.status = status;
+        this.result = result;
+        this.error = error;
+    }
+
+    public static ActionResult completed(Action action,
+                                         Object result) {
+        return new ActionResult(action,
+                                Status.COMPLETED,
+                                result,
+                                null);
+    }
+
+    public static ActionResult failed(Action action,
+                                      Throwable error) {
+        return new ActionResult(action,
+                                Status.FAILED,
+                                null,
+                                error);
+    }
+
+    public static ActionResult timedOut(Action action) {
+        return new ActionResult(action,
+                                Status.TIMED_OUT,
+                                null,
+                                null);
+    }
+
+    public Action getAction() {
+        return action;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public Object getResult() {
+        return result;
+    }
+
+    public Throwable getError() {
+        return error;
+    }
+
+    public boolean isCompleted() {
+        return status == Status.COMPLETED;
+    }
+}
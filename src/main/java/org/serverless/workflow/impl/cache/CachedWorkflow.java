@@ -0,0 +1,57 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package org.serverless.workflow.impl.cache;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.serverless.workflow.api.Workflow;
+import org.serverless.workflow.api.validation.ValidationError;
+
+public class CachedWorkflow {
+
+    private final Workflow workflow;
+    private final List<ValidationError> validationErrors;
+    private final boolean fromCache;
+
+    public CachedWorkflow(Workflow workflow,
+                          List<ValidationError> validationErrors,
+                          boolean fromCache) {
+        this.workflow = workflow;
+        this.validationErrors = Collections.unmodifiableList(validationErrors);
+        this.fromCache = fromCache;
+    }
+
+    public Workflow getWorkflow() {
+        return workflow;
+    }
+
+    public List<ValidationError> getValidationErrors() {
+        return validationErrors;
+    }
+
+    public boolean isValid() {
+        return validationErrors.isEmpty();
+    }
+
+    public boolean isFromCache() {
+        return fromCache;
+    }
+}
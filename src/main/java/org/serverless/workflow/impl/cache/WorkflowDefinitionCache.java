@@ -0,0 +1,257 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package org.serverless.workflow.impl.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.serverless.workflow.api.Workflow;
+import org.serverless.workflow.api.WorkflowPropertySource;
+import org.serverless.workflow.api.WorkflowValidator;
+import org.serverless.workflow.api.validation.ValidationError;
+import org.serverless.workflow.impl.manager.WorkflowManagerImpl;
+import org.serverless.workflow.impl.utils.WorkflowUtils;
+import org.serverless.workflow.impl.validator.WorkflowValidatorImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * On-disk cache of parsed and validated workflow definitions.
+ * <p>
+ * Entries are keyed by the SHA-256 of the library version, the manager configuration that affects parsing and
+ * validation (properties resolved into placeholders, registered extensions and validator settings) and the
+ * markup, and hold the Smile encoded workflow together with its validation errors, so unchanged definitions
+ * skip parsing and validation on restart. Expression evaluators and runtime indexes hold no serializable state and are rebuilt
+ * from the loaded workflow.
+ */
+public class WorkflowDefinitionCache {
+
+    private static final int MAGIC = 0x57464443;
+    private static final String ENTRY_SUFFIX = ".wfc";
+
+    private final Path directory;
+    private final String version;
+    private final WorkflowManagerImpl workflowManager;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private static Logger logger = LoggerFactory.getLogger(WorkflowDefinitionCache.class);
+
+    public WorkflowDefinitionCache(Path directory,
+                                   WorkflowManagerImpl workflowManager) throws IOException {
+        this(directory,
+             workflowManager,
+             getLibraryVersion());
+    }
+
+    public WorkflowDefinitionCache(Path directory,
+                                   WorkflowManagerImpl workflowManager,
+                                   String version) throws IOException {
+        this.directory = directory;
+        this.workflowManager = workflowManager;
+        this.version = version;
+        Files.createDirectories(directory);
+    }
+
+    public CachedWorkflow load(String markup) {
+        Path entry = directory.resolve(getKey(markup) + ENTRY_SUFFIX);
+        if (Files.exists(entry)) {
+            try {
+                CachedWorkflow cachedWorkflow = read(entry);
+                hits.incrementAndGet();
+                return cachedWorkflow;
+            } catch (Exception e) {
+                logger.warn("Ignoring invalid cache entry {}: {}",
+                            entry,
+                            e.getMessage());
+            }
+        }
+
+        misses.incrementAndGet();
+        Workflow workflow = workflowManager.toWorkflow(markup);
+        CachedWorkflow cachedWorkflow = new CachedWorkflow(workflow,
+                                                           new ArrayList<>(workflowManager.validate(workflow)),
+                                                           false);
+        byte[] binary = workflowManager.toBinary(workflow);
+
+        if (binary != null) {
+            try {
+                write(entry,
+                      binary,
+                      cachedWorkflow.getValidationErrors());
+            } catch (IOException e) {
+                logger.warn("Unable to write cache entry {}: {}",
+                            entry,
+                            e.getMessage());
+            }
+        }
+        return cachedWorkflow;
+    }
+
+    public void evict(String markup) throws IOException {
+        Files.deleteIfExists(directory.resolve(getKey(markup) + ENTRY_SUFFIX));
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public String getKey(String markup) {
+        return WorkflowUtils.getSha256(version,
+                                       getConfiguration(),
+                                       markup);
+    }
+
+    private String getConfiguration() {
+        StringBuilder configuration = new StringBuilder();
+        WorkflowPropertySource workflowPropertySource = workflowManager.getWorkflowPropertySource();
+        if (workflowPropertySource != null && workflowPropertySource.getPropertySource() != null) {
+            Properties properties = workflowPropertySource.getPropertySource();
+            Map<String, String> sortedProperties = new TreeMap<>();
+            for (String name : properties.stringPropertyNames()) {
+                sortedProperties.put(name,
+                                     properties.getProperty(name));
+            }
+            configuration.append("properties=").append(sortedProperties);
+        }
+
+        configuration.append(";extensions=");
+        workflowManager.getRegisteredExtensions().forEach((extensionId, extensionClass) -> configuration.append(extensionId)
+                .append('=')
+                .append(extensionClass.getName())
+                .append(','));
+
+        configuration.append(";lazyStates=").append(workflowManager.isLazyStates())
+                .append(",lazyExtensions=").append(workflowManager.isLazyExtensions())
+                .append(",stringDeduplication=").append(workflowManager.isStringDeduplication());
+
+        WorkflowValidator workflowValidator = workflowManager.getWorkflowValidator();
+        configuration.append(";validator=").append(workflowValidator.getClass().getName());
+        if (workflowValidator instanceof WorkflowValidatorImpl) {
+            WorkflowValidatorImpl validator = (WorkflowValidatorImpl) workflowValidator;
+            configuration.append(",enabled=").append(validator.isEnabled())
+                    .append(",schema=").append(validator.isSchemaValidationEnabled())
+                    .append(",strict=").append(validator.isStrictValidationEnabled())
+                    .append(",expressions=").append(validator.isExpressionCompilationEnabled());
+            if (validator.isExpressionCompilationEnabled() && workflowManager.getExpressionEvaluator() != null) {
+                configuration.append(',').append(workflowManager.getExpressionEvaluator().getName());
+            }
+        }
+        return configuration.toString();
+    }
+
+    private CachedWorkflow read(Path entry) throws IOException {
+        try (FileChannel channel = FileChannel.open(entry,
+                                                    StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                                                  0,
+                                                  channel.size());
+            try {
+                if (buffer.getInt() != MAGIC) {
+                    throw new IllegalStateException("Not a workflow cache entry");
+                }
+                byte[] binary = new byte[buffer.getInt()];
+                buffer.get(binary);
+
+                int errorCount = buffer.getInt();
+                List<ValidationError> validationErrors = new ArrayList<>(errorCount);
+                for (int i = 0; i < errorCount; i++) {
+                    ValidationError validationError = new ValidationError();
+                    validationError.setType(readString(buffer));
+                    validationError.setMessage(readString(buffer));
+                    validationErrors.add(validationError);
+                }
+
+                Workflow workflow = workflowManager.fromBinary(binary);
+                return new CachedWorkflow(workflow,
+                                          validationErrors,
+                                          true);
+            } catch (BufferUnderflowException | NegativeArraySizeException e) {
+                throw new IllegalStateException("Truncated cache entry");
+            }
+        }
+    }
+
+    private void write(Path entry,
+                       byte[] binary,
+                       List<ValidationError> validationErrors) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(binary.length + 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(binary.length);
+        out.write(binary);
+        out.writeInt(validationErrors.size());
+        for (ValidationError validationError : validationErrors) {
+            writeString(out,
+                        validationError.getType());
+            writeString(out,
+                        validationError.getMessage());
+        }
+
+        // write aside and move so concurrent loaders never map a partial entry
+        Path temp = Files.createTempFile(directory,
+                                         entry.getFileName().toString(),
+                                         ".tmp");
+        Files.write(temp,
+                    bytes.toByteArray());
+        Files.move(temp,
+                   entry,
+                   StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeString(DataOutputStream out,
+                                    String value) throws IOException {
+        byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(MappedByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes,
+                          StandardCharsets.UTF_8);
+    }
+
+    private static String getLibraryVersion() {
+        String version = WorkflowDefinitionCache.class.getPackage().getImplementationVersion();
+        return version == null ? "development" : version;
+    }
+}
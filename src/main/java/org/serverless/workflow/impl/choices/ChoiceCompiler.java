@@ -0,0 +1,347 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package org.serverless.workflow.impl.choices;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonPointer;
+import org.serverless.workflow.api.choices.AndChoice;
+import org.serverless.workflow.api.choices.DefaultChoice;
+import org.serverless.workflow.api.choices.NotChoice;
+import org.serverless.workflow.api.choices.OrChoice;
+import org.serverless.workflow.api.choices.SingleChoice;
+import org.serverless.workflow.api.interfaces.Choice;
+import org.serverless.workflow.api.states.SwitchState;
+
+/**
+ * Merges the single, and, or and not choices of a switch state into one {@link CompiledSwitch}.
+ * <p>
+ * Paths are json paths into the state data ({@code $.customer.age}, {@code items[0].id} or {@code name}).
+ * Values that are numbers on both sides compare as numbers, anything else as text.
+ */
+public final class ChoiceCompiler {
+
+    private ChoiceCompiler() {
+    }
+
+    public static CompiledSwitch compile(SwitchState switchState) {
+        Builder builder = new Builder();
+        if (switchState.getChoices() != null) {
+            for (Choice choice : switchState.getChoices()) {
+                builder.addChoice(choice);
+            }
+        }
+        return builder.build(switchState.getDefault());
+    }
+
+    // rejects paths that toPointer would silently misread, such as "a..b", "a[0" or "a[]"
+    public static void checkPath(String path) {
+        if (path == null || path.trim().isEmpty()) {
+            throw new IllegalArgumentException("empty path");
+        }
+        String trimmed = path.trim();
+        if (trimmed.startsWith("$")) {
+            trimmed = trimmed.substring(1);
+        }
+        boolean inBrackets = false;
+        boolean closed = false;
+        boolean segmentEmpty = trimmed.startsWith(".");
+        for (int i = 0; i < trimmed.length(); i++) {
+            char c = trimmed.charAt(i);
+            if (c == '[' || c == '.') {
+                if (inBrackets || (segmentEmpty && i > 0 && c == '.')) {
+                    throw new IllegalArgumentException("unexpected '" + c + "' at " + i);
+                }
+                inBrackets = c == '[';
+                closed = false;
+                segmentEmpty = true;
+            } else if (c == ']') {
+                if (!inBrackets || segmentEmpty) {
+                    throw new IllegalArgumentException("unexpected ']' at " + i);
+                }
+                inBrackets = false;
+                closed = true;
+            } else if (closed) {
+                throw new IllegalArgumentException("unexpected '" + c + "' at " + i);
+            } else {
+                segmentEmpty = false;
+            }
+        }
+        if (inBrackets || (segmentEmpty && !trimmed.isEmpty())) {
+            throw new IllegalArgumentException("incomplete path");
+        }
+    }
+
+    // converts "$.a.b[0]", "a.b[0]" and "$" to the json pointers "/a/b/0" and ""
+    static JsonPointer toPointer(String path) {
+        if (path == null) {
+            return JsonPointer.compile("");
+        }
+        String trimmed = path.trim();
+        if (trimmed.startsWith("$")) {
+            trimmed = trimmed.substring(1);
+        }
+        StringBuilder pointer = new StringBuilder();
+        for (String segment : trimmed.replace("[",
+                                              ".").replace("]",
+                                                           "").split("\\.")) {
+            if (!segment.isEmpty()) {
+                pointer.append('/').append(segment.replace("~",
+                                                           "~0").replace("/",
+                                                                         "~1"));
+            }
+        }
+        return JsonPointer.compile(pointer.toString());
+    }
+
+    private static class Builder {
+
+        final Map<String, Integer> pathIndexes = new HashMap<>();
+        final List<JsonPointer> paths = new ArrayList<>();
+        final List<Map<Object, Integer>> equalityConditions = new ArrayList<>();
+        final Map<List<Object>, Integer> conditionIndexes = new HashMap<>();
+        final List<Integer> conditionPaths = new ArrayList<>();
+        final List<ChoiceOperator> conditionOperators = new ArrayList<>();
+        final List<Object> conditionValues = new ArrayList<>();
+        final List<Byte> choiceKinds = new ArrayList<>();
+        final List<int[]> choiceConditions = new ArrayList<>();
+        final List<String> nextStates = new ArrayList<>();
+
+        void addChoice(Choice choice) {
+            if (choice instanceof SingleChoice) {
+                SingleChoice singleChoice = (SingleChoice) choice;
+                addChoice(CompiledSwitch.ALL,
+                          new int[]{addCondition(singleChoice.getPath(),
+                                                 singleChoice.getOperator(),
+                                                 singleChoice.getValue())},
+                          singleChoice.getNextState());
+            } else if (choice instanceof AndChoice) {
+                AndChoice andChoice = (AndChoice) choice;
+                addChoice(CompiledSwitch.ALL,
+                          addConditions(andChoice.getAnd()),
+                          andChoice.getNextState());
+            } else if (choice instanceof OrChoice) {
+                OrChoice orChoice = (OrChoice) choice;
+                addChoice(CompiledSwitch.ANY,
+                          addConditions(orChoice.getOr()),
+                          orChoice.getNextState());
+            } else if (choice instanceof NotChoice) {
+                NotChoice notChoice = (NotChoice) choice;
+                if (notChoice.getNot() == null) {
+                    throw new IllegalArgumentException("Not choice without a condition");
+                }
+                addChoice(CompiledSwitch.NONE,
+                          addConditions(Collections.singletonList(notChoice.getNot())),
+                          notChoice.getNextState());
+            } else if (choice instanceof DefaultChoice) {
+                addChoice(CompiledSwitch.ALL,
+                          addConditions(Collections.singletonList((DefaultChoice) choice)),
+                          null);
+            } else {
+                throw new IllegalArgumentException("Unsupported choice: " + choice);
+            }
+        }
+
+        void addChoice(byte kind,
+                       int[] conditions,
+                       String nextState) {
+            choiceKinds.add(kind);
+            choiceConditions.add(conditions);
+            nextStates.add(nextState);
+        }
+
+        int[] addConditions(List<DefaultChoice> defaultChoices) {
+            if (defaultChoices == null) {
+                return new int[0];
+            }
+            // repeated conditions of a choice are tested once
+            return defaultChoices.stream()
+                    .mapToInt(c -> addCondition(c.getPath(),
+                                                c.getOperator(),
+                                                c.getValue()))
+                    .distinct()
+                    .toArray();
+        }
+
+        int addCondition(String path,
+                         Object operator,
+                         String value) {
+            if (operator == null) {
+                throw new IllegalArgumentException("Choice condition on " + path + " has no operator");
+            }
+            int pathIndex = addPath(path);
+            ChoiceOperator choiceOperator = ChoiceOperator.fromString(operator.toString());
+            Object key = CompiledSwitch.toKey(value);
+            return conditionIndexes.computeIfAbsent(Arrays.asList(pathIndex,
+                                                                  choiceOperator,
+                                                                  key),
+                                                    k -> {
+                                                        int condition = conditionPaths.size();
+                                                        conditionPaths.add(pathIndex);
+                                                        conditionOperators.add(choiceOperator);
+                                                        conditionValues.add(key);
+                                                        if (choiceOperator == ChoiceOperator.EQUALS && key != null) {
+                                                            equalityConditions.get(pathIndex).put(key,
+                                                                                                  condition);
+                                                        }
+                                                        return condition;
+                                                    });
+        }
+
+        int addPath(String path) {
+            JsonPointer pointer = toPointer(path);
+            return pathIndexes.computeIfAbsent(pointer.toString(),
+                                               p -> {
+                                                   paths.add(pointer);
+                                                   equalityConditions.add(new HashMap<>());
+                                                   return paths.size() - 1;
+                                               });
+        }
+
+        CompiledSwitch build(String defaultState) {
+            int choiceCount = choiceKinds.size();
+            int conditionCount = conditionPaths.size();
+
+            // the path that the most all-of choices require a value for
+            int[] requiringChoices = new int[paths.size()];
+            for (int choice = 0; choice < choiceCount; choice++) {
+                if (choiceKinds.get(choice) == CompiledSwitch.ALL) {
+                    boolean[] counted = new boolean[paths.size()];
+                    for (int condition : choiceConditions.get(choice)) {
+                        int path = conditionPaths.get(condition);
+                        if (isEquality(condition) && !counted[path]) {
+                            counted[path] = true;
+                            requiringChoices[path]++;
+                        }
+                    }
+                }
+            }
+            int dispatchPath = -1;
+            for (int path = 0; path < requiringChoices.length; path++) {
+                if (requiringChoices[path] > 1 && (dispatchPath == -1 || requiringChoices[path] > requiringChoices[dispatchPath])) {
+                    dispatchPath = path;
+                }
+            }
+
+            // candidates for each value at the dispatch path: the choices requiring it and those that do not
+            // constrain the path, in choice order
+            List<List<Integer>> candidates = new ArrayList<>(Collections.nCopies(conditionCount,
+                                                                                 (List<Integer>) null));
+            List<Integer> others = new ArrayList<>();
+            if (dispatchPath != -1) {
+                for (int condition : equalityConditions.get(dispatchPath).values()) {
+                    candidates.set(condition,
+                                   new ArrayList<>());
+                }
+            }
+            for (int choice = 0; choice < choiceCount; choice++) {
+                int required = getRequiredCondition(choice,
+                                                    dispatchPath);
+                if (required != -1) {
+                    candidates.get(required).add(choice);
+                } else {
+                    others.add(choice);
+                    for (List<Integer> conditionCandidates : candidates) {
+                        if (conditionCandidates != null) {
+                            conditionCandidates.add(choice);
+                        }
+                    }
+                }
+            }
+
+            int[][] dispatchCandidates = new int[conditionCount][];
+            for (int condition = 0; condition < conditionCount; condition++) {
+                if (candidates.get(condition) != null) {
+                    dispatchCandidates[condition] = toArray(candidates.get(condition));
+                }
+            }
+
+            int[][] orderedChoiceConditions = new int[choiceCount][];
+            for (int choice = 0; choice < choiceCount; choice++) {
+                orderedChoiceConditions[choice] = orderConditions(choiceConditions.get(choice),
+                                                                  dispatchPath);
+            }
+
+            byte[] kinds = new byte[choiceCount];
+            for (int choice = 0; choice < choiceCount; choice++) {
+                kinds[choice] = choiceKinds.get(choice);
+            }
+
+            return new CompiledSwitch(paths.toArray(new JsonPointer[0]),
+                                      equalityConditions,
+                                      toArray(conditionPaths),
+                                      conditionOperators.toArray(new ChoiceOperator[0]),
+                                      conditionValues.toArray(),
+                                      kinds,
+                                      orderedChoiceConditions,
+                                      nextStates.toArray(new String[0]),
+                                      defaultState,
+                                      dispatchPath,
+                                      dispatchCandidates,
+                                      toArray(others));
+        }
+
+        boolean isEquality(int condition) {
+            return conditionOperators.get(condition) == ChoiceOperator.EQUALS && conditionValues.get(condition) != null;
+        }
+
+        // the equality condition on the dispatch path an all-of choice cannot match without, -1 if none
+        int getRequiredCondition(int choice,
+                                 int dispatchPath) {
+            if (dispatchPath != -1 && choiceKinds.get(choice) == CompiledSwitch.ALL) {
+                for (int condition : choiceConditions.get(choice)) {
+                    if (conditionPaths.get(condition) == dispatchPath && isEquality(condition)) {
+                        return condition;
+                    }
+                }
+            }
+            return -1;
+        }
+
+        // dispatch path first as it is already decided, then equality lookups, then ordered comparisons
+        int[] orderConditions(int[] conditions,
+                              int dispatchPath) {
+            return Arrays.stream(conditions)
+                    .boxed()
+                    .sorted((a, b) -> Integer.compare(getCost(a,
+                                                              dispatchPath),
+                                                      getCost(b,
+                                                              dispatchPath)))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+        }
+
+        int getCost(int condition,
+                    int dispatchPath) {
+            if (conditionPaths.get(condition) == dispatchPath) {
+                return 0;
+            }
+            return conditionOperators.get(condition) == ChoiceOperator.EQUALS ? 1 : 2;
+        }
+
+        static int[] toArray(List<Integer> values) {
+            return values.stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package org.serverless.workflow.impl.choices;
+
+import java.util.Locale;
+
+public enum ChoiceOperator {
+    EQUALS,
+    LESS_THAN,
+    LESS_THAN_EQUALS,
+    GREATER_THAN,
+    GREATER_THAN_EQUALS;
+
+    // accepts the markup form ("LessThan"), the enum form ("LESS_THAN") and any case of either
+    public static ChoiceOperator fromString(String operator) {
+        if (operator != null) {
+            String normalized = operator.replace("_",
+                                                 "").toLowerCase(Locale.ROOT);
+            for (ChoiceOperator choiceOperator : values()) {
+                if (choiceOperator.name().replace("_",
+                                                  "").toLowerCase(Locale.ROOT).equals(normalized)) {
+                    return choiceOperator;
+                }
+            }
+        }
+        throw new IllegalArgumentException("Unknown choice operator: " + operator);
+    }
+
+    boolean test(int comparison) {
+        switch (this) {
+            case EQUALS:
+                return comparison == 0;
+            case LESS_THAN:
+                return comparison < 0;
+            case LESS_THAN_EQUALS:
+                return comparison <= 0;
+            case GREATER_THAN:
+                return comparison > 0;
+            default:
+                return comparison >= 0;
+        }
+    }
+}
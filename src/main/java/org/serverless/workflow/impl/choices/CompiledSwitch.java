@@ -0,0 +1,260 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package org.serverless.workflow.impl.choices;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Choices of a switch state compiled by {@link ChoiceCompiler}.
+ * <p>
+ * Conditions with the same path, operator and value are shared between choices and evaluated at most once
+ * per decision, and each path is read from the data at most once. All equality conditions on a path are
+ * decided by a single hash lookup, and when many choices require a value at the same path that lookup
+ * selects the only choices that can still match, in their original order. Instances are immutable and
+ * thread safe.
+ */
+public class CompiledSwitch {
+
+    static final byte ALL = 0;
+    static final byte ANY = 1;
+    static final byte NONE = 2;
+
+    private static final int UNKNOWN = -2;
+    private static final int NO_MATCH = -1;
+    private static final byte FALSE = 1;
+    private static final byte TRUE = 2;
+
+    private final JsonPointer[] paths;
+    private final List<Map<Object, Integer>> equalityConditions;
+    private final int[] conditionPaths;
+    private final ChoiceOperator[] conditionOperators;
+    private final Object[] conditionValues;
+    private final byte[] choiceKinds;
+    private final int[][] choiceConditions;
+    private final String[] nextStates;
+    private final String defaultState;
+    private final int dispatchPath;
+    private final int[][] dispatchCandidates;
+    private final int[] otherCandidates;
+
+    CompiledSwitch(JsonPointer[] paths,
+                   List<Map<Object, Integer>> equalityConditions,
+                   int[] conditionPaths,
+                   ChoiceOperator[] conditionOperators,
+                   Object[] conditionValues,
+                   byte[] choiceKinds,
+                   int[][] choiceConditions,
+                   String[] nextStates,
+                   String defaultState,
+                   int dispatchPath,
+                   int[][] dispatchCandidates,
+                   int[] otherCandidates) {
+        this.paths = paths;
+        this.equalityConditions = equalityConditions;
+        this.conditionPaths = conditionPaths;
+        this.conditionOperators = conditionOperators;
+        this.conditionValues = conditionValues;
+        this.choiceKinds = choiceKinds;
+        this.choiceConditions = choiceConditions;
+        this.nextStates = nextStates;
+        this.defaultState = defaultState;
+        this.dispatchPath = dispatchPath;
+        this.dispatchCandidates = dispatchCandidates;
+        this.otherCandidates = otherCandidates;
+    }
+
+    // next-state of the first matching choice, or the default
+    public String getNextState(JsonNode data) {
+        int choice = getMatchingChoice(data);
+        return choice == NO_MATCH ? defaultState : nextStates[choice];
+    }
+
+    // index of the first matching choice, -1 when the default applies
+    public int getMatchingChoice(JsonNode data) {
+        return new Evaluation(data).getMatchingChoice();
+    }
+
+    // number of value comparisons and lookups needed to decide the data
+    public int getComparisons(JsonNode data) {
+        Evaluation evaluation = new Evaluation(data);
+        evaluation.getMatchingChoice();
+        return evaluation.comparisons;
+    }
+
+    public int getChoiceCount() {
+        return choiceKinds.length;
+    }
+
+    // distinct conditions after sharing
+    public int getConditionCount() {
+        return conditionPaths.length;
+    }
+
+    public int getPathCount() {
+        return paths.length;
+    }
+
+    public String getDefaultState() {
+        return defaultState;
+    }
+
+    // the path whose value selects the candidate choices, null when the choices do not share one
+    public String getDispatchPath() {
+        return dispatchPath == NO_MATCH ? null : paths[dispatchPath].toString();
+    }
+
+    static Object toKey(String value) {
+        if (value != null && !value.isEmpty()) {
+            char first = value.charAt(0);
+            if ((first >= '0' && first <= '9') || first == '-' || first == '+' || first == '.') {
+                try {
+                    return new BigDecimal(value).stripTrailingZeros();
+                } catch (NumberFormatException e) {
+                    // not a number, compared as text
+                }
+            }
+        }
+        return value;
+    }
+
+    private static Object toKey(JsonNode node) {
+        if (node.isNumber()) {
+            return node.decimalValue().stripTrailingZeros();
+        }
+        if (node.isValueNode()) {
+            return toKey(node.asText());
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static boolean test(ChoiceOperator operator,
+                                Object value,
+                                Object expected) {
+        if (value == null || expected == null || value.getClass() != expected.getClass()) {
+            return false;
+        }
+        return operator.test(((Comparable<Object>) value).compareTo(expected));
+    }
+
+    private final class Evaluation {
+
+        final JsonNode data;
+        final Object[] values = new Object[paths.length];
+        final boolean[] resolved = new boolean[paths.length];
+        final int[] equalityMatches = new int[paths.length];
+        final byte[] conditionStates = new byte[conditionPaths.length];
+        int comparisons;
+
+        Evaluation(JsonNode data) {
+            this.data = data;
+            Arrays.fill(equalityMatches,
+                        UNKNOWN);
+        }
+
+        int getMatchingChoice() {
+            int[] candidates = otherCandidates;
+            if (dispatchPath != NO_MATCH) {
+                int match = getEqualityMatch(dispatchPath);
+                if (match != NO_MATCH && dispatchCandidates[match] != null) {
+                    candidates = dispatchCandidates[match];
+                }
+            }
+            for (int choice : candidates) {
+                if (matches(choice)) {
+                    return choice;
+                }
+            }
+            return NO_MATCH;
+        }
+
+        boolean matches(int choice) {
+            int[] conditions = choiceConditions[choice];
+            switch (choiceKinds[choice]) {
+                case ANY:
+                    for (int condition : conditions) {
+                        if (test(condition)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                case NONE:
+                    return !test(conditions[0]);
+                default:
+                    for (int condition : conditions) {
+                        if (!test(condition)) {
+                            return false;
+                        }
+                    }
+                    return true;
+            }
+        }
+
+        boolean test(int condition) {
+            int path = conditionPaths[condition];
+            if (conditionOperators[condition] == ChoiceOperator.EQUALS) {
+                return getEqualityMatch(path) == condition;
+            }
+            if (conditionStates[condition] == 0) {
+                Object value = getValue(path);
+                boolean result = false;
+                if (value != null) {
+                    comparisons++;
+                    result = CompiledSwitch.test(conditionOperators[condition],
+                                                 value,
+                                                 conditionValues[condition]);
+                }
+                conditionStates[condition] = result ? TRUE : FALSE;
+            }
+            return conditionStates[condition] == TRUE;
+        }
+
+        // the equality condition of the path that holds, decided for all of them with one lookup
+        int getEqualityMatch(int path) {
+            if (equalityMatches[path] == UNKNOWN) {
+                Object value = getValue(path);
+                int match = NO_MATCH;
+                if (value != null) {
+                    comparisons++;
+                    Integer condition = equalityConditions.get(path).get(value);
+                    if (condition != null) {
+                        match = condition;
+                    }
+                }
+                equalityMatches[path] = match;
+            }
+            return equalityMatches[path];
+        }
+
+        Object getValue(int path) {
+            if (!resolved[path]) {
+                JsonNode node = data == null ? null : data.at(paths[path]);
+                values[path] = node == null || node.isMissingNode() || node.isNull() ? null : toKey(node);
+                resolved[path] = true;
+            }
+            return values[path];
+        }
+    }
+}
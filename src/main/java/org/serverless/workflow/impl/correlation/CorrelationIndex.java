@@ -0,0 +1,221 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package org.serverless.workflow.impl.correlation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import org.serverless.workflow.api.events.TriggerEvent;
+import org.serverless.workflow.api.states.EventState;
+import org.serverless.workflow.impl.timer.TimeoutScheduler;
+
+/**
+ * Index of running instances waiting for an event, keyed by trigger name and correlation token value.
+ * Lookups are a single concurrent map read; registrations are removed when the instance completes
+ * or when their timeout expires.
+ */
+public class CorrelationIndex {
+
+    private final ConcurrentHashMap<Key, ConcurrentHashMap<String, WaitingInstance>> waiting = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<WaitingInstance>> instances = new ConcurrentHashMap<>();
+    private final TimeoutScheduler timeoutScheduler;
+    private final Consumer<WaitingInstance> timeoutListener;
+
+    public CorrelationIndex() {
+        this(null,
+             null);
+    }
+
+    public CorrelationIndex(TimeoutScheduler timeoutScheduler,
+                            Consumer<WaitingInstance> timeoutListener) {
+        this.timeoutScheduler = timeoutScheduler;
+        this.timeoutListener = timeoutListener;
+    }
+
+    public WaitingInstance register(String instanceId,
+                                    TriggerEvent triggerEvent,
+                                    String tokenValue,
+                                    EventState eventState) {
+        return register(instanceId,
+                        triggerEvent,
+                        tokenValue,
+                        eventState,
+                        null);
+    }
+
+    public WaitingInstance register(String instanceId,
+                                    TriggerEvent triggerEvent,
+                                    String tokenValue,
+                                    EventState eventState,
+                                    String timeout) {
+        WaitingInstance waitingInstance = new WaitingInstance(instanceId,
+                                                              triggerEvent.getName(),
+                                                              tokenValue,
+                                                              eventState);
+
+        if (timeoutScheduler != null && timeout != null) {
+            // scheduled before the registration is visible to lookups, expiry waits for the registration below
+            waitingInstance.setTimeoutHandle(timeoutScheduler.schedule(timeout,
+                                                                       () -> expire(waitingInstance)));
+        }
+
+        // published under the instance entry, so removeInstance either sees the registration or runs after it
+        WaitingInstance[] replaced = new WaitingInstance[1];
+        instances.compute(instanceId,
+                          (id, registrations) -> {
+                              Set<WaitingInstance> result = registrations == null ? ConcurrentHashMap.newKeySet() : registrations;
+                              result.add(waitingInstance);
+                              waiting.compute(new Key(triggerEvent.getName(),
+                                                      tokenValue),
+                                              (key, waiters) -> {
+                                                  ConcurrentHashMap<String, WaitingInstance> waitersResult = waiters == null ? new ConcurrentHashMap<>() : waiters;
+                                                  replaced[0] = waitersResult.put(instanceId,
+                                                                                  waitingInstance);
+                                                  return waitersResult;
+                                              });
+                              if (replaced[0] != null) {
+                                  result.remove(replaced[0]);
+                              }
+                              return result;
+                          });
+        if (replaced[0] != null) {
+            cancelTimeout(replaced[0]);
+        }
+        return waitingInstance;
+    }
+
+    public Collection<WaitingInstance> lookup(String triggerName,
+                                              String tokenValue) {
+        ConcurrentHashMap<String, WaitingInstance> waiters = waiting.get(new Key(triggerName,
+                                                                                 tokenValue));
+        if (waiters == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableCollection(waiters.values());
+    }
+
+    public boolean remove(WaitingInstance waitingInstance) {
+        if (!unregister(waitingInstance)) {
+            return false;
+        }
+        cancelTimeout(waitingInstance);
+        return true;
+    }
+
+    // called when an instance completes or fails, drops everything it was waiting on
+    public int removeInstance(String instanceId) {
+        List<WaitingInstance> removed = new ArrayList<>();
+        instances.computeIfPresent(instanceId,
+                                   (id, registrations) -> {
+                                       for (WaitingInstance waitingInstance : registrations) {
+                                           if (unregisterWaiter(waitingInstance)) {
+                                               removed.add(waitingInstance);
+                                           }
+                                       }
+                                       return null;
+                                   });
+        for (WaitingInstance waitingInstance : removed) {
+            cancelTimeout(waitingInstance);
+        }
+        return removed.size();
+    }
+
+    public int size() {
+        int size = 0;
+        for (ConcurrentHashMap<String, WaitingInstance> waiters : waiting.values()) {
+            size += waiters.size();
+        }
+        return size;
+    }
+
+    private void expire(WaitingInstance waitingInstance) {
+        if (unregister(waitingInstance) && timeoutListener != null) {
+            timeoutListener.accept(waitingInstance);
+        }
+    }
+
+    // drops a registration from both indexes under its instance entry
+    private boolean unregister(WaitingInstance waitingInstance) {
+        boolean[] removed = new boolean[1];
+        instances.computeIfPresent(waitingInstance.getInstanceId(),
+                                   (id, registrations) -> {
+                                       removed[0] = unregisterWaiter(waitingInstance);
+                                       registrations.remove(waitingInstance);
+                                       return registrations.isEmpty() ? null : registrations;
+                                   });
+        return removed[0];
+    }
+
+    private boolean unregisterWaiter(WaitingInstance waitingInstance) {
+        boolean[] removed = new boolean[1];
+        waiting.computeIfPresent(new Key(waitingInstance.getTriggerName(),
+                                         waitingInstance.getTokenValue()),
+                                 (key, waiters) -> {
+                                     removed[0] = waiters.remove(waitingInstance.getInstanceId(),
+                                                                 waitingInstance);
+                                     return waiters.isEmpty() ? null : waiters;
+                                 });
+        return removed[0];
+    }
+
+    private void cancelTimeout(WaitingInstance waitingInstance) {
+        if (timeoutScheduler != null) {
+            timeoutScheduler.cancel(waitingInstance.getTimeoutHandle());
+        }
+    }
+
+    private static final class Key {
+
+        private final String triggerName;
+        private final String tokenValue;
+        private final int hash;
+
+        Key(String triggerName,
+            String tokenValue) {
+            this.triggerName = triggerName;
+            this.tokenValue = tokenValue;
+            this.hash = 31 * (triggerName == null ? 0 : triggerName.hashCode()) + (tokenValue == null ? 0 : tokenValue.hashCode());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return hash == key.hash
+                    && (triggerName == null ? key.triggerName == null : triggerName.equals(key.triggerName))
+                    && (tokenValue == null ? key.tokenValue == null : tokenValue.equals(key.tokenValue));
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
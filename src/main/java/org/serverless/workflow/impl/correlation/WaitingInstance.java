@@ -0,0 +1,66 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package org.serverless.workflow.impl.correlation;
+
+import org.serverless.workflow.api.states.EventState;
+import org.serverless.workflow.impl.timer.TimeoutScheduler;
+
+public class WaitingInstance {
+
+    private final String instanceId;
+    private final String triggerName;
+    private final String tokenValue;
+    private final EventState eventState;
+    private volatile long timeoutHandle = TimeoutScheduler.NO_TIMEOUT;
+
+    public WaitingInstance(String instanceId,
+                           String triggerName,
+                           String tokenValue,
+                           EventState eventState) {
+        this.instanceId = instanceId;
+        this.triggerName = triggerName;
+        this.tokenValue = tokenValue;
+        this.eventState = eventState;
+    }
+
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    public String getTriggerName() {
+        return triggerName;
+    }
+
+    public String getTokenValue() {
+        return tokenValue;
+    }
+
+    public EventState getEventState() {
+        return eventState;
+    }
+
+    long getTimeoutHandle() {
+        return timeoutHandle;
+    }
+
+    void setTimeoutHandle(long timeoutHandle) {
+        this.timeoutHandle = timeoutHandle;
+    }
+}
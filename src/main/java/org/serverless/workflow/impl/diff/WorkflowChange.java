@@ -0,0 +1,81 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package org.serverless.workflow.impl.diff;
+
+public class WorkflowChange {
+
+    public enum Kind {
+        ADDED,
+        REMOVED,
+        CHANGED
+    }
+
+    public enum Element {
+        WORKFLOW,
+        STATE,
+        BRANCH,
+        TRIGGER,
+        ACTION,
+        FUNCTION
+    }
+
+    private final Kind kind;
+    private final Element element;
+    private final String path;
+    private final Object before;
+    private final Object after;
+
+    public WorkflowChange(Kind kind,
+                          Element element,
+                          String path,
+                          Object before,
+                          Object after) {
+        this.kind = kind;
+        this.element = element;
+        this.path = path;
+        this.before = before;
+        this.after = after;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public Element getElement() {
+        return element;
+    }
+
+    // location of the element, for example states/approve/actions/0
+    public String getPath() {
+        return path;
+    }
+
+    public Object getBefore() {
+        return before;
+    }
+
+    public Object getAfter() {
+        return after;
+    }
+
+    @Override
+    public String toString() {
+        return kind + " " + element + " " + path;
+    }
+}
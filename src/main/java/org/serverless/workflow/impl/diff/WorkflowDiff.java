@@ -0,0 +1,58 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package org.serverless.workflow.impl.diff;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class WorkflowDiff {
+
+    private final List<WorkflowChange> changes;
+
+    public WorkflowDiff(List<WorkflowChange> changes) {
+        this.changes = Collections.unmodifiableList(changes);
+    }
+
+    public List<WorkflowChange> getChanges() {
+        return changes;
+    }
+
+    public List<WorkflowChange> getChanges(WorkflowChange.Element element) {
+        return changes.stream()
+                .filter(change -> change.getElement() == element)
+                .collect(Collectors.toList());
+    }
+
+    public WorkflowChange getChange(String path) {
+        return changes.stream()
+                .filter(change -> change.getPath().equals(path))
+                .findFirst()
+                .orElse(null);
+    }
+
+    public boolean isEmpty() {
+        return changes.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return changes.toString();
+    }
+}
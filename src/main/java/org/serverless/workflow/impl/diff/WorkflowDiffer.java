@@ -0,0 +1,366 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package org.serverless.workflow.impl.diff;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.serverless.workflow.api.Workflow;
+import org.serverless.workflow.api.actions.Action;
+import org.serverless.workflow.api.branches.Branch;
+import org.serverless.workflow.api.events.Event;
+import org.serverless.workflow.api.events.TriggerEvent;
+import org.serverless.workflow.api.interfaces.State;
+import org.serverless.workflow.api.states.EventState;
+import org.serverless.workflow.api.states.OperationState;
+import org.serverless.workflow.api.states.ParallelState;
+import org.serverless.workflow.impl.diff.WorkflowChange.Element;
+import org.serverless.workflow.impl.diff.WorkflowChange.Kind;
+import org.serverless.workflow.impl.utils.Fingerprint;
+import org.serverless.workflow.impl.utils.HashingOutputStream;
+import org.serverless.workflow.impl.utils.WeakIdentityCache;
+
+/**
+ * Structural diff of two workflows.
+ * <p>
+ * States, branches and trigger events are matched by name, actions by position and functions by name
+ * within a state. Identical instances are skipped right away, otherwise elements are compared by a
+ * content hash that is cached per instance, so unchanged elements shared by the two workflows, or
+ * diffed before, are not serialized again. Elements must not be modified after they have been diffed,
+ * or they have to be invalidated (or the cache cleared).
+ */
+public class WorkflowDiffer {
+
+    private final ObjectMapper objectMapper;
+    private final WeakIdentityCache<Object, Fingerprint> fingerprints = new WeakIdentityCache<>();
+
+    public WorkflowDiffer(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    public WorkflowDiff diff(Workflow from,
+                             Workflow to) {
+        List<WorkflowChange> changes = new ArrayList<>();
+        if (from != to) {
+            diffField(changes,
+                      "name",
+                      from.getName(),
+                      to.getName());
+            diffField(changes,
+                      "version",
+                      from.getVersion(),
+                      to.getVersion());
+            diffField(changes,
+                      "description",
+                      from.getDescription(),
+                      to.getDescription());
+            diffField(changes,
+                      "owner",
+                      from.getOwner(),
+                      to.getOwner());
+            diffField(changes,
+                      "starts-at",
+                      from.getStartsAt(),
+                      to.getStartsAt());
+            diffField(changes,
+                      "metadata",
+                      from.getMetadata(),
+                      to.getMetadata());
+            if (!same(from.getExtensions(),
+                      to.getExtensions())) {
+                changes.add(new WorkflowChange(Kind.CHANGED,
+                                               Element.WORKFLOW,
+                                               "extensions",
+                                               from.getExtensions(),
+                                               to.getExtensions()));
+            }
+
+            diffNamed(changes,
+                      "trigger-defs",
+                      Element.TRIGGER,
+                      from.getTriggerDefs(),
+                      to.getTriggerDefs(),
+                      TriggerEvent::getName,
+                      null);
+            diffStates(changes,
+                       "states",
+                       from.getStates(),
+                       to.getStates());
+        }
+        return new WorkflowDiff(changes);
+    }
+
+    public Fingerprint getFingerprint(Object element) {
+        return fingerprints.computeIfAbsent(element,
+                                            this::computeFingerprint);
+    }
+
+    // drops the hashes of the parts of a workflow that are modified in place when it is patched
+    public void invalidate(Workflow workflow) {
+        fingerprints.remove(workflow);
+        if (workflow.getExtensions() != null) {
+            fingerprints.remove(workflow.getExtensions());
+        }
+        if (workflow.getStates() != null) {
+            fingerprints.remove(workflow.getStates());
+        }
+        if (workflow.getTriggerDefs() != null) {
+            fingerprints.remove(workflow.getTriggerDefs());
+        }
+    }
+
+    public void invalidate(Object element) {
+        fingerprints.remove(element);
+    }
+
+    public void clear() {
+        fingerprints.clear();
+    }
+
+    private void diffStates(List<WorkflowChange> changes,
+                            String path,
+                            List<State> from,
+                            List<State> to) {
+        diffNamed(changes,
+                  path,
+                  Element.STATE,
+                  from,
+                  to,
+                  State::getName,
+                  this::diffStateContent);
+    }
+
+    // drills into a changed state to report its actions, functions and branches
+    private void diffStateContent(List<WorkflowChange> changes,
+                                  String path,
+                                  State from,
+                                  State to) {
+        diffActions(changes,
+                    path,
+                    from,
+                    to);
+
+        if (from instanceof ParallelState && to instanceof ParallelState) {
+            diffNamed(changes,
+                      path + "/branches",
+                      Element.BRANCH,
+                      ((ParallelState) from).getBranches(),
+                      ((ParallelState) to).getBranches(),
+                      Branch::getName,
+                      (branchChanges, branchPath, fromBranch, toBranch) -> diffStates(branchChanges,
+                                                                                      branchPath + "/states",
+                                                                                      fromBranch.getStates(),
+                                                                                      toBranch.getStates()));
+        }
+    }
+
+    private void diffActions(List<WorkflowChange> changes,
+                             String path,
+                             State from,
+                             State to) {
+        Map<String, Action> fromActions = getActions(from);
+        Map<String, Action> toActions = getActions(to);
+        Map<String, org.serverless.workflow.api.functions.Function> fromFunctions = new LinkedHashMap<>();
+        Map<String, org.serverless.workflow.api.functions.Function> toFunctions = new LinkedHashMap<>();
+
+        fromActions.forEach((actionPath, action) -> {
+            Action toAction = toActions.get(actionPath);
+            if (toAction == null) {
+                changes.add(new WorkflowChange(Kind.REMOVED,
+                                               Element.ACTION,
+                                               path + "/" + actionPath,
+                                               action,
+                                               null));
+            } else if (!same(action,
+                             toAction)) {
+                changes.add(new WorkflowChange(Kind.CHANGED,
+                                               Element.ACTION,
+                                               path + "/" + actionPath,
+                                               action,
+                                               toAction));
+            }
+            addFunction(fromFunctions,
+                        action);
+        });
+        toActions.forEach((actionPath, action) -> {
+            if (!fromActions.containsKey(actionPath)) {
+                changes.add(new WorkflowChange(Kind.ADDED,
+                                               Element.ACTION,
+                                               path + "/" + actionPath,
+                                               null,
+                                               action));
+            }
+            addFunction(toFunctions,
+                        action);
+        });
+
+        diffNamed(changes,
+                  path + "/functions",
+                  Element.FUNCTION,
+                  new ArrayList<>(fromFunctions.values()),
+                  new ArrayList<>(toFunctions.values()),
+                  org.serverless.workflow.api.functions.Function::getName,
+                  null);
+    }
+
+    private <T> void diffNamed(List<WorkflowChange> changes,
+                               String path,
+                               Element element,
+                               List<T> from,
+                               List<T> to,
+                               Function<T, String> nameOf,
+                               ContentDiff<T> contentDiff) {
+        if (from == to) {
+            return;
+        }
+        Map<String, T> fromByName = byName(from,
+                                           nameOf);
+        Map<String, T> toByName = byName(to,
+                                         nameOf);
+
+        toByName.forEach((name, toElement) -> {
+            T fromElement = fromByName.get(name);
+            String elementPath = path + "/" + name;
+            if (fromElement == null) {
+                changes.add(new WorkflowChange(Kind.ADDED,
+                                               element,
+                                               elementPath,
+                                               null,
+                                               toElement));
+            } else if (!same(fromElement,
+                             toElement)) {
+                changes.add(new WorkflowChange(Kind.CHANGED,
+                                               element,
+                                               elementPath,
+                                               fromElement,
+                                               toElement));
+                if (contentDiff != null) {
+                    contentDiff.diff(changes,
+                                     elementPath,
+                                     fromElement,
+                                     toElement);
+                }
+            }
+        });
+        fromByName.forEach((name, fromElement) -> {
+            if (!toByName.containsKey(name)) {
+                changes.add(new WorkflowChange(Kind.REMOVED,
+                                               element,
+                                               path + "/" + name,
+                                               fromElement,
+                                               null));
+            }
+        });
+    }
+
+    private void diffField(List<WorkflowChange> changes,
+                           String field,
+                           Object from,
+                           Object to) {
+        if (!Objects.equals(from,
+                            to)) {
+            changes.add(new WorkflowChange(Kind.CHANGED,
+                                           Element.WORKFLOW,
+                                           field,
+                                           from,
+                                           to));
+        }
+    }
+
+    private boolean same(Object from,
+                         Object to) {
+        if (from == to) {
+            return true;
+        }
+        if (from == null || to == null) {
+            return false;
+        }
+        return getFingerprint(from).equals(getFingerprint(to));
+    }
+
+    private Fingerprint computeFingerprint(Object element) {
+        HashingOutputStream hashingOutputStream = new HashingOutputStream();
+        try {
+            objectMapper.writeValue(hashingOutputStream,
+                                    element);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not fingerprint " + element.getClass().getSimpleName() + ": " + e.getMessage());
+        }
+        return hashingOutputStream.getFingerprint();
+    }
+
+    private static <T> Map<String, T> byName(List<T> elements,
+                                             Function<T, String> nameOf) {
+        if (elements == null) {
+            return Collections.emptyMap();
+        }
+        Map<String, T> byName = new LinkedHashMap<>();
+        for (T element : elements) {
+            byName.putIfAbsent(nameOf.apply(element),
+                               element);
+        }
+        return byName;
+    }
+
+    private static Map<String, Action> getActions(State state) {
+        Map<String, Action> actions = new LinkedHashMap<>();
+        if (state instanceof OperationState && ((OperationState) state).getActions() != null) {
+            List<Action> operationActions = ((OperationState) state).getActions();
+            for (int i = 0; i < operationActions.size(); i++) {
+                actions.put("actions/" + i,
+                            operationActions.get(i));
+            }
+        }
+        if (state instanceof EventState && ((EventState) state).getEvents() != null) {
+            List<Event> events = ((EventState) state).getEvents();
+            for (int i = 0; i < events.size(); i++) {
+                List<Action> eventActions = events.get(i).getActions();
+                for (int j = 0; eventActions != null && j < eventActions.size(); j++) {
+                    actions.put("events/" + i + "/actions/" + j,
+                                eventActions.get(j));
+                }
+            }
+        }
+        return actions;
+    }
+
+    private static void addFunction(Map<String, org.serverless.workflow.api.functions.Function> functions,
+                                    Action action) {
+        if (action.getFunction() != null) {
+            functions.putIfAbsent(action.getFunction().getName(),
+                                  action.getFunction());
+        }
+    }
+
+    @FunctionalInterface
+    private interface ContentDiff<T> {
+
+        void diff(List<WorkflowChange> changes,
+                  String path,
+                  T from,
+                  T to);
+    }
+}
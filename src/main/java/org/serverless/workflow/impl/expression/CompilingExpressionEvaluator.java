@@ -0,0 +1,39 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package org.serverless.workflow.impl.expression;
+
+import org.serverless.workflow.api.ExpressionEvaluator;
+
+/**
+ * Expression evaluator that keeps the compiled form of the expressions it evaluates.
+ * <p>
+ * Compiling ahead of time reports syntax errors before any event arrives and saves the first
+ * evaluations the compile cost.
+ */
+public interface CompilingExpressionEvaluator extends ExpressionEvaluator {
+
+    int MAX_COMPILED_EXPRESSIONS = 4096;
+
+    // compiles and caches the expression, throws IllegalArgumentException on syntax errors
+    void compile(String expression);
+
+    int getCompiledExpressionCount();
+
+    void clearCompiledExpressions();
+}
@@ -0,0 +1,196 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package org.serverless.workflow.impl.expression;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Counts expression evaluation failures per expression and logs them at a limited rate.
+ * <p>
+ * The first failure of an expression is logged, then at most one line per report interval with the number
+ * of failures since the previous line. A repeated failure that is not logged only costs a counter increment.
+ * Past the maximum number of tracked expressions, failures of new expressions are counted together.
+ */
+public class ExpressionFailureReporter {
+
+    public static final long DEFAULT_REPORT_INTERVAL_MILLIS = 60_000;
+    public static final int DEFAULT_MAX_EXPRESSIONS = 1024;
+
+    private static final String OTHER_EXPRESSIONS = "<other expressions>";
+    private static final String NULL_EXPRESSION = "<null expression>";
+    private static final ExpressionFailureListener[] NO_LISTENERS = new ExpressionFailureListener[0];
+
+    private final String evaluatorName;
+    private final long reportIntervalNanos;
+    private final int maxExpressions;
+    private final Map<String, Failures> failures = new ConcurrentHashMap<>();
+    private final LongAdder reportCount = new LongAdder();
+    private volatile ExpressionFailureListener[] failureListeners = NO_LISTENERS;
+
+    private static Logger logger = LoggerFactory.getLogger(ExpressionFailureReporter.class);
+
+    public ExpressionFailureReporter(String evaluatorName) {
+        this(evaluatorName,
+             DEFAULT_REPORT_INTERVAL_MILLIS,
+             DEFAULT_MAX_EXPRESSIONS);
+    }
+
+    public ExpressionFailureReporter(String evaluatorName,
+                                     long reportIntervalMillis,
+                                     int maxExpressions) {
+        if (reportIntervalMillis < 0 || maxExpressions < 1) {
+            throw new IllegalArgumentException("Invalid failure reporter settings: " + reportIntervalMillis + "ms, " + maxExpressions + " expressions");
+        }
+        this.evaluatorName = evaluatorName;
+        this.reportIntervalNanos = TimeUnit.MILLISECONDS.toNanos(reportIntervalMillis);
+        this.maxExpressions = maxExpressions;
+    }
+
+    public void reportFailure(String expression,
+                              Exception exception) {
+        Failures expressionFailures = getFailures(expression);
+        expressionFailures.count.increment();
+
+        ExpressionFailureListener[] listeners = failureListeners;
+        if (listeners.length > 0) {
+            long failureCount = expressionFailures.count.sum();
+            for (ExpressionFailureListener listener : listeners) {
+                try {
+                    listener.onFailure(evaluatorName,
+                                       expression,
+                                       exception,
+                                       failureCount);
+                } catch (Exception e) {
+                    logger.warn("Expression failure listener failed: {}",
+                                e.getMessage());
+                }
+            }
+        }
+
+        long now = System.nanoTime();
+        long nextReport = expressionFailures.nextReport.get();
+        if (now - nextReport >= 0 && expressionFailures.nextReport.compareAndSet(nextReport,
+                                                                                  now + reportIntervalNanos)) {
+            long total = expressionFailures.count.sum();
+            long failuresSinceReport = total - expressionFailures.reported.getAndSet(total);
+            reportCount.increment();
+            logger.error("Unable to evaluate {} expression: {} with error: {} ({} failures since last report, {} in total)",
+                         evaluatorName,
+                         expression,
+                         exception.getMessage(),
+                         failuresSinceReport,
+                         total);
+        }
+    }
+
+    public long getFailureCount(String expression) {
+        Failures expressionFailures = failures.get(getKey(expression));
+        return expressionFailures == null ? 0 : expressionFailures.count.sum();
+    }
+
+    public long getFailureCount() {
+        long total = 0;
+        for (Failures expressionFailures : failures.values()) {
+            total += expressionFailures.count.sum();
+        }
+        return total;
+    }
+
+    public Map<String, Long> getFailureCounts() {
+        Map<String, Long> failureCounts = new HashMap<>();
+        failures.forEach((expression, expressionFailures) -> failureCounts.put(expression,
+                                                                               expressionFailures.count.sum()));
+        return failureCounts;
+    }
+
+    // number of log lines written
+    public long getReportCount() {
+        return reportCount.sum();
+    }
+
+    public synchronized void addFailureListener(ExpressionFailureListener failureListener) {
+        ExpressionFailureListener[] listeners = new ExpressionFailureListener[failureListeners.length + 1];
+        System.arraycopy(failureListeners,
+                         0,
+                         listeners,
+                         0,
+                         failureListeners.length);
+        listeners[failureListeners.length] = failureListener;
+        failureListeners = listeners;
+    }
+
+    public synchronized void removeFailureListener(ExpressionFailureListener failureListener) {
+        for (int i = 0; i < failureListeners.length; i++) {
+            if (failureListeners[i] == failureListener) {
+                ExpressionFailureListener[] listeners = new ExpressionFailureListener[failureListeners.length - 1];
+                System.arraycopy(failureListeners,
+                                 0,
+                                 listeners,
+                                 0,
+                                 i);
+                System.arraycopy(failureListeners,
+                                 i + 1,
+                                 listeners,
+                                 i,
+                                 listeners.length - i);
+                failureListeners = listeners;
+                return;
+            }
+        }
+    }
+
+    public void reset() {
+        failures.clear();
+        reportCount.reset();
+    }
+
+    private Failures getFailures(String expression) {
+        String expressionKey = getKey(expression);
+        Failures expressionFailures = failures.get(expressionKey);
+        if (expressionFailures != null) {
+            return expressionFailures;
+        }
+        if (failures.size() >= maxExpressions) {
+            return failures.computeIfAbsent(OTHER_EXPRESSIONS,
+                                            key -> new Failures());
+        }
+        return failures.computeIfAbsent(expressionKey,
+                                        key -> new Failures());
+    }
+
+    // missing expressions of the model are counted under a fixed key, the failure map has no null keys
+    private static String getKey(String expression) {
+        return expression == null ? NULL_EXPRESSION : expression;
+    }
+
+    private static class Failures {
+
+        final LongAdder count = new LongAdder();
+        final AtomicLong reported = new AtomicLong();
+        final AtomicLong nextReport = new AtomicLong(System.nanoTime());
+    }
+}
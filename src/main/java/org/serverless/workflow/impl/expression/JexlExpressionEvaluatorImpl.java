@@ -18,21 +18,22 @@
 
 package org.serverless.workflow.impl.expression;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import org.apache.commons.jexl3.JexlBuilder;
 import org.apache.commons.jexl3.JexlContext;
 import org.apache.commons.jexl3.JexlEngine;
 import org.apache.commons.jexl3.JexlExpression;
 import org.apache.commons.jexl3.ObjectContext;
-import org.serverless.workflow.api.ExpressionEvaluator;
 import org.serverless.workflow.api.events.TriggerEvent;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
-public class JexlExpressionEvaluatorImpl implements ExpressionEvaluator {
+public class JexlExpressionEvaluatorImpl implements CompilingExpressionEvaluator {
 
     public JexlEngine jexl = new JexlBuilder().create();
 
-    private static Logger logger = LoggerFactory.getLogger(JexlExpressionEvaluatorImpl.class);
+    private final Map<String, JexlExpression> compiledExpressions = new ConcurrentHashMap<>();
+    private ExpressionFailureReporter failureReporter = new ExpressionFailureReporter("jexl");
 
     @Override
     public String getName() {
@@ -43,15 +44,59 @@ public class JexlExpressionEvaluatorImpl implements ExpressionEvaluator {
     public boolean evaluate(String expression,
                             TriggerEvent triggerEvent) {
         try {
-            JexlExpression e = jexl.createExpression(expression);
+            JexlExpression e = getCompiledExpression(expression);
 
             JexlContext jc = new ObjectContext<>(jexl,
                                                  triggerEvent);
 
             return (Boolean) e.evaluate(jc);
         } catch (Exception e) {
-            logger.error("Unable to evaluate expression: " + expression + " with error: " + e.getMessage());
+            failureReporter.reportFailure(expression,
+                                          e);
             return false;
         }
     }
+
+    @Override
+    public void compile(String expression) {
+        try {
+            getCompiledExpression(expression);
+        } catch (Exception e) {
+            throw new IllegalArgumentException(e.getMessage(),
+                                               e);
+        }
+    }
+
+    @Override
+    public int getCompiledExpressionCount() {
+        return compiledExpressions.size();
+    }
+
+    @Override
+    public void clearCompiledExpressions() {
+        compiledExpressions.clear();
+    }
+
+    private JexlExpression getCompiledExpression(String expression) {
+        if (expression == null) {
+            throw new IllegalArgumentException("Expression must not be null");
+        }
+        JexlExpression compiledExpression = compiledExpressions.get(expression);
+        if (compiledExpression != null) {
+            return compiledExpression;
+        }
+        if (compiledExpressions.size() >= MAX_COMPILED_EXPRESSIONS) {
+            return jexl.createExpression(expression);
+        }
+        return compiledExpressions.computeIfAbsent(expression,
+                                                   jexl::createExpression);
+    }
+
+    public ExpressionFailureReporter getFailureReporter() {
+        return failureReporter;
+    }
+
+    public void setFailureReporter(ExpressionFailureReporter failureReporter) {
+        this.failureReporter = failureReporter;
+    }
 }
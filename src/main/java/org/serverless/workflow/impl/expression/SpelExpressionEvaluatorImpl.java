@@ -18,19 +18,21 @@
 
 package org.serverless.workflow.impl.expression;
 
-import org.serverless.workflow.api.ExpressionEvaluator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import org.serverless.workflow.api.events.TriggerEvent;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.expression.EvaluationContext;
 import org.springframework.expression.Expression;
 import org.springframework.expression.ExpressionParser;
 import org.springframework.expression.spel.standard.SpelExpressionParser;
 import org.springframework.expression.spel.support.StandardEvaluationContext;
 
-public class SpelExpressionEvaluatorImpl implements ExpressionEvaluator {
+public class SpelExpressionEvaluatorImpl implements CompilingExpressionEvaluator {
 
-    private static Logger logger = LoggerFactory.getLogger(SpelExpressionEvaluatorImpl.class);
+    private final ExpressionParser spelExpressionParser = new SpelExpressionParser();
+    private final Map<String, Expression> compiledExpressions = new ConcurrentHashMap<>();
+    private ExpressionFailureReporter failureReporter = new ExpressionFailureReporter("spel");
 
     @Override
     public String getName() {
@@ -41,15 +43,58 @@ public class SpelExpressionEvaluatorImpl implements ExpressionEvaluator {
     public boolean evaluate(String expression,
                             TriggerEvent triggerEvent) {
         try {
-            ExpressionParser spelExpressionParser = new SpelExpressionParser();
-            Expression spelExpression = spelExpressionParser.parseExpression(expression);
+            Expression spelExpression = getCompiledExpression(expression);
 
             EvaluationContext context = new StandardEvaluationContext(triggerEvent);
 
             return (Boolean) spelExpression.getValue(context);
         } catch (Exception e) {
-            logger.error("Unable to evaluate expression: " + expression + " with error: " + e.getMessage());
+            failureReporter.reportFailure(expression,
+                                          e);
             return false;
         }
     }
+
+    @Override
+    public void compile(String expression) {
+        try {
+            getCompiledExpression(expression);
+        } catch (Exception e) {
+            throw new IllegalArgumentException(e.getMessage(),
+                                               e);
+        }
+    }
+
+    @Override
+    public int getCompiledExpressionCount() {
+        return compiledExpressions.size();
+    }
+
+    @Override
+    public void clearCompiledExpressions() {
+        compiledExpressions.clear();
+    }
+
+    private Expression getCompiledExpression(String expression) {
+        if (expression == null) {
+            throw new IllegalArgumentException("Expression must not be null");
+        }
+        Expression compiledExpression = compiledExpressions.get(expression);
+        if (compiledExpression != null) {
+            return compiledExpression;
+        }
+        if (compiledExpressions.size() >= MAX_COMPILED_EXPRESSIONS) {
+            return spelExpressionParser.parseExpression(expression);
+        }
+        return compiledExpressions.computeIfAbsent(expression,
+                                                   spelExpressionParser::parseExpression);
+    }
+
+    public ExpressionFailureReporter getFailureReporter() {
+        return failureReporter;
+    }
+
+    public void setFailureReporter(ExpressionFailureReporter failureReporter) {
+        this.failureReporter = failureReporter;
+    }
 }
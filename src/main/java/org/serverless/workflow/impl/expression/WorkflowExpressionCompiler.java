@@ -0,0 +1,165 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package org.serverless.workflow.impl.expression;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.serverless.workflow.api.ExpressionEvaluator;
+import org.serverless.workflow.api.Workflow;
+import org.serverless.workflow.api.branches.Branch;
+import org.serverless.workflow.api.choices.AndChoice;
+import org.serverless.workflow.api.choices.DefaultChoice;
+import org.serverless.workflow.api.choices.NotChoice;
+import org.serverless.workflow.api.choices.OrChoice;
+import org.serverless.workflow.api.choices.SingleChoice;
+import org.serverless.workflow.api.events.Event;
+import org.serverless.workflow.api.interfaces.Choice;
+import org.serverless.workflow.api.interfaces.State;
+import org.serverless.workflow.api.states.EventState;
+import org.serverless.workflow.api.states.ParallelState;
+import org.serverless.workflow.api.states.SwitchState;
+import org.serverless.workflow.api.validation.ValidationError;
+import org.serverless.workflow.impl.choices.ChoiceCompiler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compiles the event-expressions of a workflow, including the ones in parallel branches, with the given
+ * evaluator and checks the syntax of its switch choice paths, which are data paths rather than expressions.
+ * Compiled forms stay in the evaluator's cache and syntax errors are returned as validation errors.
+ */
+public final class WorkflowExpressionCompiler {
+
+    private static Logger logger = LoggerFactory.getLogger(WorkflowExpressionCompiler.class);
+
+    private WorkflowExpressionCompiler() {
+    }
+
+    public static List<ValidationError> compile(Workflow workflow,
+                                                ExpressionEvaluator expressionEvaluator) {
+        List<ValidationError> validationErrors = new ArrayList<>();
+        if (workflow == null || workflow.getStates() == null) {
+            return validationErrors;
+        }
+        if (!(expressionEvaluator instanceof CompilingExpressionEvaluator)) {
+            logger.debug("Expression evaluator " + (expressionEvaluator == null ? null : expressionEvaluator.getName()) + " does not compile expressions");
+            return validationErrors;
+        }
+        compileStates(workflow.getStates(),
+                      (CompilingExpressionEvaluator) expressionEvaluator,
+                      validationErrors);
+        return validationErrors;
+    }
+
+    private static void compileStates(List<State> states,
+                                      CompilingExpressionEvaluator expressionEvaluator,
+                                      List<ValidationError> validationErrors) {
+        for (State state : states) {
+            if (state instanceof EventState && ((EventState) state).getEvents() != null) {
+                for (Event event : ((EventState) state).getEvents()) {
+                    compile(event.getEventExpression(),
+                            "event-expression",
+                            state,
+                            expressionEvaluator,
+                            validationErrors);
+                }
+            }
+            if (state instanceof SwitchState && ((SwitchState) state).getChoices() != null) {
+                for (Choice choice : ((SwitchState) state).getChoices()) {
+                    for (String path : getPaths(choice)) {
+                        checkPath(path,
+                                  state,
+                                  validationErrors);
+                    }
+                }
+            }
+            if (state instanceof ParallelState && ((ParallelState) state).getBranches() != null) {
+                for (Branch branch : ((ParallelState) state).getBranches()) {
+                    if (branch.getStates() != null) {
+                        compileStates(branch.getStates(),
+                                      expressionEvaluator,
+                                      validationErrors);
+                    }
+                }
+            }
+        }
+    }
+
+    private static List<String> getPaths(Choice choice) {
+        List<String> paths = new ArrayList<>();
+        if (choice instanceof SingleChoice) {
+            paths.add(((SingleChoice) choice).getPath());
+        } else if (choice instanceof DefaultChoice) {
+            paths.add(((DefaultChoice) choice).getPath());
+        } else if (choice instanceof AndChoice && ((AndChoice) choice).getAnd() != null) {
+            ((AndChoice) choice).getAnd().forEach(c -> paths.add(c.getPath()));
+        } else if (choice instanceof OrChoice && ((OrChoice) choice).getOr() != null) {
+            ((OrChoice) choice).getOr().forEach(c -> paths.add(c.getPath()));
+        } else if (choice instanceof NotChoice && ((NotChoice) choice).getNot() != null) {
+            paths.add(((NotChoice) choice).getNot().getPath());
+        }
+        return paths;
+    }
+
+    // choice paths are data paths resolved by the choice compiler, not expressions
+    private static void checkPath(String path,
+                                  State state,
+                                  List<ValidationError> validationErrors) {
+        try {
+            ChoiceCompiler.checkPath(path);
+        } catch (IllegalArgumentException e) {
+            addError("choice path",
+                     path,
+                     state,
+                     e,
+                     validationErrors);
+        }
+    }
+
+    private static void compile(String expression,
+                                String kind,
+                                State state,
+                                CompilingExpressionEvaluator expressionEvaluator,
+                                List<ValidationError> validationErrors) {
+        if (expression == null || expression.trim().isEmpty()) {
+            return;
+        }
+        try {
+            expressionEvaluator.compile(expression);
+        } catch (IllegalArgumentException e) {
+            addError(kind,
+                     expression,
+                     state,
+                     e,
+                     validationErrors);
+        }
+    }
+
+    private static void addError(String kind,
+                                 String expression,
+                                 State state,
+                                 IllegalArgumentException e,
+                                 List<ValidationError> validationErrors) {
+        ValidationError validationError = new ValidationError();
+        validationError.setMessage("Invalid " + kind + " in state " + state.getName() + ": " + expression + " (" + e.getMessage() + ")");
+        validationError.setType(ValidationError.WORKFLOW_VALIDATION);
+        validationErrors.add(validationError);
+    }
+}
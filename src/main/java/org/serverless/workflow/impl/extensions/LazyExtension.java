@@ -0,0 +1,91 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package org.serverless.workflow.impl.extensions;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.serverless.workflow.api.interfaces.Extension;
+
+/**
+ * Extension kept as its parsed tree and bound to the registered extension class on first access.
+ */
+public class LazyExtension implements Extension {
+
+    private final String extensionId;
+    private final JsonNode tree;
+    private final Class<? extends Extension> extensionClass;
+    private final ObjectMapper objectMapper;
+    private volatile Extension extension;
+
+    public LazyExtension(String extensionId,
+                         JsonNode tree,
+                         Class<? extends Extension> extensionClass,
+                         ObjectMapper objectMapper) {
+        this.extensionId = extensionId;
+        this.tree = tree;
+        this.extensionClass = extensionClass;
+        this.objectMapper = objectMapper;
+    }
+
+    public static Extension resolve(Extension extension) {
+        return extension instanceof LazyExtension ? ((LazyExtension) extension).get() : extension;
+    }
+
+    @Override
+    public String getExtensionId() {
+        return extensionId;
+    }
+
+    public JsonNode getTree() {
+        return tree;
+    }
+
+    public Class<? extends Extension> getExtensionClass() {
+        return extensionClass;
+    }
+
+    public boolean isBound() {
+        return extension != null;
+    }
+
+    // the bound extension, or null when it was never accessed
+    public Extension getBoundExtension() {
+        return extension;
+    }
+
+    public Extension get() {
+        Extension result = extension;
+        if (result == null) {
+            synchronized (this) {
+                result = extension;
+                if (result == null) {
+                    try {
+                        result = objectMapper.treeToValue(tree,
+                                                          extensionClass);
+                    } catch (Exception e) {
+                        throw new IllegalArgumentException("Could not bind extension " + extensionId + ": " + e.getMessage());
+                    }
+                    extension = result;
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package org.serverless.workflow.impl.extensions;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import org.serverless.workflow.api.interfaces.Extension;
+
+/**
+ * Extension deserializer that, when enabled, defers binding of registered extensions to LazyExtension.
+ * Otherwise, and for extensions that are not registered, it delegates to the workflow module deserializer.
+ */
+public class LazyExtensionDeserializer extends StdDeserializer<Extension> {
+
+    private static final String EXTENSION_ID = "extensionid";
+
+    private final JsonDeserializer<? extends Extension> delegate;
+    private final ObjectMapper objectMapper;
+    private final Map<String, Class<? extends Extension>> extensionsMap = new ConcurrentHashMap<>();
+    private volatile boolean enabled;
+
+    public LazyExtensionDeserializer(JsonDeserializer<? extends Extension> delegate,
+                                     ObjectMapper objectMapper) {
+        super(Extension.class);
+        this.delegate = delegate;
+        this.objectMapper = objectMapper;
+    }
+
+    public void addExtension(String extensionId,
+                             Class<? extends Extension> extensionClass) {
+        extensionsMap.put(extensionId,
+                          extensionClass);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public Extension deserialize(JsonParser jp,
+                                 DeserializationContext ctxt) throws IOException {
+        if (!enabled) {
+            return delegate.deserialize(jp,
+                                        ctxt);
+        }
+
+        JsonNode node = jp.getCodec().readTree(jp);
+        String extensionId = node.path(EXTENSION_ID).asText(null);
+        Class<? extends Extension> extensionClass = extensionId == null ? null : extensionsMap.get(extensionId);
+        if (extensionClass != null) {
+            return new LazyExtension(extensionId,
+                                     node,
+                                     extensionClass,
+                                     objectMapper);
+        }
+
+        try (JsonParser treeParser = node.traverse(jp.getCodec())) {
+            treeParser.nextToken();
+            return delegate.deserialize(treeParser,
+                                        ctxt);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package org.serverless.workflow.impl.extensions;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import org.serverless.workflow.api.interfaces.Extension;
+
+// writes the retained tree, so extensions that were never accessed are not bound to be serialized;
+// once bound, the extension is written as it is now, including changes made after binding
+public class LazyExtensionSerializer extends StdSerializer<LazyExtension> {
+
+    public LazyExtensionSerializer() {
+        super(LazyExtension.class);
+    }
+
+    @Override
+    public void serialize(LazyExtension extension,
+                          JsonGenerator gen,
+                          SerializerProvider provider) throws IOException {
+        Extension bound = extension.getBoundExtension();
+        if (bound != null) {
+            provider.defaultSerializeValue(bound,
+                                           gen);
+        } else {
+            gen.writeTree(extension.getTree());
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package org.serverless.workflow.impl.loader;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.serverless.workflow.api.Workflow;
+import org.serverless.workflow.api.validation.ValidationError;
+
+public class BulkLoadResult {
+
+    private final String source;
+    private final Workflow workflow;
+    private final List<ValidationError> validationErrors;
+
+    public BulkLoadResult(String source,
+                          Workflow workflow,
+                          List<ValidationError> validationErrors) {
+        this.source = source;
+        this.workflow = workflow;
+        this.validationErrors = Collections.unmodifiableList(validationErrors);
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public Workflow getWorkflow() {
+        return workflow;
+    }
+
+    public List<ValidationError> getValidationErrors() {
+        return validationErrors;
+    }
+
+    public boolean isValid() {
+        return workflow != null && validationErrors.isEmpty();
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package org.serverless.workflow.impl.loader;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.serverless.workflow.api.Workflow;
+import org.serverless.workflow.api.validation.ValidationError;
+import org.serverless.workflow.impl.manager.WorkflowManagerImpl;
+import org.serverless.workflow.impl.registry.WorkflowRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Parses and validates many workflow definitions in parallel on a bounded pool of threads.
+ * <p>
+ * All threads share the mappers and the schema of a single manager. A source that fails to
+ * read, parse or validate only produces an errored result, the rest of the batch is still loaded.
+ * Results are returned in the order of the sources.
+ */
+public class WorkflowBulkLoader {
+
+    public static final int DEFAULT_PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+    private final WorkflowManagerImpl workflowManager;
+    private final int parallelism;
+    private BulkLoadListener bulkLoadListener;
+
+    private static Logger logger = LoggerFactory.getLogger(WorkflowBulkLoader.class);
+
+    public WorkflowBulkLoader(WorkflowManagerImpl workflowManager) {
+        this(workflowManager,
+             DEFAULT_PARALLELISM);
+    }
+
+    public WorkflowBulkLoader(WorkflowManagerImpl workflowManager,
+                              int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism should be at least 1: " + parallelism);
+        }
+        this.workflowManager = workflowManager;
+        this.parallelism = parallelism;
+    }
+
+    public void setBulkLoadListener(BulkLoadListener bulkLoadListener) {
+        this.bulkLoadListener = bulkLoadListener;
+    }
+
+    // loads every json and yaml definition of the directory, sorted by file name
+    public List<BulkLoadResult> load(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                if (WorkflowDirectoryWatcher.isDefinition(file) && Files.isRegularFile(file)) {
+                    files.add(file);
+                }
+            }
+        }
+        Collections.sort(files);
+        return load(files);
+    }
+
+    public List<BulkLoadResult> load(Collection<Path> files) {
+        Map<String, Path> sources = new LinkedHashMap<>();
+        files.forEach(file -> sources.put(file.toString(),
+                                          file));
+        return load(sources,
+                    file -> new String(Files.readAllBytes(file),
+                                       StandardCharsets.UTF_8));
+    }
+
+    // loads markups keyed by a source name used to report the result
+    public List<BulkLoadResult> loadMarkups(Map<String, String> markups) {
+        return load(markups,
+                    markup -> markup);
+    }
+
+    // registers the valid results and returns how many were registered
+    public static int registerAll(List<BulkLoadResult> results,
+                                  WorkflowRegistry workflowRegistry) {
+        int registered = 0;
+        for (BulkLoadResult result : results) {
+            if (result.isValid()) {
+                workflowRegistry.register(result.getWorkflow());
+                registered++;
+            }
+        }
+        return registered;
+    }
+
+    private <T> List<BulkLoadResult> load(Map<String, T> sources,
+                                          MarkupReader<T> markupReader) {
+        int total = sources.size();
+        if (total == 0) {
+            return Collections.emptyList();
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism,
+                                                                         total),
+                                                                runnable -> {
+                                                                    Thread thread = new Thread(runnable,
+                                                                                               "workflow-bulk-loader");
+                                                                    thread.setDaemon(true);
+                                                                    return thread;
+                                                                });
+        AtomicInteger completed = new AtomicInteger();
+        List<Future<BulkLoadResult>> futures = new ArrayList<>(total);
+        try {
+            sources.forEach((name, source) -> futures.add(executor.submit(() -> {
+                BulkLoadResult result = loadSource(name,
+                                                   source,
+                                                   markupReader);
+                notifyLoaded(result,
+                             completed.incrementAndGet(),
+                             total);
+                return result;
+            })));
+
+            List<BulkLoadResult> results = new ArrayList<>(total);
+            for (Future<BulkLoadResult> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while loading workflows");
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Error loading workflows: " + e.getCause().getMessage(),
+                                       e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private <T> BulkLoadResult loadSource(String name,
+                                          T source,
+                                          MarkupReader<T> markupReader) {
+        try {
+            Workflow workflow = workflowManager.toWorkflow(markupReader.read(source));
+            return new BulkLoadResult(name,
+                                      workflow,
+                                      workflowManager.validate(workflow));
+        } catch (Exception e) {
+            logger.debug("Could not load workflow {}: {}",
+                         name,
+                         e.getMessage());
+            ValidationError validationError = new ValidationError();
+            validationError.setMessage(e.getMessage());
+            validationError.setType(ValidationError.SCHEMA_VALIDATION);
+            return new BulkLoadResult(name,
+                                      null,
+                                      Collections.singletonList(validationError));
+        }
+    }
+
+    private void notifyLoaded(BulkLoadResult result,
+                              int completed,
+                              int total) {
+        if (bulkLoadListener == null) {
+            return;
+        }
+        try {
+            bulkLoadListener.onLoaded(result,
+                                      completed,
+                                      total);
+        } catch (Exception e) {
+            logger.warn("Error notifying bulk load listener: " + e.getMessage());
+        }
+    }
+
+    @FunctionalInterface
+    private interface MarkupReader<T> {
+
+        String read(T source) throws IOException;
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package org.serverless.workflow.impl.loader;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.serverless.workflow.api.Workflow;
+import org.serverless.workflow.api.validation.ValidationError;
+import org.serverless.workflow.impl.manager.WorkflowManagerImpl;
+import org.serverless.workflow.impl.registry.WorkflowKey;
+import org.serverless.workflow.impl.registry.WorkflowRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Loads the workflow definitions of a directory into a registry and keeps them up to date.
+ * <p>
+ * Only changed files are parsed and validated again. Bursts of events for the same file are debounced,
+ * and a definition that fails to parse or validate leaves the previously registered version in place.
+ * Registering a new version swaps it in atomically; callers that already looked up the old model keep it.
+ */
+public class WorkflowDirectoryWatcher {
+
+    public static final long DEFAULT_DEBOUNCE_MILLIS = 200;
+
+    private final Path directory;
+    private final WorkflowRegistry workflowRegistry;
+    private final long debounceMillis;
+    private final Map<Path, WorkflowKey> loadedFiles = new ConcurrentHashMap<>();
+    private final Map<Path, List<ValidationError>> fileErrors = new ConcurrentHashMap<>();
+    private final Map<Path, ScheduledFuture<?>> pendingReloads = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService scheduler;
+    private WatchService watchService;
+    private Thread watcherThread;
+
+    private static Logger logger = LoggerFactory.getLogger(WorkflowDirectoryWatcher.class);
+
+    public WorkflowDirectoryWatcher(Path directory,
+                                    WorkflowRegistry workflowRegistry) {
+        this(directory,
+             workflowRegistry,
+             DEFAULT_DEBOUNCE_MILLIS);
+    }
+
+    public WorkflowDirectoryWatcher(Path directory,
+                                    WorkflowRegistry workflowRegistry,
+                                    long debounceMillis) {
+        this.directory = directory;
+        this.workflowRegistry = workflowRegistry;
+        this.debounceMillis = debounceMillis;
+    }
+
+    public synchronized void start() throws IOException {
+        if (watchService != null) {
+            return;
+        }
+
+        // register the watch before the initial scan so no change in between is missed
+        watchService = FileSystems.getDefault().newWatchService();
+        directory.register(watchService,
+                           StandardWatchEventKinds.ENTRY_CREATE,
+                           StandardWatchEventKinds.ENTRY_MODIFY,
+                           StandardWatchEventKinds.ENTRY_DELETE);
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                if (isDefinition(file)) {
+                    reload(file);
+                }
+            }
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable,
+                                       "workflow-reload");
+            thread.setDaemon(true);
+            return thread;
+        });
+        watcherThread = new Thread(this::watch,
+                                   "workflow-watcher");
+        watcherThread.setDaemon(true);
+        watcherThread.start();
+    }
+
+    public synchronized void stop() {
+        if (watchService == null) {
+            return;
+        }
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            logger.warn("Error closing watch service: " + e.getMessage());
+        }
+        scheduler.shutdownNow();
+        watcherThread.interrupt();
+        watchService = null;
+    }
+
+    // parses, validates and registers a single definition file
+    public boolean reload(Path file) {
+        if (!Files.exists(file)) {
+            WorkflowKey key = loadedFiles.remove(file);
+            fileErrors.remove(file);
+            // another file can still define the same name and version
+            if (key != null && !loadedFiles.containsValue(key)) {
+                workflowRegistry.unregister(key.getName(),
+                                            key.getVersion());
+                logger.info("Unregistered workflow {} of deleted file {}",
+                            key,
+                            file);
+            }
+            return key != null;
+        }
+
+        Workflow workflow;
+        List<ValidationError> validationErrors;
+        try {
+            String markup = new String(Files.readAllBytes(file),
+                                       StandardCharsets.UTF_8);
+            // the registry manager is shared, so its current workflow is left untouched
+            WorkflowManagerImpl workflowManager = workflowRegistry.getWorkflowManager();
+            workflow = workflowManager.toWorkflow(markup);
+            validationErrors = new ArrayList<>(workflowManager.validate(workflow));
+        } catch (Exception e) {
+            ValidationError validationError = new ValidationError();
+            validationError.setMessage(e.getMessage());
+            validationError.setType(ValidationError.SCHEMA_VALIDATION);
+            validationErrors = Collections.singletonList(validationError);
+            workflow = null;
+        }
+
+        if (!validationErrors.isEmpty()) {
+            fileErrors.put(file,
+                           validationErrors);
+            logger.warn("Keeping previous version of {}, found {} errors",
+                        file,
+                        validationErrors.size());
+            return false;
+        }
+
+        fileErrors.remove(file);
+        WorkflowKey key = workflowRegistry.register(workflow);
+        WorkflowKey previous = loadedFiles.put(file,
+                                               key);
+        if (previous != null && !previous.equals(key) && !loadedFiles.containsValue(previous)) {
+            workflowRegistry.unregister(previous.getName(),
+                                        previous.getVersion());
+        }
+        logger.debug("Registered workflow {} from {}",
+                     key,
+                     file);
+        return true;
+    }
+
+    public WorkflowKey getWorkflowKey(Path file) {
+        return loadedFiles.get(directory.resolve(file));
+    }
+
+    public List<ValidationError> getErrors(Path file) {
+        return fileErrors.getOrDefault(directory.resolve(file),
+                                       Collections.emptyList());
+    }
+
+    public WorkflowRegistry getWorkflowRegistry() {
+        return workflowRegistry;
+    }
+
+    private void watch() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey watchKey = watchService.take();
+                for (WatchEvent<?> event : watchKey.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        rescan();
+                        continue;
+                    }
+                    Path file = directory.resolve((Path) event.context());
+                    if (isDefinition(file)) {
+                        scheduleReload(file);
+                    }
+                }
+                if (!watchKey.reset()) {
+                    logger.warn("Directory {} is no longer watched",
+                                directory);
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // stopped
+        }
+    }
+
+    private void rescan() {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                if (isDefinition(file)) {
+                    scheduleReload(file);
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Error scanning {}: {}",
+                         directory,
+                         e.getMessage());
+        }
+        for (Path file : loadedFiles.keySet()) {
+            scheduleReload(file);
+        }
+    }
+
+    private void scheduleReload(Path file) {
+        pendingReloads.compute(file,
+                               (path, pending) -> {
+                                   if (pending != null) {
+                                       pending.cancel(false);
+                                   }
+                                   return scheduler.schedule(() -> {
+                                                                 pendingReloads.remove(path);
+                                                                 reload(path);
+                                                             },
+                                                             debounceMillis,
+                                                             TimeUnit.MILLISECONDS);
+                               });
+    }
+
+    static boolean isDefinition(Path file) {
+        String name = file.getFileName().toString();
+        return name.endsWith(".json") || name.endsWith(".yml") || name.endsWith(".yaml");
+    }
+}
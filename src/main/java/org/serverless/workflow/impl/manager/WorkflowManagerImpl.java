@@ -18,22 +18,50 @@
 
 package org.serverless.workflow.impl.manager;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonDeserializer;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
 import com.fasterxml.jackson.dataformat.yaml.YAMLGenerator;
 import com.fasterxml.jackson.dataformat.yaml.YAMLMapper;
 import org.serverless.workflow.api.ExpressionEvaluator;
 import org.serverless.workflow.api.Workflow;
 import org.serverless.workflow.api.WorkflowManager;
+import org.serverless.workflow.api.WorkflowPropertySource;
 import org.serverless.workflow.api.WorkflowValidator;
 import org.serverless.workflow.api.interfaces.Extension;
 import org.serverless.workflow.api.mapper.JsonObjectMapper;
 import org.serverless.workflow.api.mapper.YamlObjectMapper;
+import org.serverless.workflow.api.validation.ValidationError;
+import org.serverless.workflow.impl.diff.WorkflowDiff;
+import org.serverless.workflow.impl.diff.WorkflowDiffer;
 import org.serverless.workflow.impl.expression.JexlExpressionEvaluatorImpl;
+import org.serverless.workflow.impl.expression.WorkflowExpressionCompiler;
+import org.serverless.workflow.impl.extensions.LazyExtension;
+import org.serverless.workflow.impl.extensions.LazyExtensionDeserializer;
+import org.serverless.workflow.impl.extensions.LazyExtensionSerializer;
+import org.serverless.workflow.impl.patch.WorkflowPatcher;
+import org.serverless.workflow.impl.states.LazyWorkflowParser;
+import org.serverless.workflow.impl.utils.Fingerprint;
+import org.serverless.workflow.impl.utils.StringDeduplicationModule;
+import org.serverless.workflow.impl.utils.StringTable;
+import org.serverless.workflow.impl.utils.WorkflowFingerprinter;
 import org.serverless.workflow.impl.validator.WorkflowValidatorImpl;
+import org.serverless.workflow.impl.warmup.WarmUpResult;
+import org.serverless.workflow.impl.warmup.WorkflowWarmUp;
 import org.serverless.workflow.spi.ExpressionEvaluatorProvider;
 import org.serverless.workflow.spi.WorkflowPropertySourceProvider;
 import org.serverless.workflow.spi.WorkflowValidatorProvider;
@@ -49,6 +77,17 @@ public class WorkflowManagerImpl implements WorkflowManager {
     private WorkflowValidator defaultWorkflowValidator = new WorkflowValidatorImpl();
     private JsonObjectMapper jsonObjectMapper = new JsonObjectMapper();
     private YamlObjectMapper yamlObjectMapper = new YamlObjectMapper();
+    private SmileFactory smileFactory = new SmileFactory();
+    private LazyExtensionDeserializer jsonLazyExtensionDeserializer;
+    private LazyExtensionDeserializer yamlLazyExtensionDeserializer;
+    private WorkflowPropertySource workflowPropertySource;
+    private boolean lazyStates = false;
+    private WorkflowPatcher workflowPatcher;
+    private WorkflowFingerprinter workflowFingerprinter;
+    private WorkflowDiffer workflowDiffer;
+    private volatile WarmUpResult warmUpResult;
+    private final Map<String, Class<? extends Extension>> registeredExtensions = new TreeMap<>();
+    private StringDeduplicationModule stringDeduplicationModule = new StringDeduplicationModule(StringTable.getDefault());
 
     private static Logger logger = LoggerFactory.getLogger(WorkflowManagerImpl.class);
 
@@ -67,17 +106,28 @@ public class WorkflowManagerImpl implements WorkflowManager {
         workflowValidator.setWorkflowManager(this);
 
         try {
-            jsonObjectMapper = new JsonObjectMapper(WorkflowPropertySourceProvider.getInstance().get());
-            yamlObjectMapper = new YamlObjectMapper(WorkflowPropertySourceProvider.getInstance().get());
+            workflowPropertySource = WorkflowPropertySourceProvider.getInstance().get();
+            jsonObjectMapper = new JsonObjectMapper(workflowPropertySource);
+            yamlObjectMapper = new YamlObjectMapper(workflowPropertySource);
         } catch (Exception e) {
             logger.warn("Unable to load application.properties");
             jsonObjectMapper = new JsonObjectMapper();
             yamlObjectMapper = new YamlObjectMapper();
         }
+
+        jsonLazyExtensionDeserializer = registerLazyExtensions(jsonObjectMapper,
+                                                               jsonObjectMapper.getWorkflowModule().getExtensionDeserializer());
+        yamlLazyExtensionDeserializer = registerLazyExtensions(yamlObjectMapper,
+                                                               yamlObjectMapper.getWorkflowModule().getExtensionDeserializer());
+
+        // off by default, as the table is shared by all managers
+        stringDeduplicationModule.setEnabled(false);
+        jsonObjectMapper.registerModule(stringDeduplicationModule);
+        yamlObjectMapper.registerModule(stringDeduplicationModule);
     }
 
     @Override
-    public void setWorkflow(Workflow workflow) {
+    public synchronized void setWorkflow(Workflow workflow) {
         this.workflow = workflow;
     }
 
@@ -88,7 +138,7 @@ public class WorkflowManagerImpl implements WorkflowManager {
 
     @Override
     public WorkflowManager setMarkup(String workflowMarkup) {
-        this.workflow = toWorkflow(workflowMarkup);
+        setWorkflow(toWorkflow(workflowMarkup));
         return this;
     }
 
@@ -128,8 +178,44 @@ public class WorkflowManagerImpl implements WorkflowManager {
         this.defaultExpressionEvaluator = new JexlExpressionEvaluatorImpl();
     }
 
+    // compiles the expressions of the workflow with the default evaluator so they are cached before events arrive
+    public List<ValidationError> warmUpExpressions() {
+        return warmUpExpressions(workflow);
+    }
+
+    public List<ValidationError> warmUpExpressions(Workflow workflow) {
+        return WorkflowExpressionCompiler.compile(workflow,
+                                                  defaultExpressionEvaluator);
+    }
+
+    // runs the default synthetic workload until latencies are stable, see WorkflowWarmUp
+    public WarmUpResult warmUp() {
+        return warmUp(new WorkflowWarmUp(this));
+    }
+
+    public WarmUpResult warmUp(WorkflowWarmUp workflowWarmUp) {
+        WarmUpResult result = workflowWarmUp.run();
+        warmUpResult = result;
+        return result;
+    }
+
+    // result of the last warm-up, null until one finished
+    public WarmUpResult getWarmUpResult() {
+        return warmUpResult;
+    }
+
+    // false as well when the last warm-up hit its round or time limit before the latency was stable
+    public boolean isWarmedUp() {
+        WarmUpResult result = warmUpResult;
+        return result != null && result.isStable();
+    }
+
     @Override
     public String toJson() {
+        return toJson(workflow);
+    }
+
+    public String toJson(Workflow workflow) {
         try {
             return jsonObjectMapper.writeValueAsString(workflow);
         } catch (JsonProcessingException e) {
@@ -140,6 +226,10 @@ public class WorkflowManagerImpl implements WorkflowManager {
 
     @Override
     public String toYaml() {
+        return toYaml(workflow);
+    }
+
+    public String toYaml(Workflow workflow) {
         try {
             String jsonString = jsonObjectMapper.writeValueAsString(workflow);
             JsonNode jsonNode = jsonObjectMapper.readTree(jsonString);
@@ -153,8 +243,51 @@ public class WorkflowManagerImpl implements WorkflowManager {
         }
     }
 
+    // Smile encoded workflow, written with the json mapper so the workflow module and registered extensions apply
+    public byte[] toBinary() {
+        return toBinary(workflow);
+    }
+
+    public byte[] toBinary(Workflow workflow) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator generator = smileFactory.createGenerator(out)) {
+            generator.setCodec(jsonObjectMapper);
+            jsonObjectMapper.writeValue(generator,
+                                        workflow);
+        } catch (Exception e) {
+            logger.error("Error mapping to binary: " + e.getMessage());
+            return null;
+        }
+        return out.toByteArray();
+    }
+
+    public Workflow fromBinary(byte[] binary) {
+        try (JsonParser parser = smileFactory.createParser(binary)) {
+            // custom deserializers read subtrees through the parser codec
+            parser.setCodec(jsonObjectMapper);
+            return jsonObjectMapper.readValue(parser,
+                                              Workflow.class);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Could not convert binary to Workflow: " + e.getMessage());
+        }
+    }
+
+    public WorkflowManager setBinary(byte[] binary) {
+        setWorkflow(fromBinary(binary));
+        return this;
+    }
+
     @Override
     public Workflow toWorkflow(String markup) {
+        if (lazyStates && markup.trim().startsWith("{")) {
+            try {
+                return new LazyWorkflowParser(jsonObjectMapper,
+                                              this::resolveProperty).parse(markup.getBytes(StandardCharsets.UTF_8));
+            } catch (Exception e) {
+                throw new IllegalArgumentException("Could not convert markup to Workflow: " + e.getMessage());
+            }
+        }
+
         // try it as json markup first, if fails try yaml
         try {
             return jsonObjectMapper.readValue(markup,
@@ -169,9 +302,87 @@ public class WorkflowManagerImpl implements WorkflowManager {
         }
     }
 
+    // applies a json patch to the current workflow, the patched workflow becomes the current one
+    public Workflow applyPatch(String patch) {
+        if (workflow == null) {
+            throw new IllegalStateException("No workflow to patch");
+        }
+        if (workflowFingerprinter != null) {
+            // state only patches modify the workflow in place
+            workflowFingerprinter.invalidate(workflow);
+        }
+        if (workflowDiffer != null) {
+            // patched states and trigger events are bound as new instances, only their containers change
+            workflowDiffer.invalidate(workflow);
+        }
+        if (workflowPatcher == null || workflowPatcher.getWorkflow() != workflow) {
+            workflowPatcher = new WorkflowPatcher(workflow,
+                                                  jsonObjectMapper);
+        }
+        Workflow patched = workflowPatcher.apply(patch);
+        setWorkflow(patched);
+        return patched;
+    }
+
+    // content hashes are kept across diffs, patching through the manager invalidates them
+    public WorkflowDiff diff(Workflow from,
+                             Workflow to) {
+        return getWorkflowDiffer().diff(from,
+                                        to);
+    }
+
+    public WorkflowDiffer getWorkflowDiffer() {
+        if (workflowDiffer == null) {
+            workflowDiffer = new WorkflowDiffer(jsonObjectMapper);
+        }
+        return workflowDiffer;
+    }
+
+    public Fingerprint getFingerprint() {
+        return getFingerprint(workflow);
+    }
+
+    // memoized per workflow instance, stable across json and yaml markup of the same model
+    public Fingerprint getFingerprint(Workflow workflow) {
+        if (workflowFingerprinter == null) {
+            workflowFingerprinter = new WorkflowFingerprinter(jsonObjectMapper);
+        }
+        return workflowFingerprinter.getFingerprint(workflow);
+    }
+
+    public Workflow toWorkflow(JsonNode workflowNode) {
+        try {
+            return jsonObjectMapper.treeToValue(workflowNode,
+                                                Workflow.class);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Could not convert json node to Workflow: " + e.getMessage());
+        }
+    }
+
+    public JsonNode toJsonNode(Workflow workflow) {
+        return jsonObjectMapper.valueToTree(workflow);
+    }
+
+    public JsonNode toJsonNode(String markup) {
+        // try it as json markup first, if fails try yaml
+        try {
+            return jsonObjectMapper.readTree(markup);
+        } catch (Exception e) {
+            try {
+                return yamlObjectMapper.readTree(markup);
+            } catch (Exception ee) {
+                throw new IllegalArgumentException("Could not read markup: " + ee.getMessage());
+            }
+        }
+    }
+
     @Override
     public void registerExtension(String extensionId,
                                   Class<? extends Extension> extensionClass) {
+        synchronized (registeredExtensions) {
+            registeredExtensions.put(extensionId,
+                                     extensionClass);
+        }
         jsonObjectMapper.getWorkflowModule().getExtensionSerializer().addExtension(extensionId,
                                                                                    extensionClass);
         jsonObjectMapper.getWorkflowModule().getExtensionDeserializer().addExtension(extensionId,
@@ -181,5 +392,101 @@ public class WorkflowManagerImpl implements WorkflowManager {
                                                                                    extensionClass);
         yamlObjectMapper.getWorkflowModule().getExtensionDeserializer().addExtension(extensionId,
                                                                                      extensionClass);
+
+        jsonLazyExtensionDeserializer.addExtension(extensionId,
+                                                   extensionClass);
+        yamlLazyExtensionDeserializer.addExtension(extensionId,
+                                                   extensionClass);
+    }
+
+    // registered extension classes by extension id, sorted by id
+    public Map<String, Class<? extends Extension>> getRegisteredExtensions() {
+        synchronized (registeredExtensions) {
+            return Collections.unmodifiableMap(new TreeMap<>(registeredExtensions));
+        }
+    }
+
+    public WorkflowPropertySource getWorkflowPropertySource() {
+        return workflowPropertySource;
+    }
+
+    // validates a workflow without replacing the current one; validators other than WorkflowValidatorImpl
+    // only validate the current workflow, so it is swapped in and restored while holding the manager lock
+    public List<ValidationError> validate(Workflow workflow) {
+        WorkflowValidator validator = getWorkflowValidator();
+        if (validator instanceof WorkflowValidatorImpl) {
+            return ((WorkflowValidatorImpl) validator).validate(workflow);
+        }
+        synchronized (this) {
+            Workflow current = this.workflow;
+            try {
+                this.workflow = workflow;
+                return new ArrayList<>(validator.validate());
+            } finally {
+                this.workflow = current;
+            }
+        }
+    }
+
+    // when enabled, registered extensions are parsed to LazyExtension and bound on first access
+    public void setLazyExtensions(boolean lazyExtensions) {
+        jsonLazyExtensionDeserializer.setEnabled(lazyExtensions);
+        yamlLazyExtensionDeserializer.setEnabled(lazyExtensions);
+    }
+
+    public boolean isLazyExtensions() {
+        return jsonLazyExtensionDeserializer.isEnabled();
+    }
+
+    // when enabled, states of json markup are indexed on parse and bound on first access (see LazyStateList)
+    public void setLazyStates(boolean lazyStates) {
+        this.lazyStates = lazyStates;
+    }
+
+    public boolean isLazyStates() {
+        return lazyStates;
+    }
+
+    // when enabled, strings of parsed workflows are shared through the process wide StringTable
+    public void setStringDeduplication(boolean stringDeduplication) {
+        stringDeduplicationModule.setEnabled(stringDeduplication);
+    }
+
+    public boolean isStringDeduplication() {
+        return stringDeduplicationModule.isEnabled();
+    }
+
+    public Extension getExtension(String extensionId) {
+        if (workflow == null || workflow.getExtensions() == null) {
+            return null;
+        }
+
+        return workflow.getExtensions().stream()
+                .filter(extension -> extension != null && extensionId.equals(extension.getExtensionId()))
+                .map(LazyExtension::resolve)
+                .findFirst().orElse(null);
+    }
+
+    // the value the mappers read for a markup string, after property source substitution
+    public String resolveProperty(String value) {
+        if (workflowPropertySource == null || workflowPropertySource.getPropertySource() == null) {
+            return value;
+        }
+        return workflowPropertySource.getPropertySource().getProperty(value,
+                                                                      value);
+    }
+
+    private static LazyExtensionDeserializer registerLazyExtensions(ObjectMapper objectMapper,
+                                                                    JsonDeserializer<? extends Extension> extensionDeserializer) {
+        LazyExtensionDeserializer lazyExtensionDeserializer = new LazyExtensionDeserializer(extensionDeserializer,
+                                                                                            objectMapper);
+        // registered after the workflow module so it takes precedence for Extension
+        SimpleModule lazyExtensionsModule = new SimpleModule("lazy-extensions");
+        lazyExtensionsModule.addDeserializer(Extension.class,
+                                             lazyExtensionDeserializer);
+        lazyExtensionsModule.addSerializer(LazyExtension.class,
+                                           new LazyExtensionSerializer());
+        objectMapper.registerModule(lazyExtensionsModule);
+        return lazyExtensionDeserializer;
     }
 }
@@ -0,0 +1,587 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package org.serverless.workflow.impl.patch;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.serverless.workflow.api.Workflow;
+import org.serverless.workflow.api.events.TriggerEvent;
+import org.serverless.workflow.api.interfaces.State;
+
+/**
+ * Applies RFC 6902 json patch documents to a loaded workflow.
+ * <p>
+ * The json tree of the workflow is kept next to it and patched in place. Only the states and trigger
+ * events a patch touches are bound again; the others keep their instances, and the state list keeps its
+ * name index when states are only replaced. A change of a top level field binds a new workflow instance
+ * sharing the same state and trigger event lists.
+ * A patch is applied atomically: if an operation fails, neither the tree nor the workflow change.
+ * Changes made to the workflow model directly are not seen by the tree.
+ */
+public class WorkflowPatcher {
+
+    private static final String STATES = "states";
+    private static final String TRIGGER_DEFS = "trigger-defs";
+
+    private static final int CHANGED = -1;
+
+    private static final int ADDED = 0;
+    private static final int REMOVED = 1;
+    private static final int REPLACED = 2;
+
+    private final ObjectMapper objectMapper;
+    private Workflow workflow;
+    private JsonNode workflowNode;
+
+    public WorkflowPatcher(Workflow workflow,
+                           ObjectMapper objectMapper) {
+        this.workflow = workflow;
+        this.objectMapper = objectMapper;
+        this.workflowNode = objectMapper.valueToTree(workflow);
+    }
+
+    public Workflow getWorkflow() {
+        return workflow;
+    }
+
+    public JsonNode getJsonNode() {
+        return workflowNode;
+    }
+
+    public String toJson() {
+        try {
+            return objectMapper.writeValueAsString(workflowNode);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not write workflow json: " + e.getMessage());
+        }
+    }
+
+    public Workflow apply(String patch) {
+        JsonNode patchNode;
+        try {
+            patchNode = objectMapper.readTree(patch);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not read json patch: " + e.getMessage());
+        }
+        return apply(patchNode);
+    }
+
+    public synchronized Workflow apply(JsonNode patch) {
+        if (patch == null || !patch.isArray()) {
+            throw new IllegalArgumentException("Json patch should be an array of operations");
+        }
+
+        Changes changes = new Changes(workflow);
+        Deque<Runnable> undo = new ArrayDeque<>();
+        try {
+            for (JsonNode operation : patch) {
+                applyOperation(operation,
+                               changes,
+                               undo);
+            }
+            workflow = bind(changes);
+            return workflow;
+        } catch (RuntimeException e) {
+            // most recent change first
+            undo.forEach(Runnable::run);
+            if (e instanceof IllegalArgumentException) {
+                throw e;
+            }
+            throw new IllegalArgumentException("Could not apply json patch: " + e.getMessage(),
+                                               e);
+        }
+    }
+
+    private void applyOperation(JsonNode operation,
+                                Changes changes,
+                                Deque<Runnable> undo) {
+        String op = getText(operation,
+                            "op");
+        List<String> path = parsePointer(getText(operation,
+                                                 "path"));
+        switch (op) {
+            case "add":
+                add(path,
+                    getValue(operation),
+                    CHANGED,
+                    changes,
+                    undo);
+                break;
+            case "remove":
+                remove(path,
+                       changes,
+                       undo);
+                break;
+            case "replace":
+                replace(path,
+                        getValue(operation),
+                        changes,
+                        undo);
+                break;
+            case "move": {
+                List<String> from = parsePointer(getText(operation,
+                                                         "from"));
+                if (from.equals(path)) {
+                    break;
+                }
+                if (path.size() > from.size() && path.subList(0,
+                                                              from.size()).equals(from)) {
+                    throw new IllegalArgumentException("Cannot move " + toPointer(from) + " into one of its children");
+                }
+                JsonNode value = get(from);
+                int id = remove(from,
+                                changes,
+                                undo);
+                // an element moved inside the same list keeps its bound instance
+                boolean sameList = from.size() == 2 && path.size() == 2 && from.get(0).equals(path.get(0));
+                add(path,
+                    value,
+                    sameList ? id : CHANGED,
+                    changes,
+                    undo);
+                break;
+            }
+            case "copy":
+                add(path,
+                    get(parsePointer(getText(operation,
+                                             "from"))).deepCopy(),
+                    CHANGED,
+                    changes,
+                    undo);
+                break;
+            case "test":
+                if (!get(path).equals(getValue(operation))) {
+                    throw new IllegalArgumentException("Test failed for " + toPointer(path));
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported json patch operation: " + op);
+        }
+    }
+
+    private void add(List<String> path,
+                     JsonNode value,
+                     int id,
+                     Changes changes,
+                     Deque<Runnable> undo) {
+        if (path.isEmpty()) {
+            replaceRoot(value,
+                        changes,
+                        undo);
+            return;
+        }
+
+        JsonNode parent = get(path.subList(0,
+                                           path.size() - 1));
+        String last = path.get(path.size() - 1);
+        if (parent.isObject()) {
+            ObjectNode object = (ObjectNode) parent;
+            JsonNode previous = object.set(last,
+                                           value);
+            undo.push(() -> {
+                if (previous == null) {
+                    object.remove(last);
+                } else {
+                    object.set(last,
+                               previous);
+                }
+            });
+            changes.touch(path,
+                          CHANGED,
+                          REPLACED,
+                          CHANGED);
+        } else if (parent.isArray()) {
+            ArrayNode array = (ArrayNode) parent;
+            int index = "-".equals(last) ? array.size() : getIndex(path,
+                                                                  array.size() + 1);
+            array.insert(index,
+                         value);
+            undo.push(() -> array.remove(index));
+            changes.touch(path,
+                          index,
+                          ADDED,
+                          id);
+        } else {
+            throw new IllegalArgumentException("Path does not exist: " + toPointer(path));
+        }
+    }
+
+    // returns the original index of a removed state or trigger event that can be reused
+    private int remove(List<String> path,
+                       Changes changes,
+                       Deque<Runnable> undo) {
+        if (path.isEmpty()) {
+            throw new IllegalArgumentException("Cannot remove the whole workflow");
+        }
+
+        JsonNode parent = get(path.subList(0,
+                                           path.size() - 1));
+        String last = path.get(path.size() - 1);
+        if (parent.isObject() && parent.has(last)) {
+            ObjectNode object = (ObjectNode) parent;
+            JsonNode previous = object.remove(last);
+            undo.push(() -> object.set(last,
+                                       previous));
+            return changes.touch(path,
+                                 CHANGED,
+                                 REPLACED,
+                                 CHANGED);
+        } else if (parent.isArray()) {
+            ArrayNode array = (ArrayNode) parent;
+            int index = getIndex(path,
+                                 array.size());
+            JsonNode previous = array.remove(index);
+            undo.push(() -> array.insert(index,
+                                         previous));
+            return changes.touch(path,
+                                 index,
+                                 REMOVED,
+                                 CHANGED);
+        }
+        throw new IllegalArgumentException("Path does not exist: " + toPointer(path));
+    }
+
+    private void replace(List<String> path,
+                         JsonNode value,
+                         Changes changes,
+                         Deque<Runnable> undo) {
+        if (path.isEmpty()) {
+            replaceRoot(value,
+                        changes,
+                        undo);
+            return;
+        }
+
+        JsonNode parent = get(path.subList(0,
+                                           path.size() - 1));
+        String last = path.get(path.size() - 1);
+        if (parent.isObject() && parent.has(last)) {
+            ObjectNode object = (ObjectNode) parent;
+            JsonNode previous = object.set(last,
+                                           value);
+            undo.push(() -> object.set(last,
+                                       previous));
+            changes.touch(path,
+                          CHANGED,
+                          REPLACED,
+                          CHANGED);
+        } else if (parent.isArray()) {
+            ArrayNode array = (ArrayNode) parent;
+            int index = getIndex(path,
+                                 array.size());
+            JsonNode previous = array.set(index,
+                                          value);
+            undo.push(() -> array.set(index,
+                                      previous));
+            changes.touch(path,
+                          index,
+                          REPLACED,
+                          CHANGED);
+        } else {
+            throw new IllegalArgumentException("Path does not exist: " + toPointer(path));
+        }
+    }
+
+    private void replaceRoot(JsonNode value,
+                             Changes changes,
+                             Deque<Runnable> undo) {
+        if (!value.isObject()) {
+            throw new IllegalArgumentException("Workflow should be a json object");
+        }
+        JsonNode previous = workflowNode;
+        workflowNode = value;
+        undo.push(() -> workflowNode = previous);
+        changes.root = true;
+    }
+
+    private JsonNode get(List<String> path) {
+        JsonNode node = workflowNode;
+        for (int i = 0; i < path.size(); i++) {
+            if (node.isArray()) {
+                node = node.get(getIndex(path.subList(0,
+                                                      i + 1),
+                                         node.size()));
+            } else {
+                node = node.get(path.get(i));
+            }
+            if (node == null) {
+                throw new IllegalArgumentException("Path does not exist: " + toPointer(path.subList(0,
+                                                                                                    i + 1)));
+            }
+        }
+        return node;
+    }
+
+    // everything that can fail is bound before the workflow is modified
+    private Workflow bind(Changes changes) {
+        try {
+            if (changes.root) {
+                return objectMapper.treeToValue(workflowNode,
+                                                Workflow.class);
+            }
+
+            List<State> replacedStates = changes.states.replaced ? bindList(workflowNode.get(STATES),
+                                                                            State.class) : null;
+            Map<Integer, State> states = changes.states.bind(objectMapper,
+                                                             workflowNode.get(STATES),
+                                                             State.class);
+            List<TriggerEvent> replacedTriggerEvents = changes.triggerEvents.replaced ? bindList(workflowNode.get(TRIGGER_DEFS),
+                                                                                                 TriggerEvent.class) : null;
+            Map<Integer, TriggerEvent> triggerEvents = changes.triggerEvents.bind(objectMapper,
+                                                                                  workflowNode.get(TRIGGER_DEFS),
+                                                                                  TriggerEvent.class);
+
+            Workflow patched = workflow;
+            if (!changes.fields.isEmpty()) {
+                ObjectNode topLevel = objectMapper.createObjectNode();
+                workflowNode.fields().forEachRemaining(field -> {
+                    if (!STATES.equals(field.getKey()) && !TRIGGER_DEFS.equals(field.getKey())) {
+                        topLevel.set(field.getKey(),
+                                     field.getValue());
+                    }
+                });
+                patched = objectMapper.treeToValue(topLevel,
+                                                   Workflow.class);
+                patched.setStates(workflow.getStates());
+                patched.setTriggerDefs(workflow.getTriggerDefs());
+            }
+
+            if (changes.states.replaced) {
+                patched.setStates(replacedStates);
+            } else if (changes.states.isChanged()) {
+                patched.setStates(changes.states.commit(workflow.getStates(),
+                                                        states));
+            }
+            if (changes.triggerEvents.replaced) {
+                patched.setTriggerDefs(replacedTriggerEvents);
+            } else if (changes.triggerEvents.isChanged()) {
+                patched.setTriggerDefs(changes.triggerEvents.commit(workflow.getTriggerDefs(),
+                                                                    triggerEvents));
+            }
+            return patched;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not bind patched workflow: " + e.getMessage());
+        }
+    }
+
+    private <T> List<T> bindList(JsonNode listNode,
+                                 Class<T> elementClass) throws IOException {
+        if (listNode == null || listNode.isNull()) {
+            return null;
+        }
+        JavaType listType = objectMapper.getTypeFactory().constructCollectionType(List.class,
+                                                                                 elementClass);
+        return objectMapper.readerFor(listType).readValue(listNode);
+    }
+
+    private static String getText(JsonNode operation,
+                                  String field) {
+        JsonNode value = operation.get(field);
+        if (value == null || !value.isTextual()) {
+            throw new IllegalArgumentException("Json patch operation is missing \"" + field + "\": " + operation);
+        }
+        return value.asText();
+    }
+
+    private static JsonNode getValue(JsonNode operation) {
+        if (!operation.has("value")) {
+            throw new IllegalArgumentException("Json patch operation is missing \"value\": " + operation);
+        }
+        return operation.get("value");
+    }
+
+    private static int getIndex(List<String> path,
+                                int limit) {
+        String token = path.get(path.size() - 1);
+        if (token.isEmpty() || (token.length() > 1 && token.charAt(0) == '0')) {
+            throw new IllegalArgumentException("Invalid array index in " + toPointer(path));
+        }
+        int index;
+        try {
+            index = Integer.parseInt(token);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid array index in " + toPointer(path));
+        }
+        if (index < 0 || index >= limit) {
+            throw new IllegalArgumentException("Array index out of bounds in " + toPointer(path));
+        }
+        return index;
+    }
+
+    private static List<String> parsePointer(String pointer) {
+        if (pointer.isEmpty()) {
+            return Collections.emptyList();
+        }
+        if (pointer.charAt(0) != '/') {
+            throw new IllegalArgumentException("Invalid json pointer: " + pointer);
+        }
+        List<String> tokens = new ArrayList<>();
+        for (String token : pointer.substring(1).split("/",
+                                                       -1)) {
+            tokens.add(token.replace("~1",
+                                     "/").replace("~0",
+                                                  "~"));
+        }
+        return tokens;
+    }
+
+    private static String toPointer(List<String> path) {
+        StringBuilder pointer = new StringBuilder();
+        path.forEach(token -> pointer.append('/').append(token.replace("~",
+                                                                       "~0").replace("/",
+                                                                                     "~1")));
+        return pointer.toString();
+    }
+
+    private static class Changes {
+
+        boolean root;
+        final Set<String> fields = new HashSet<>();
+        final ListChanges states;
+        final ListChanges triggerEvents;
+
+        Changes(Workflow workflow) {
+            states = new ListChanges(workflow.getStates());
+            triggerEvents = new ListChanges(workflow.getTriggerDefs());
+        }
+
+        // index is the list index the operation resolved to when the path ends at a list element
+        int touch(List<String> path,
+                  int index,
+                  int kind,
+                  int id) {
+            String field = path.get(0);
+            ListChanges list = STATES.equals(field) ? states : TRIGGER_DEFS.equals(field) ? triggerEvents : null;
+            if (list == null) {
+                fields.add(field);
+                return CHANGED;
+            }
+            if (list.replaced) {
+                return CHANGED;
+            }
+            if (path.size() == 1 || (path.size() == 2 && index == CHANGED)) {
+                // the whole list, or the list is not a json array
+                list.replaced = true;
+                return CHANGED;
+            }
+            if (path.size() > 2) {
+                try {
+                    list.ids.set(Integer.parseInt(path.get(1)),
+                                 CHANGED);
+                } catch (RuntimeException e) {
+                    list.replaced = true;
+                }
+                return CHANGED;
+            }
+            switch (kind) {
+                case ADDED:
+                    list.ids.add(index,
+                                 id);
+                    return CHANGED;
+                case REMOVED:
+                    return list.ids.remove(index);
+                default:
+                    list.ids.set(index,
+                                 CHANGED);
+                    return CHANGED;
+            }
+        }
+    }
+
+    private static class ListChanges {
+
+        // for each element of the patched list, its index in the original list or CHANGED
+        final List<Integer> ids = new ArrayList<>();
+        final int originalSize;
+        boolean replaced;
+
+        ListChanges(List<?> original) {
+            originalSize = original == null ? 0 : original.size();
+            for (int i = 0; i < originalSize; i++) {
+                ids.add(i);
+            }
+        }
+
+        boolean isChanged() {
+            if (ids.size() != originalSize) {
+                return true;
+            }
+            for (int i = 0; i < ids.size(); i++) {
+                if (ids.get(i) != i) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        <T> Map<Integer, T> bind(ObjectMapper objectMapper,
+                                 JsonNode listNode,
+                                 Class<T> elementClass) throws IOException {
+            Map<Integer, T> bound = new HashMap<>();
+            if (replaced) {
+                return bound;
+            }
+            for (int i = 0; i < ids.size(); i++) {
+                if (ids.get(i) == CHANGED) {
+                    bound.put(i,
+                              objectMapper.treeToValue(listNode.get(i),
+                                                       elementClass));
+                }
+            }
+            return bound;
+        }
+
+        <T> List<T> commit(List<T> current,
+                           Map<Integer, T> bound) {
+            boolean inPlace = ids.size() == originalSize;
+            for (int i = 0; inPlace && i < ids.size(); i++) {
+                inPlace = ids.get(i) == i || ids.get(i) == CHANGED;
+            }
+            if (inPlace) {
+                try {
+                    bound.forEach(current::set);
+                    return current;
+                } catch (UnsupportedOperationException e) {
+                    // copy into a modifiable list below
+                }
+            }
+
+            List<T> list = new ArrayList<>(ids.size());
+            for (int i = 0; i < ids.size(); i++) {
+                int id = ids.get(i);
+                list.add(id == CHANGED ? bound.get(i) : current.get(id));
+            }
+            return list;
+        }
+    }
+}
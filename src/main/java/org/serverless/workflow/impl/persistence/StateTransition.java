@@ -0,0 +1,59 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package org.serverless.workflow.impl.persistence;
+
+public class StateTransition {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final String instanceId;
+    private final String stateId;
+    private final long timestamp;
+    private final byte[] data;
+
+    public StateTransition(String instanceId,
+                           String stateId,
+                           long timestamp,
+                           byte[] data) {
+        if (instanceId == null) {
+            throw new IllegalArgumentException("Instance id must not be null");
+        }
+        this.instanceId = instanceId;
+        this.stateId = stateId;
+        this.timestamp = timestamp;
+        this.data = data == null ? EMPTY : data;
+    }
+
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    public String getStateId() {
+        return stateId;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package org.serverless.workflow.impl.persistence;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Latest state of each instance up to a journal position, stored in a compact binary file.
+ * <p>
+ * File layout: magic, version, journal position, dictionary of state ids, base timestamp and one entry per
+ * instance (instance id, state id index, timestamp delta, data), followed by a crc32 of everything before it.
+ * Counts, lengths, indexes and timestamp deltas are varint encoded.
+ */
+public class WorkflowCheckpoint {
+
+    private static final int MAGIC = 0x57464350;
+    private static final byte VERSION = 1;
+
+    private final Map<String, StateTransition> instances;
+    private JournalPosition position;
+
+    private static Logger logger = LoggerFactory.getLogger(WorkflowCheckpoint.class);
+
+    public WorkflowCheckpoint() {
+        this(new HashMap<>(),
+             JournalPosition.START);
+    }
+
+    private WorkflowCheckpoint(Map<String, StateTransition> instances,
+                               JournalPosition position) {
+        this.instances = instances;
+        this.position = position;
+    }
+
+    public static WorkflowCheckpoint recover(Path file,
+                                             WorkflowJournal journal) throws IOException {
+        WorkflowCheckpoint checkpoint = new WorkflowCheckpoint();
+        if (Files.exists(file)) {
+            try {
+                checkpoint = read(file);
+            } catch (IllegalStateException e) {
+                logger.warn("Ignoring checkpoint {}: {}",
+                            file,
+                            e.getMessage());
+            }
+        }
+        checkpoint.catchUp(journal);
+        return checkpoint;
+    }
+
+    public static WorkflowCheckpoint read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                                                    StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                                                  0,
+                                                  channel.size());
+            if (buffer.limit() < 4) {
+                throw new IllegalStateException("Truncated checkpoint");
+            }
+
+            ByteBuffer content = buffer.duplicate();
+            content.limit(buffer.limit() - 4);
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            if ((int) crc.getValue() != buffer.getInt(buffer.limit() - 4)) {
+                throw new IllegalStateException("Checkpoint checksum mismatch");
+            }
+            buffer.limit(buffer.limit() - 4);
+
+            if (buffer.getInt() != MAGIC || buffer.get() != VERSION) {
+                throw new IllegalStateException("Unsupported checkpoint format");
+            }
+            JournalPosition position = new JournalPosition(buffer.getLong(),
+                                                           buffer.getInt());
+
+            String[] dictionary = new String[(int) readVarLong(buffer)];
+            for (int i = 0; i < dictionary.length; i++) {
+                dictionary[i] = readString(buffer);
+            }
+
+            long baseTimestamp = buffer.getLong();
+            int count = (int) readVarLong(buffer);
+            Map<String, StateTransition> instances = new HashMap<>(Math.max(16,
+                                                                            (int) (count / 0.75f) + 1));
+            for (int i = 0; i < count; i++) {
+                String instanceId = readString(buffer);
+                int stateIndex = (int) readVarLong(buffer);
+                long timestamp = baseTimestamp + readVarLong(buffer);
+                byte[] data = new byte[(int) readVarLong(buffer)];
+                buffer.get(data);
+                instances.put(instanceId,
+                              new StateTransition(instanceId,
+                                                  stateIndex == 0 ? null : dictionary[stateIndex - 1],
+                                                  timestamp,
+                                                  data));
+            }
+            return new WorkflowCheckpoint(instances,
+                                          position);
+        }
+    }
+
+    // applies the journal transitions appended since this checkpoint was taken
+    public void catchUp(WorkflowJournal journal) throws IOException {
+        // offsets in a compacted segment are stale, so it is replayed from its start; compaction keeps
+        // only the latest transition of each instance, which this checkpoint already holds or supersedes
+        JournalPosition from = position;
+        if (journal.isCompacted(position.getSegment())) {
+            from = new JournalPosition(position.getSegment(),
+                                       0);
+        }
+        position = journal.replay(from,
+                                  this::apply);
+    }
+
+    public void apply(StateTransition transition) {
+        instances.put(transition.getInstanceId(),
+                      transition);
+    }
+
+    // stays removed once written, as recovery only replays transitions after the checkpoint; compact the
+    // journal with a filter that drops finished instances so a compacted segment does not bring them back
+    public void remove(String instanceId) {
+        instances.remove(instanceId);
+    }
+
+    public StateTransition getInstance(String instanceId) {
+        return instances.get(instanceId);
+    }
+
+    public Collection<StateTransition> getInstances() {
+        return Collections.unmodifiableCollection(instances.values());
+    }
+
+    public JournalPosition getPosition() {
+        return position;
+    }
+
+    public void write(Path file) throws IOException {
+        Map<String, Integer> stateIds = new HashMap<>();
+        List<String> dictionary = new ArrayList<>();
+        long baseTimestamp = Long.MAX_VALUE;
+        for (StateTransition transition : instances.values()) {
+            if (transition.getStateId() != null && !stateIds.containsKey(transition.getStateId())) {
+                dictionary.add(transition.getStateId());
+                stateIds.put(transition.getStateId(),
+                             dictionary.size());
+            }
+            baseTimestamp = Math.min(baseTimestamp,
+                                     transition.getTimestamp());
+        }
+        if (instances.isEmpty()) {
+            baseTimestamp = 0;
+        }
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(temp,
+                                                    StandardOpenOption.CREATE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING,
+                                                    StandardOpenOption.WRITE)) {
+            OutputStream out = new CheckedOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel),
+                                                                                64 * 1024),
+                                                       crc);
+            ByteBuffer fixed = ByteBuffer.allocate(32);
+            fixed.putInt(MAGIC).put(VERSION).putLong(position.getSegment()).putInt(position.getOffset());
+            out.write(fixed.array(),
+                      0,
+                      fixed.position());
+
+            writeVarLong(out,
+                         dictionary.size());
+            for (String stateId : dictionary) {
+                writeString(out,
+                            stateId);
+            }
+
+            fixed.clear();
+            fixed.putLong(baseTimestamp);
+            out.write(fixed.array(),
+                      0,
+                      8);
+            writeVarLong(out,
+                         instances.size());
+            for (StateTransition transition : instances.values()) {
+                writeString(out,
+                            transition.getInstanceId());
+                writeVarLong(out,
+                             transition.getStateId() == null ? 0 : stateIds.get(transition.getStateId()));
+                writeVarLong(out,
+                             transition.getTimestamp() - baseTimestamp);
+                writeVarLong(out,
+                             transition.getData().length);
+                out.write(transition.getData());
+            }
+            out.flush();
+
+            fixed.clear();
+            fixed.putInt((int) crc.getValue());
+            fixed.flip();
+            channel.write(fixed);
+            channel.force(true);
+        }
+        Files.move(temp,
+                   file,
+                   StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+        logger.debug("Checkpoint of {} instances written at journal position {}",
+                     instances.size(),
+                     position);
+    }
+
+    private static void writeString(OutputStream out,
+                                    String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out,
+                     bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[(int) readVarLong(buffer)];
+        buffer.get(bytes);
+        return new String(bytes,
+                          StandardCharsets.UTF_8);
+    }
+
+    private static void writeVarLong(OutputStream out,
+                                     long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Malformed varint in checkpoint");
+    }
+}
@@ -0,0 +1,491 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package org.serverless.workflow.impl.persistence;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only journal of instance state transitions stored in memory-mapped segment files.
+ * <p>
+ * Each record is [length][crc32][instance id][state id][timestamp][data]. The length is written last,
+ * so a record torn by a crash reads as the end of the journal. Appends only copy into the mapped segment;
+ * commit forces the segment to disk and every transition appended before the force is committed with it,
+ * so concurrent writers share a single force (group commit).
+ */
+public class WorkflowJournal implements Closeable {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String COMPACTED_FILE = "compacted";
+    private static final int HEADER_SIZE = 8;
+    private static final int END_MARKER_SIZE = 4;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final TreeSet<Long> segments = new TreeSet<>();
+    private final Object appendLock = new Object();
+    private final Object commitLock = new Object();
+    private final Object compactionLock = new Object();
+    private final CRC32 crc = new CRC32();
+
+    private long activeSegment;
+    private FileChannel activeChannel;
+    private MappedByteBuffer activeBuffer;
+    private volatile JournalPosition committed;
+    private volatile long compactedThrough = -1;
+
+    private static Logger logger = LoggerFactory.getLogger(WorkflowJournal.class);
+
+    public WorkflowJournal(Path directory) throws IOException {
+        this(directory,
+             DEFAULT_SEGMENT_SIZE);
+    }
+
+    public WorkflowJournal(Path directory,
+                           int segmentSize) throws IOException {
+        if (segmentSize <= HEADER_SIZE + END_MARKER_SIZE) {
+            throw new IllegalArgumentException("Invalid segment size: " + segmentSize);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+                                                                     SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                segments.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                                                           name.length() - SEGMENT_SUFFIX.length())));
+            }
+        }
+
+        if (segments.isEmpty()) {
+            openSegment(0,
+                        0);
+        } else {
+            // recover the write position of the last segment
+            long last = segments.last();
+            openSegment(last,
+                        scan(last,
+                             0,
+                             null));
+        }
+        committed = getPosition();
+
+        Path compacted = directory.resolve(COMPACTED_FILE);
+        if (Files.exists(compacted)) {
+            compactedThrough = Long.parseLong(new String(Files.readAllBytes(compacted),
+                                                         StandardCharsets.UTF_8).trim());
+        }
+    }
+
+    public JournalPosition append(StateTransition transition) {
+        byte[] instanceId = transition.getInstanceId().getBytes(StandardCharsets.UTF_8);
+        byte[] stateId = transition.getStateId() == null ? new byte[0] : transition.getStateId().getBytes(StandardCharsets.UTF_8);
+        byte[] data = transition.getData();
+        if (instanceId.length > 0xFFFF || stateId.length > 0xFFFF) {
+            throw new IllegalArgumentException("Instance and state ids must not exceed 65535 bytes");
+        }
+
+        int bodyLength = 2 + instanceId.length + 2 + stateId.length + 8 + 4 + data.length;
+        int recordLength = HEADER_SIZE + bodyLength;
+        if (recordLength + END_MARKER_SIZE > segmentSize) {
+            throw new IllegalArgumentException("Transition of " + recordLength + " bytes exceeds the segment size");
+        }
+
+        synchronized (appendLock) {
+            if (activeBuffer.remaining() < recordLength + END_MARKER_SIZE) {
+                roll();
+            }
+
+            int start = activeBuffer.position();
+            activeBuffer.position(start + HEADER_SIZE);
+            activeBuffer.putShort((short) instanceId.length);
+            activeBuffer.put(instanceId);
+            activeBuffer.putShort((short) stateId.length);
+            activeBuffer.put(stateId);
+            activeBuffer.putLong(transition.getTimestamp());
+            activeBuffer.putInt(data.length);
+            activeBuffer.put(data);
+
+            ByteBuffer body = activeBuffer.duplicate();
+            body.position(start + HEADER_SIZE);
+            body.limit(start + recordLength);
+            crc.reset();
+            crc.update(body);
+
+            activeBuffer.putInt(start + 4,
+                                (int) crc.getValue());
+            activeBuffer.putInt(start,
+                                bodyLength);
+            return new JournalPosition(activeSegment,
+                                       activeBuffer.position());
+        }
+    }
+
+    public JournalPosition appendAndCommit(StateTransition transition) {
+        JournalPosition position = append(transition);
+        commit(position);
+        return position;
+    }
+
+    public void commit(JournalPosition position) {
+        if (committed.compareTo(position) >= 0) {
+            return;
+        }
+
+        synchronized (commitLock) {
+            // a concurrent commit may already have forced this position
+            if (committed.compareTo(position) >= 0) {
+                return;
+            }
+
+            MappedByteBuffer buffer;
+            JournalPosition current;
+            synchronized (appendLock) {
+                buffer = activeBuffer;
+                current = getPosition();
+            }
+            buffer.force();
+            committed = current;
+        }
+    }
+
+    public JournalPosition getPosition() {
+        synchronized (appendLock) {
+            return new JournalPosition(activeSegment,
+                                       activeBuffer.position());
+        }
+    }
+
+    public JournalPosition getCommittedPosition() {
+        return committed;
+    }
+
+    // true when compaction rewrote or removed the segment, so positions within it no longer point at records
+    public boolean isCompacted(long segment) {
+        return segment <= compactedThrough;
+    }
+
+    public JournalPosition replay(Consumer<StateTransition> consumer) throws IOException {
+        return replay(JournalPosition.START,
+                      consumer);
+    }
+
+    public JournalPosition replay(JournalPosition from,
+                                  Consumer<StateTransition> consumer) throws IOException {
+        JournalPosition end = getPosition();
+        JournalPosition last = from;
+        for (long segment : segmentsSnapshot()) {
+            if (segment < from.getSegment() || segment > end.getSegment()) {
+                continue;
+            }
+
+            // segments after the starting one are read from their beginning
+            int offset = segment == from.getSegment() ? from.getOffset() : 0;
+            int limit = segment == end.getSegment() ? end.getOffset() : Integer.MAX_VALUE;
+            last = new JournalPosition(segment,
+                                       scan(segment,
+                                            offset,
+                                            limit,
+                                            consumer));
+        }
+        return last;
+    }
+
+    // rewrites the sealed segments keeping only the latest transition of each instance that passes the filter
+    public void compact(Predicate<StateTransition> retain) throws IOException {
+        synchronized (compactionLock) {
+            List<Long> sealed = new ArrayList<>();
+            for (long segment : segmentsSnapshot()) {
+                if (segment != activeSegmentSnapshot()) {
+                    sealed.add(segment);
+                }
+            }
+            if (sealed.isEmpty()) {
+                return;
+            }
+
+            Map<String, StateTransition> latest = new LinkedHashMap<>();
+            for (long segment : sealed) {
+                scan(segment,
+                     0,
+                     Integer.MAX_VALUE,
+                     transition -> {
+                         latest.remove(transition.getInstanceId());
+                         latest.put(transition.getInstanceId(),
+                                    transition);
+                     });
+            }
+
+            long target = sealed.get(sealed.size() - 1);
+            Path temp = directory.resolve(SEGMENT_PREFIX + target + ".compact");
+            try (FileChannel channel = FileChannel.open(temp,
+                                                        StandardOpenOption.CREATE,
+                                                        StandardOpenOption.TRUNCATE_EXISTING,
+                                                        StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+                for (StateTransition transition : latest.values()) {
+                    if (retain != null && !retain.test(transition)) {
+                        continue;
+                    }
+                    byte[] record = encode(transition);
+                    if (buffer.remaining() < record.length) {
+                        flush(channel,
+                              buffer);
+                    }
+                    if (record.length > buffer.capacity()) {
+                        channel.write(ByteBuffer.wrap(record));
+                    } else {
+                        buffer.put(record);
+                    }
+                }
+                flush(channel,
+                      buffer);
+                channel.force(true);
+            }
+
+            // recorded before the segment is replaced, so a crash in between only costs a longer replay
+            Path marker = directory.resolve(COMPACTED_FILE + ".tmp");
+            Files.write(marker,
+                        Long.toString(target).getBytes(StandardCharsets.UTF_8));
+            Files.move(marker,
+                       directory.resolve(COMPACTED_FILE),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+            compactedThrough = target;
+
+            Files.move(temp,
+                       segmentPath(target),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+            for (long segment : sealed) {
+                if (segment != target) {
+                    synchronized (segments) {
+                        segments.remove(segment);
+                    }
+                    Files.deleteIfExists(segmentPath(segment));
+                }
+            }
+            logger.debug("Compacted {} journal segments into {} transitions",
+                         sealed.size(),
+                         latest.size());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (appendLock) {
+            activeBuffer.force();
+            activeChannel.close();
+        }
+    }
+
+    private void roll() {
+        try {
+            activeBuffer.force();
+            activeChannel.close();
+            openSegment(activeSegment + 1,
+                        0);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to roll journal segment: " + e.getMessage(),
+                                            e);
+        }
+    }
+
+    private void openSegment(long segment,
+                             int position) throws IOException {
+        Path path = segmentPath(segment);
+        activeChannel = FileChannel.open(path,
+                                         StandardOpenOption.CREATE,
+                                         StandardOpenOption.READ,
+                                         StandardOpenOption.WRITE);
+        long size = Math.max(activeChannel.size(),
+                             segmentSize);
+        activeBuffer = activeChannel.map(FileChannel.MapMode.READ_WRITE,
+                                         0,
+                                         size);
+        activeBuffer.position(position);
+        activeSegment = segment;
+        synchronized (segments) {
+            segments.add(segment);
+        }
+    }
+
+    private int scan(long segment,
+                     int offset,
+                     Consumer<StateTransition> consumer) throws IOException {
+        return scan(segment,
+                    offset,
+                    Integer.MAX_VALUE,
+                    consumer);
+    }
+
+    private int scan(long segment,
+                     int offset,
+                     int limit,
+                     Consumer<StateTransition> consumer) throws IOException {
+        Path path = segmentPath(segment);
+        if (!Files.exists(path)) {
+            return offset;
+        }
+
+        try (FileChannel channel = FileChannel.open(path,
+                                                    StandardOpenOption.READ)) {
+            int size = (int) Math.min(channel.size(),
+                                      Integer.MAX_VALUE);
+            if (offset >= size) {
+                return offset;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                                                  0,
+                                                  size);
+            buffer.limit(Math.min(size,
+                                  limit));
+            buffer.position(offset);
+
+            CRC32 checksum = new CRC32();
+            while (buffer.remaining() >= HEADER_SIZE) {
+                int start = buffer.position();
+                int bodyLength = buffer.getInt();
+                if (bodyLength <= 0 || bodyLength > buffer.remaining() - 4) {
+                    buffer.position(start);
+                    break;
+                }
+                int expected = buffer.getInt();
+
+                ByteBuffer body = buffer.duplicate();
+                body.limit(start + HEADER_SIZE + bodyLength);
+                checksum.reset();
+                checksum.update(body);
+                if ((int) checksum.getValue() != expected) {
+                    logger.warn("Journal segment {} has a corrupted record at offset {}",
+                                segment,
+                                start);
+                    buffer.position(start);
+                    break;
+                }
+
+                StateTransition transition = decode(buffer);
+                if (consumer != null) {
+                    consumer.accept(transition);
+                }
+            }
+            return buffer.position();
+        }
+    }
+
+    private static StateTransition decode(ByteBuffer buffer) {
+        String instanceId = readString(buffer);
+        String stateId = readString(buffer);
+        long timestamp = buffer.getLong();
+        byte[] data = new byte[buffer.getInt()];
+        buffer.get(data);
+        return new StateTransition(instanceId,
+                                   stateId.isEmpty() ? null : stateId,
+                                   timestamp,
+                                   data);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes,
+                          StandardCharsets.UTF_8);
+    }
+
+    private static byte[] encode(StateTransition transition) {
+        byte[] instanceId = transition.getInstanceId().getBytes(StandardCharsets.UTF_8);
+        byte[] stateId = transition.getStateId() == null ? new byte[0] : transition.getStateId().getBytes(StandardCharsets.UTF_8);
+        byte[] data = transition.getData();
+        int bodyLength = 2 + instanceId.length + 2 + stateId.length + 8 + 4 + data.length;
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + bodyLength);
+        buffer.position(HEADER_SIZE);
+        buffer.putShort((short) instanceId.length);
+        buffer.put(instanceId);
+        buffer.putShort((short) stateId.length);
+        buffer.put(stateId);
+        buffer.putLong(transition.getTimestamp());
+        buffer.putInt(data.length);
+        buffer.put(data);
+
+        CRC32 checksum = new CRC32();
+        checksum.update(buffer.array(),
+                        HEADER_SIZE,
+                        bodyLength);
+        buffer.putInt(0,
+                      bodyLength);
+        buffer.putInt(4,
+                      (int) checksum.getValue());
+        return buffer.array();
+    }
+
+    private static void flush(FileChannel channel,
+                              ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private List<Long> segmentsSnapshot() {
+        synchronized (segments) {
+            return new ArrayList<>(segments);
+        }
+    }
+
+    private long activeSegmentSnapshot() {
+        synchronized (appendLock) {
+            return activeSegment;
+        }
+    }
+
+    private Path segmentPath(long segment) {
+        return directory.resolve(String.format("%s%020d%s",
+                                               SEGMENT_PREFIX,
+                                               segment,
+                                               SEGMENT_SUFFIX));
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package org.serverless.workflow.impl.propertysource;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Read-only Properties view of an immutable map. Lookups go straight to the map, without the
+ * synchronization of the Hashtable methods it overrides. Every mutator throws UnsupportedOperationException,
+ * as writes would otherwise reach the unused Hashtable and never be seen by lookups.
+ */
+final class PropertySnapshot extends Properties {
+
+    private final Map<String, String> properties;
+
+    PropertySnapshot(Map<String, String> properties) {
+        this.properties = Collections.unmodifiableMap(properties);
+    }
+
+    Map<String, String> asMap() {
+        return properties;
+    }
+
+    @Override
+    public String getProperty(String key) {
+        return properties.get(key);
+    }
+
+    @Override
+    public String getProperty(String key,
+                              String defaultValue) {
+        String value = properties.get(key);
+        return value == null ? defaultValue : value;
+    }
+
+    @Override
+    public Object get(Object key) {
+        return properties.get(key);
+    }
+
+    @Override
+    public Object getOrDefault(Object key,
+                               Object defaultValue) {
+        String value = properties.get(key);
+        return value == null ? defaultValue : value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return properties.containsKey(key);
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        return properties.containsValue(value);
+    }
+
+    @Override
+    public boolean contains(Object value) {
+        return properties.containsValue(value);
+    }
+
+    @Override
+    public int size() {
+        return properties.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return properties.isEmpty();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<Object> keySet() {
+        return (Set<Object>) (Set<?>) properties.keySet();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<Map.Entry<Object, Object>> entrySet() {
+        return (Set<Map.Entry<Object, Object>>) (Set<?>) properties.entrySet();
+    }
+
+    @Override
+    public Collection<Object> values() {
+        return Collections.unmodifiableCollection(properties.values());
+    }
+
+    @Override
+    public Set<String> stringPropertyNames() {
+        return properties.keySet();
+    }
+
+    @Override
+    public Enumeration<?> propertyNames() {
+        return Collections.enumeration(properties.keySet());
+    }
+
+    @Override
+    public Enumeration<Object> keys() {
+        return Collections.enumeration(keySet());
+    }
+
+    @Override
+    public Enumeration<Object> elements() {
+        return Collections.enumeration(values());
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super Object, ? super Object> action) {
+        properties.forEach(action);
+    }
+
+    @Override
+    public Object setProperty(String key,
+                              String value) {
+        throw readOnly();
+    }
+
+    @Override
+    public Object put(Object key,
+                      Object value) {
+        throw readOnly();
+    }
+
+    @Override
+    public Object putIfAbsent(Object key,
+                              Object value) {
+        throw readOnly();
+    }
+
+    @Override
+    public void putAll(Map<?, ?> values) {
+        throw readOnly();
+    }
+
+    @Override
+    public Object remove(Object key) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean remove(Object key,
+                          Object value) {
+        throw readOnly();
+    }
+
+    @Override
+    public Object replace(Object key,
+                          Object value) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean replace(Object key,
+                           Object oldValue,
+                           Object newValue) {
+        throw readOnly();
+    }
+
+    @Override
+    public void replaceAll(BiFunction<? super Object, ? super Object, ?> function) {
+        throw readOnly();
+    }
+
+    @Override
+    public Object compute(Object key,
+                          BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+        throw readOnly();
+    }
+
+    @Override
+    public Object computeIfAbsent(Object key,
+                                  Function<? super Object, ?> mappingFunction) {
+        throw readOnly();
+    }
+
+    @Override
+    public Object computeIfPresent(Object key,
+                                   BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+        throw readOnly();
+    }
+
+    @Override
+    public Object merge(Object key,
+                        Object value,
+                        BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+        throw readOnly();
+    }
+
+    @Override
+    public void clear() {
+        throw readOnly();
+    }
+
+    @Override
+    public void load(Reader reader) {
+        throw readOnly();
+    }
+
+    @Override
+    public void load(InputStream inStream) {
+        throw readOnly();
+    }
+
+    @Override
+    public void loadFromXML(InputStream in) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        return o instanceof PropertySnapshot && properties.equals(((PropertySnapshot) o).properties);
+    }
+
+    @Override
+    public int hashCode() {
+        return properties.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return properties.toString();
+    }
+
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("Property snapshots are read-only, use WorkflowPropertySourceImpl.setPropertySource to change values");
+    }
+}
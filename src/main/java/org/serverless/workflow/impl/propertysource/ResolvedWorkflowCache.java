@@ -0,0 +1,190 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package org.serverless.workflow.impl.propertysource;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.serverless.workflow.api.Workflow;
+import org.serverless.workflow.impl.manager.WorkflowManagerImpl;
+import org.serverless.workflow.impl.utils.WorkflowUtils;
+import org.serverless.workflow.spi.WorkflowPropertySourceProvider;
+
+/**
+ * Resolves workflow markup against property sets, reusing compiled templates and resolved workflows.
+ * <p>
+ * Resolved workflows are keyed by the markup hash and the values of the properties the markup refers to,
+ * so property sets that differ only in unrelated keys share the same workflow. Values are taken as the
+ * manager mappers read them: keys missing from the given set resolve against the manager property source,
+ * and a change there yields a new workflow. Cached workflows are shared between callers and must not be
+ * modified.
+ */
+public class ResolvedWorkflowCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 1024;
+
+    private final WorkflowManagerImpl workflowManager;
+    private final Map<String, WorkflowTemplate> templates;
+    private final Map<ResolvedKey, Workflow> resolvedWorkflows;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public ResolvedWorkflowCache(WorkflowManagerImpl workflowManager) {
+        this(workflowManager,
+             DEFAULT_MAX_ENTRIES);
+    }
+
+    public ResolvedWorkflowCache(WorkflowManagerImpl workflowManager,
+                                 int maxEntries) {
+        this.workflowManager = workflowManager;
+        this.templates = new LinkedHashMap<String, WorkflowTemplate>(16,
+                                                                     0.75f,
+                                                                     true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, WorkflowTemplate> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        this.resolvedWorkflows = new LinkedHashMap<ResolvedKey, Workflow>(16,
+                                                                          0.75f,
+                                                                          true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ResolvedKey, Workflow> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public Workflow get(String markup) {
+        return get(markup,
+                   WorkflowPropertySourceProvider.getInstance().get().getPropertySource());
+    }
+
+    public Workflow get(String markup,
+                        Map<?, ?> properties) {
+        String markupHash = WorkflowUtils.getSha256(markup);
+        WorkflowTemplate template = getTemplate(markupHash,
+                                                markup);
+
+        // the mappers substitute what the given properties leave unresolved, so the key holds the final values
+        List<Object> values = new ArrayList<>(template.getPropertyKeys().size());
+        for (String key : template.getPropertyKeys()) {
+            Object value = properties instanceof Properties ? ((Properties) properties).getProperty(key) : properties.get(key);
+            values.add(workflowManager.resolveProperty(value == null ? key : value.toString()));
+        }
+        ResolvedKey resolvedKey = new ResolvedKey(markupHash,
+                                                  values);
+
+        Workflow workflow;
+        synchronized (resolvedWorkflows) {
+            workflow = resolvedWorkflows.get(resolvedKey);
+        }
+        if (workflow != null) {
+            hits.incrementAndGet();
+            return workflow;
+        }
+
+        misses.incrementAndGet();
+        workflow = template.toWorkflow(properties,
+                                       workflowManager);
+        synchronized (resolvedWorkflows) {
+            Workflow existing = resolvedWorkflows.putIfAbsent(resolvedKey,
+                                                              workflow);
+            return existing == null ? workflow : existing;
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public int getTemplateCount() {
+        synchronized (templates) {
+            return templates.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (templates) {
+            templates.clear();
+        }
+        synchronized (resolvedWorkflows) {
+            resolvedWorkflows.clear();
+        }
+    }
+
+    private WorkflowTemplate getTemplate(String markupHash,
+                                         String markup) {
+        WorkflowTemplate template;
+        synchronized (templates) {
+            template = templates.get(markupHash);
+        }
+        if (template != null) {
+            return template;
+        }
+
+        template = WorkflowTemplate.compile(markup,
+                                            workflowManager);
+        synchronized (templates) {
+            WorkflowTemplate existing = templates.putIfAbsent(markupHash,
+                                                              template);
+            return existing == null ? template : existing;
+        }
+    }
+
+    private static final class ResolvedKey {
+
+        private final String markupHash;
+        private final List<Object> values;
+        private final int hash;
+
+        ResolvedKey(String markupHash,
+                    List<Object> values) {
+            this.markupHash = markupHash;
+            this.values = values;
+            this.hash = 31 * markupHash.hashCode() + values.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ResolvedKey)) {
+                return false;
+            }
+            ResolvedKey that = (ResolvedKey) o;
+            return hash == that.hash && markupHash.equals(that.markupHash) && values.equals(that.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -15,43 +15,181 @@
  *   limitations under the License.
  *
  */
+
+
 package org.serverless.workflow.impl.propertysource;
 
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 import org.serverless.workflow.api.WorkflowPropertySource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Property source layered from (lowest to highest precedence) the classpath application.properties,
+ * an external properties file, environment variables and system properties.
+ * <p>
+ * Environment variables and system properties only override keys defined by the files; an environment
+ * variable matches a key in upper case with dots and dashes replaced by underscores (workflow.name is
+ * WORKFLOW_NAME). The layers are compiled into an immutable snapshot that is swapped atomically on reload,
+ * so lookups never block.
+ */
 public class WorkflowPropertySourceImpl implements WorkflowPropertySource {
 
-    private Properties propertySource = new Properties();
+    public static final String EXTERNAL_FILE_PROPERTY = "workflow.properties.file";
+
     private final String propertySourceName = "application.properties";
+    private final Path externalFile;
+    private final AtomicReference<PropertySnapshot> propertySource = new AtomicReference<>(new PropertySnapshot(new HashMap<>()));
+    private final List<Consumer<Properties>> changeListeners = new CopyOnWriteArrayList<>();
+    private volatile Map<String, String> explicitProperties;
+    private ScheduledExecutorService poller;
 
     private static Logger logger = LoggerFactory.getLogger(WorkflowPropertySourceImpl.class);
 
     public WorkflowPropertySourceImpl() {
+        this(getDefaultExternalFile());
+    }
+
+    public WorkflowPropertySourceImpl(Path externalFile) {
+        this.externalFile = externalFile;
+        reload();
+    }
+
+    // the returned snapshot is read-only, values are changed through setPropertySource or the layers
+    @Override
+    public Properties getPropertySource() {
+        return propertySource.get();
+    }
+
+    // replaces all layers with the given properties until reset with null
+    @Override
+    public void setPropertySource(Properties propertySource) {
+        if (propertySource == null) {
+            explicitProperties = null;
+        } else {
+            Map<String, String> properties = new HashMap<>();
+            for (String key : propertySource.stringPropertyNames()) {
+                properties.put(key,
+                               propertySource.getProperty(key));
+            }
+            explicitProperties = properties;
+        }
+        reload();
+    }
+
+    // serialized so concurrent reloads cannot publish an older snapshot over a newer one
+    public synchronized boolean reload() {
+        Map<String, String> properties = explicitProperties != null ? explicitProperties : compileLayers();
+        PropertySnapshot current = propertySource.get();
+        if (current.asMap().equals(properties)) {
+            return false;
+        }
+
+        PropertySnapshot snapshot = new PropertySnapshot(properties);
+        propertySource.set(snapshot);
+        for (Consumer<Properties> changeListener : changeListeners) {
+            changeListener.accept(snapshot);
+        }
+        return true;
+    }
+
+    public void addChangeListener(Consumer<Properties> changeListener) {
+        changeListeners.add(changeListener);
+    }
+
+    public synchronized void startPolling(long period,
+                                          TimeUnit unit) {
+        if (poller != null) {
+            return;
+        }
+        poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable,
+                                       "workflow-properties");
+            thread.setDaemon(true);
+            return thread;
+        });
+        poller.scheduleWithFixedDelay(() -> {
+                                          try {
+                                              if (reload()) {
+                                                  logger.info("Reloaded workflow properties");
+                                              }
+                                          } catch (Exception e) {
+                                              logger.error("Error reloading workflow properties: " + e.getMessage());
+                                          }
+                                      },
+                                      period,
+                                      period,
+                                      unit);
+    }
+
+    public synchronized void stopPolling() {
+        if (poller != null) {
+            poller.shutdownNow();
+            poller = null;
+        }
+    }
+
+    private Map<String, String> compileLayers() {
+        Properties files = new Properties();
         try {
             InputStream is = getClass().getClassLoader().getResourceAsStream(propertySourceName);
 
             if (is != null) {
-                propertySource.load(is);
+                try (InputStream in = is) {
+                    files.load(in);
+                }
             } else {
                 logger.warn("Unable to find application.properties. No property source available.");
             }
         } catch (Exception e) {
             logger.error("Error loading application.properties: " + e.getMessage());
         }
-    }
 
-    @Override
-    public Properties getPropertySource() {
-        return propertySource;
+        if (externalFile != null && Files.isRegularFile(externalFile)) {
+            try (InputStream in = Files.newInputStream(externalFile)) {
+                files.load(in);
+            } catch (Exception e) {
+                logger.error("Error loading " + externalFile + ": " + e.getMessage());
+            }
+        }
+
+        Map<String, String> properties = new HashMap<>();
+        Map<String, String> environment = System.getenv();
+        for (String key : files.stringPropertyNames()) {
+            String value = files.getProperty(key);
+
+            String environmentValue = environment.get(key.toUpperCase().replace('.',
+                                                                                '_').replace('-',
+                                                                                             '_'));
+            if (environmentValue != null) {
+                value = environmentValue;
+            }
+            value = System.getProperty(key,
+                                       value);
+
+            properties.put(key,
+                           value);
+        }
+        return properties;
     }
 
-    @Override
-    public void setPropertySource(Properties propertySource) {
-        this.propertySource = propertySource;
+    private static Path getDefaultExternalFile() {
+        String file = System.getProperty(EXTERNAL_FILE_PROPERTY,
+                                         System.getenv("WORKFLOW_PROPERTIES_FILE"));
+        return file == null || file.trim().isEmpty() ? null : Paths.get(file);
     }
 }
@@ -0,0 +1,164 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package org.serverless.workflow.impl.propertysource;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.serverless.workflow.api.Workflow;
+import org.serverless.workflow.impl.manager.WorkflowManagerImpl;
+
+/**
+ * Workflow markup read once into a tree, with the location of every string value that can name a property.
+ * <p>
+ * As with the property source of the mappers, a string value that equals a property key is replaced by the
+ * property value. Resolving only copies the tree and replaces the slots whose key is defined.
+ */
+public class WorkflowTemplate {
+
+    private final JsonNode tree;
+    private final JsonPointer[] parents;
+    private final String[] fields;
+    private final int[] indexes;
+    private final String[] keys;
+    private final Set<String> propertyKeys;
+
+    public WorkflowTemplate(JsonNode tree) {
+        this.tree = tree;
+
+        List<JsonPointer> slotParents = new ArrayList<>();
+        List<String> slotFields = new ArrayList<>();
+        List<Integer> slotIndexes = new ArrayList<>();
+        List<String> slotKeys = new ArrayList<>();
+        collectSlots(tree,
+                     "",
+                     slotParents,
+                     slotFields,
+                     slotIndexes,
+                     slotKeys);
+
+        parents = slotParents.toArray(new JsonPointer[0]);
+        fields = slotFields.toArray(new String[0]);
+        indexes = new int[slotIndexes.size()];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = slotIndexes.get(i);
+        }
+        keys = slotKeys.toArray(new String[0]);
+        propertyKeys = Collections.unmodifiableSet(new LinkedHashSet<>(slotKeys));
+    }
+
+    public static WorkflowTemplate compile(String markup,
+                                           WorkflowManagerImpl workflowManager) {
+        return new WorkflowTemplate(workflowManager.toJsonNode(markup));
+    }
+
+    // all string values of the markup, in document order; only those defined as properties are replaced
+    public Set<String> getPropertyKeys() {
+        return propertyKeys;
+    }
+
+    public JsonNode resolve(Map<?, ?> properties) {
+        JsonNode resolved = null;
+        for (int i = 0; i < keys.length; i++) {
+            Object value = properties instanceof Properties ? ((Properties) properties).getProperty(keys[i]) : properties.get(keys[i]);
+            if (value == null) {
+                continue;
+            }
+            if (resolved == null) {
+                resolved = tree.deepCopy();
+            }
+
+            JsonNode parent = resolved.at(parents[i]);
+            if (fields[i] != null) {
+                ((ObjectNode) parent).put(fields[i],
+                                          value.toString());
+            } else {
+                ((ArrayNode) parent).set(indexes[i],
+                                         ((ArrayNode) parent).textNode(value.toString()));
+            }
+        }
+        return resolved == null ? tree : resolved;
+    }
+
+    public Workflow toWorkflow(Map<?, ?> properties,
+                               WorkflowManagerImpl workflowManager) {
+        return workflowManager.toWorkflow(resolve(properties));
+    }
+
+    private static void collectSlots(JsonNode node,
+                                     String pointer,
+                                     List<JsonPointer> slotParents,
+                                     List<String> slotFields,
+                                     List<Integer> slotIndexes,
+                                     List<String> slotKeys) {
+        if (node.isObject()) {
+            Iterator<Map.Entry<String, JsonNode>> fieldIterator = node.fields();
+            while (fieldIterator.hasNext()) {
+                Map.Entry<String, JsonNode> field = fieldIterator.next();
+                if (field.getValue().isTextual()) {
+                    slotParents.add(JsonPointer.compile(pointer));
+                    slotFields.add(field.getKey());
+                    slotIndexes.add(-1);
+                    slotKeys.add(field.getValue().textValue());
+                } else {
+                    collectSlots(field.getValue(),
+                                 pointer + "/" + escape(field.getKey()),
+                                 slotParents,
+                                 slotFields,
+                                 slotIndexes,
+                                 slotKeys);
+                }
+            }
+        } else if (node.isArray()) {
+            for (int i = 0; i < node.size(); i++) {
+                JsonNode element = node.get(i);
+                if (element.isTextual()) {
+                    slotParents.add(JsonPointer.compile(pointer));
+                    slotFields.add(null);
+                    slotIndexes.add(i);
+                    slotKeys.add(element.textValue());
+                } else {
+                    collectSlots(element,
+                                 pointer + "/" + i,
+                                 slotParents,
+                                 slotFields,
+                                 slotIndexes,
+                                 slotKeys);
+                }
+            }
+        }
+    }
+
+    private static String escape(String field) {
+        return field.replace("~",
+                             "~0").replace("/",
+                                           "~1");
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package org.serverless.workflow.impl.registry;
+
+import java.util.Objects;
+
+public final class WorkflowKey implements Comparable<WorkflowKey> {
+
+    private final String name;
+    private final String version;
+
+    public WorkflowKey(String name,
+                       String version) {
+        if (name == null) {
+            throw new IllegalArgumentException("Workflow name must not be null");
+        }
+        this.name = name;
+        this.version = version == null ? "" : version;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    // orders by name, then by version comparing dot separated numeric parts numerically
+    @Override
+    public int compareTo(WorkflowKey other) {
+        int result = name.compareTo(other.name);
+        if (result != 0) {
+            return result;
+        }
+
+        String[] parts = version.split("\\.");
+        String[] otherParts = other.version.split("\\.");
+        for (int i = 0; i < Math.min(parts.length,
+                                     otherParts.length); i++) {
+            if (isNumeric(parts[i]) && isNumeric(otherParts[i])) {
+                result = Long.compare(Long.parseLong(parts[i]),
+                                      Long.parseLong(otherParts[i]));
+            } else {
+                result = parts[i].compareTo(otherParts[i]);
+            }
+            if (result != 0) {
+                return result;
+            }
+        }
+        return Integer.compare(parts.length,
+                               otherParts.length);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof WorkflowKey)) {
+            return false;
+        }
+        WorkflowKey that = (WorkflowKey) o;
+        return name.equals(that.name) && version.equals(that.version);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name,
+                            version);
+    }
+
+    @Override
+    public String toString() {
+        return version.isEmpty() ? name : name + ":" + version;
+    }
+
+    private static boolean isNumeric(String part) {
+        if (part.isEmpty() || part.length() > 18) {
+            return false;
+        }
+        for (int i = 0; i < part.length(); i++) {
+            if (!Character.isDigit(part.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package org.serverless.workflow.impl.registry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.serverless.workflow.api.Workflow;
+import org.serverless.workflow.impl.manager.WorkflowManagerImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registry of workflow definitions keyed by name and version.
+ * <p>
+ * All definitions share a single manager for parsing, so mappers, schema and expression evaluators
+ * exist once. Definitions are held in a concurrent map, so lookups never lock and registrations only
+ * contend on the same workflow name. When a maximum size and a markup source are configured, the least
+ * recently used definitions are released and parsed again from the source on their next lookup.
+ */
+public class WorkflowRegistry {
+
+    public static final int UNBOUNDED = -1;
+
+    private final WorkflowManagerImpl workflowManager;
+    private final int maxLoaded;
+    private final Function<WorkflowKey, String> source;
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicInteger loaded = new AtomicInteger();
+    private final Map<WorkflowKey, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, WorkflowKey> latest = new ConcurrentHashMap<>();
+
+    private static Logger logger = LoggerFactory.getLogger(WorkflowRegistry.class);
+
+    public WorkflowRegistry() {
+        this(new WorkflowManagerImpl());
+    }
+
+    public WorkflowRegistry(WorkflowManagerImpl workflowManager) {
+        this(workflowManager,
+             UNBOUNDED,
+             null);
+    }
+
+    public WorkflowRegistry(WorkflowManagerImpl workflowManager,
+                            int maxLoaded,
+                            Function<WorkflowKey, String> source) {
+        if (maxLoaded != UNBOUNDED && (maxLoaded < 1 || source == null)) {
+            throw new IllegalArgumentException("A bounded registry needs a positive size and a markup source");
+        }
+        this.workflowManager = workflowManager;
+        this.maxLoaded = maxLoaded;
+        this.source = source;
+    }
+
+    public WorkflowKey register(String markup) {
+        return register(parse(markup));
+    }
+
+    public WorkflowKey register(Workflow workflow) {
+        WorkflowKey key = new WorkflowKey(workflow.getName(),
+                                          workflow.getVersion());
+        Entry entry = new Entry(workflow,
+                                clock.incrementAndGet());
+        // changes of a name are serialized by its latest mapping, so the latest version stays consistent
+        latest.compute(key.getName(),
+                       (name, current) -> {
+                           loaded.incrementAndGet();
+                           Entry previous = entries.put(key,
+                                                        entry);
+                           if (previous != null) {
+                               previous.release();
+                           }
+                           return current == null || key.compareTo(current) > 0 ? key : current;
+                       });
+        evictIfNeeded();
+        return key;
+    }
+
+    public boolean unregister(String name,
+                              String version) {
+        WorkflowKey key = new WorkflowKey(name,
+                                          version);
+        boolean[] removed = new boolean[1];
+        latest.computeIfPresent(name,
+                                (workflowName, current) -> {
+                                    Entry previous = entries.remove(key);
+                                    if (previous == null) {
+                                        return current;
+                                    }
+                                    removed[0] = true;
+                                    previous.release();
+                                    return key.equals(current) ? findLatest(workflowName) : current;
+                                });
+        return removed[0];
+    }
+
+    public Workflow get(String name,
+                        String version) {
+        return get(new WorkflowKey(name,
+                                   version));
+    }
+
+    public Workflow getLatest(String name) {
+        WorkflowKey key = latest.get(name);
+        return key == null ? null : get(key);
+    }
+
+    public Workflow get(WorkflowKey key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        entry.lastAccess = clock.incrementAndGet();
+
+        Workflow workflow = entry.workflow;
+        if (workflow == null) {
+            workflow = reload(key,
+                              entry);
+        }
+        return workflow;
+    }
+
+    public Set<WorkflowKey> getKeys() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public int getLoadedCount() {
+        return loaded.get();
+    }
+
+    public WorkflowManagerImpl getWorkflowManager() {
+        return workflowManager;
+    }
+
+    private Workflow reload(WorkflowKey key,
+                            Entry entry) {
+        Workflow workflow;
+        synchronized (entry) {
+            if (entry.workflow != null) {
+                return entry.workflow;
+            }
+            String markup = source.apply(key);
+            if (markup == null) {
+                throw new IllegalArgumentException("No markup available for workflow " + key);
+            }
+            workflow = parse(markup);
+            // an entry replaced or unregistered meanwhile is returned once but not counted
+            if (entry.removed) {
+                return workflow;
+            }
+            entry.workflow = workflow;
+            loaded.incrementAndGet();
+        }
+        logger.debug("Reloaded workflow {}",
+                     key);
+        evictIfNeeded();
+        return workflow;
+    }
+
+    private void evictIfNeeded() {
+        if (maxLoaded == UNBOUNDED || loaded.get() <= maxLoaded) {
+            return;
+        }
+
+        List<Entry> candidates = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if (entry.workflow != null) {
+                candidates.add(entry);
+            }
+        }
+        candidates.sort((first, second) -> Long.compare(first.lastAccess,
+                                                        second.lastAccess));
+
+        for (Entry entry : candidates) {
+            if (loaded.get() <= maxLoaded) {
+                break;
+            }
+            entry.unload();
+        }
+    }
+
+    // callers hold the latest mapping of the name
+    private WorkflowKey findLatest(String name) {
+        WorkflowKey found = null;
+        for (WorkflowKey key : entries.keySet()) {
+            if (key.getName().equals(name) && (found == null || key.compareTo(found) > 0)) {
+                found = key;
+            }
+        }
+        return found;
+    }
+
+    private Workflow parse(String markup) {
+        synchronized (workflowManager) {
+            return workflowManager.toWorkflow(markup);
+        }
+    }
+
+    // the loaded count changes with the workflow of an entry, under the entry lock
+    private final class Entry {
+
+        volatile Workflow workflow;
+        volatile long lastAccess;
+        boolean removed;
+
+        Entry(Workflow workflow,
+              long lastAccess) {
+            this.workflow = workflow;
+            this.lastAccess = lastAccess;
+        }
+
+        synchronized void unload() {
+            if (!removed && workflow != null) {
+                workflow = null;
+                loaded.decrementAndGet();
+            }
+        }
+
+        synchronized void release() {
+            unload();
+            removed = true;
+        }
+    }
+}
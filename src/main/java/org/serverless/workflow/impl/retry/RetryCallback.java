@@ -0,0 +1,35 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package org.serverless.workflow.impl.retry;
+
+import org.serverless.workflow.api.actions.Action;
+
+public interface RetryCallback {
+
+    void onSuccess(Action action,
+                   Object result);
+
+    void onFailure(Action action,
+                   Throwable error);
+
+    void onRetriesExhausted(Action action,
+                            String nextState,
+                            Throwable error);
+}
@@ -0,0 +1,122 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package org.serverless.workflow.impl.retry;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.serverless.workflow.api.actions.Retry;
+import org.serverless.workflow.impl.utils.WorkflowUtils;
+
+public class RetryPolicy {
+
+    private final Pattern match;
+    private final long intervalNanos;
+    private final int maxRetry;
+    private final String nextState;
+    private final double multiplier;
+    private final long maxIntervalNanos;
+    private final double jitter;
+
+    public RetryPolicy(Retry retry,
+                       double multiplier,
+                       Duration maxInterval,
+                       double jitter) {
+        if (multiplier < 1.0) {
+            throw new IllegalArgumentException("Backoff multiplier must be at least 1: " + multiplier);
+        }
+        if (jitter < 0.0 || jitter > 1.0) {
+            throw new IllegalArgumentException("Jitter must be between 0 and 1: " + jitter);
+        }
+
+        Duration interval = WorkflowUtils.getDuration(retry.getRetryInterval());
+        Integer retries = retry.getMaxRetry();
+
+        this.match = toPattern(retry.getMatch());
+        this.intervalNanos = interval == null ? 0L : interval.toNanos();
+        this.maxRetry = retries == null ? 0 : Math.max(0,
+                                                       retries);
+        this.nextState = retry.getNextState();
+        this.multiplier = multiplier;
+        this.maxIntervalNanos = maxInterval == null ? Long.MAX_VALUE : maxInterval.toNanos();
+        this.jitter = jitter;
+    }
+
+    public static RetryPolicy fixed(Retry retry) {
+        return new RetryPolicy(retry,
+                               1.0,
+                               null,
+                               0.0);
+    }
+
+    // a missing match or "*" retries any error, otherwise it is a regex matched against
+    // the error class name, its simple name or its message
+    public boolean matches(Throwable error) {
+        if (match == null) {
+            return true;
+        }
+        if (error == null) {
+            return false;
+        }
+        return match.matcher(error.getClass().getName()).matches()
+                || match.matcher(error.getClass().getSimpleName()).matches()
+                || (error.getMessage() != null && match.matcher(error.getMessage()).find());
+    }
+
+    public boolean canRetry(int attempt) {
+        return attempt <= maxRetry;
+    }
+
+    // attempt is 1 for the first retry
+    public long getDelayNanos(int attempt) {
+        double delay = intervalNanos;
+        for (int i = 1; i < attempt && delay < maxIntervalNanos; i++) {
+            delay *= multiplier;
+        }
+        delay = Math.min(delay,
+                         (double) maxIntervalNanos);
+
+        if (jitter > 0.0) {
+            delay -= delay * jitter * ThreadLocalRandom.current().nextDouble();
+        }
+        return (long) delay;
+    }
+
+    public int getMaxRetry() {
+        return maxRetry;
+    }
+
+    public String getNextState() {
+        return nextState;
+    }
+
+    private static Pattern toPattern(String match) {
+        if (match == null || match.trim().isEmpty() || "*".equals(match.trim())) {
+            return null;
+        }
+        try {
+            return Pattern.compile(match.trim());
+        } catch (PatternSyntaxException e) {
+            return Pattern.compile(Pattern.quote(match.trim()));
+        }
+    }
+}
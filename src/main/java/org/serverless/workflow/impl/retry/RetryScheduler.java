@@ -0,0 +1,164 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package org.serverless.workflow.impl.retry;
+
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.serverless.workflow.api.actions.Action;
+import org.serverless.workflow.impl.actions.ActionExecutor;
+import org.serverless.workflow.impl.timer.HashedWheelTimer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executes actions and re-executes failed ones according to their retry definition.
+ * Attempts run on the executor and waits between them are timer entries, so no thread
+ * is blocked while an action waits for its next attempt.
+ */
+public class RetryScheduler {
+
+    private final ActionExecutor actionExecutor;
+    private final Executor executor;
+    private final HashedWheelTimer timer;
+    private double multiplier = 1.0;
+    private Duration maxInterval;
+    private double jitter = 0.0;
+
+    private final AtomicLong inFlightRetries = new AtomicLong();
+    private final AtomicLong exhaustedRetries = new AtomicLong();
+
+    private static Logger logger = LoggerFactory.getLogger(RetryScheduler.class);
+
+    public RetryScheduler(ActionExecutor actionExecutor,
+                          Executor executor,
+                          HashedWheelTimer timer) {
+        this.actionExecutor = actionExecutor;
+        this.executor = executor;
+        this.timer = timer;
+    }
+
+    public RetryScheduler withExponentialBackoff(double multiplier,
+                                                 Duration maxInterval,
+                                                 double jitter) {
+        this.multiplier = multiplier;
+        this.maxInterval = maxInterval;
+        this.jitter = jitter;
+        return this;
+    }
+
+    public void execute(Action action,
+                        RetryCallback callback) {
+        RetryPolicy retryPolicy = action.getRetry() == null ? null : new RetryPolicy(action.getRetry(),
+                                                                                    multiplier,
+                                                                                    maxInterval,
+                                                                                    jitter);
+        submit(new Attempt(action,
+                           retryPolicy,
+                           callback));
+    }
+
+    public long getInFlightRetries() {
+        return inFlightRetries.get();
+    }
+
+    public long getExhaustedRetries() {
+        return exhaustedRetries.get();
+    }
+
+    private void submit(Attempt attempt) {
+        try {
+            executor.execute(attempt);
+        } catch (RejectedExecutionException e) {
+            attempt.complete();
+            attempt.callback.onFailure(attempt.action,
+                                       e);
+        }
+    }
+
+    private class Attempt implements Runnable {
+
+        final Action action;
+        final RetryPolicy retryPolicy;
+        final RetryCallback callback;
+        int retries;
+
+        Attempt(Action action,
+                RetryPolicy retryPolicy,
+                RetryCallback callback) {
+            this.action = action;
+            this.retryPolicy = retryPolicy;
+            this.callback = callback;
+        }
+
+        @Override
+        public void run() {
+            Object result;
+            try {
+                result = actionExecutor.execute(action);
+            } catch (Exception e) {
+                onError(e);
+                return;
+            }
+            complete();
+            callback.onSuccess(action,
+                               result);
+        }
+
+        void onError(Throwable error) {
+            if (retryPolicy == null || !retryPolicy.matches(error)) {
+                complete();
+                callback.onFailure(action,
+                                   error);
+                return;
+            }
+
+            if (!retryPolicy.canRetry(retries + 1)) {
+                logger.debug("Retries exhausted after {} attempts, moving to {}",
+                             retries,
+                             retryPolicy.getNextState());
+                complete();
+                exhaustedRetries.incrementAndGet();
+                callback.onRetriesExhausted(action,
+                                            retryPolicy.getNextState(),
+                                            error);
+                return;
+            }
+
+            if (retries == 0) {
+                inFlightRetries.incrementAndGet();
+            }
+            retries++;
+            timer.schedule(() -> submit(this),
+                           retryPolicy.getDelayNanos(retries),
+                           TimeUnit.NANOSECONDS);
+        }
+
+        void complete() {
+            if (retries > 0) {
+                inFlightRetries.decrementAndGet();
+                retries = 0;
+            }
+        }
+    }
+}
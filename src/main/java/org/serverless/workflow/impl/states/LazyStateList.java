@@ -0,0 +1,152 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package org.serverless.workflow.impl.states;
+
+import java.util.AbstractList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.serverless.workflow.api.interfaces.State;
+
+/**
+ * List of states that keeps the json source of each state and binds it on first access.
+ * <p>
+ * States can only be replaced, not added or removed. Replacing is not safe concurrently with readers.
+ */
+public class LazyStateList extends AbstractList<State> implements RandomAccess {
+
+    private final byte[] source;
+    private final int[] starts;
+    private final int[] ends;
+    private final String[] names;
+    private final Map<String, Integer> nameIndex;
+    private final AtomicReferenceArray<State> states;
+    private final ObjectMapper objectMapper;
+
+    public LazyStateList(byte[] source,
+                         int[] starts,
+                         int[] ends,
+                         String[] names,
+                         ObjectMapper objectMapper) {
+        this.source = source;
+        this.starts = starts;
+        this.ends = ends;
+        this.names = names;
+        this.objectMapper = objectMapper;
+        this.states = new AtomicReferenceArray<>(starts.length);
+
+        nameIndex = new HashMap<>(Math.max(16,
+                                           (int) (names.length / 0.75f) + 1));
+        for (int i = names.length - 1; i >= 0; i--) {
+            if (names[i] != null) {
+                nameIndex.put(names[i],
+                              i);
+            }
+        }
+    }
+
+    @Override
+    public State get(int index) {
+        State state = states.get(index);
+        if (state != null) {
+            return state;
+        }
+
+        try (JsonParser parser = objectMapper.getFactory().createParser(source,
+                                                                        starts[index],
+                                                                        ends[index] - starts[index])) {
+            state = objectMapper.readValue(parser,
+                                           State.class);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Could not convert state " + names[index] + ": " + e.getMessage());
+        }
+
+        // a concurrent reader may have bound it first, keep a single instance
+        if (!states.compareAndSet(index,
+                                  null,
+                                  state)) {
+            state = states.get(index);
+        }
+        return state;
+    }
+
+    @Override
+    public State set(int index,
+                     State state) {
+        State previous = get(index);
+        states.set(index,
+                   state);
+
+        String previousName = names[index];
+        names[index] = state.getName();
+        if (previousName != null && !previousName.equals(names[index])
+                && Integer.valueOf(index).equals(nameIndex.get(previousName))) {
+            // the name now points to its next occurrence, if any
+            nameIndex.remove(previousName);
+            for (int i = index + 1; i < names.length; i++) {
+                if (previousName.equals(names[i])) {
+                    nameIndex.put(previousName,
+                                  i);
+                    break;
+                }
+            }
+        }
+        if (names[index] != null) {
+            Integer current = nameIndex.get(names[index]);
+            if (current == null || current > index) {
+                nameIndex.put(names[index],
+                              index);
+            }
+        }
+        return previous;
+    }
+
+    @Override
+    public int size() {
+        return starts.length;
+    }
+
+    public State getState(String name) {
+        Integer index = nameIndex.get(name);
+        return index == null ? null : get(index);
+    }
+
+    public String getStateName(int index) {
+        return names[index];
+    }
+
+    public boolean isMaterialized(int index) {
+        return states.get(index) != null;
+    }
+
+    public int getMaterializedCount() {
+        int count = 0;
+        for (int i = 0; i < states.length(); i++) {
+            if (states.get(i) != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package org.serverless.workflow.impl.states;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.UnaryOperator;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.serverless.workflow.api.Workflow;
+
+/**
+ * Parses json workflow markup binding everything but the states, which are indexed by byte range and name
+ * in a single token pass and handed to a LazyStateList.
+ */
+public class LazyWorkflowParser {
+
+    private static final String STATES = "states";
+    private static final String NAME = "name";
+
+    private final ObjectMapper objectMapper;
+    private final UnaryOperator<String> nameResolver;
+
+    public LazyWorkflowParser(ObjectMapper objectMapper,
+                              UnaryOperator<String> nameResolver) {
+        this.objectMapper = objectMapper;
+        this.nameResolver = nameResolver;
+    }
+
+    public Workflow parse(byte[] source) throws IOException {
+        ObjectNode workflowNode = objectMapper.createObjectNode();
+        LazyStateList states = null;
+
+        try (JsonParser parser = objectMapper.getFactory().createParser(source)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("Workflow markup is not a json object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if (STATES.equals(field) && token == JsonToken.START_ARRAY) {
+                    states = indexStates(parser,
+                                         source);
+                } else {
+                    JsonNode value = objectMapper.readTree(parser);
+                    workflowNode.set(field,
+                                     value);
+                }
+            }
+        }
+
+        Workflow workflow = objectMapper.treeToValue(workflowNode,
+                                                     Workflow.class);
+        if (states != null) {
+            workflow.setStates(states);
+        }
+        return workflow;
+    }
+
+    private LazyStateList indexStates(JsonParser parser,
+                                      byte[] source) throws IOException {
+        int count = 0;
+        int[] starts = new int[16];
+        int[] ends = new int[16];
+        String[] names = new String[16];
+
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts,
+                                       count * 2);
+                ends = Arrays.copyOf(ends,
+                                     count * 2);
+                names = Arrays.copyOf(names,
+                                      count * 2);
+            }
+            starts[count] = (int) parser.getTokenLocation().getByteOffset();
+
+            String name = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if (NAME.equals(field) && token == JsonToken.VALUE_STRING) {
+                    name = nameResolver.apply(parser.getText());
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            ends[count] = (int) parser.getCurrentLocation().getByteOffset();
+            names[count] = name;
+            count++;
+        }
+
+        return new LazyStateList(source,
+                                 Arrays.copyOf(starts,
+                                               count),
+                                 Arrays.copyOf(ends,
+                                               count),
+                                 Arrays.copyOf(names,
+                                               count),
+                                 objectMapper);
+    }
+}
@@ -0,0 +1,326 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package org.serverless.workflow.impl.timer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hashed timing wheel. Insert and cancel are O(1), expiry is processed per tick in batches.
+ * Timers are kept in parallel primitive arrays linked into per-bucket lists instead of one object
+ * per timer, so a pending timer costs its slot in those arrays plus the task reference.
+ * Timer handles encode the slot and a generation counter, so a stale handle never cancels a reused slot.
+ * Once started, delays are counted from the system clock; a timer driven through {@link #advance(long)}
+ * counts them from the last tick it advanced to.
+ */
+public class HashedWheelTimer {
+
+    private static final int NIL = -1;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final long tickNanos;
+    private final long startNanos;
+    private final int mask;
+    private final int[] buckets;
+    private final Executor taskExecutor;
+    private final Object lock = new Object();
+
+    private long[] deadlines = new long[INITIAL_CAPACITY];
+    private int[] next = new int[INITIAL_CAPACITY];
+    private int[] prev = new int[INITIAL_CAPACITY];
+    private int[] generations = new int[INITIAL_CAPACITY];
+    private Runnable[] tasks = new Runnable[INITIAL_CAPACITY];
+    private int freeHead = NIL;
+    private int highWaterMark;
+    private int pending;
+    private long currentTick;
+
+    private volatile boolean running;
+    private Thread worker;
+
+    private static Logger logger = LoggerFactory.getLogger(HashedWheelTimer.class);
+
+    public HashedWheelTimer() {
+        this(10,
+             TimeUnit.MILLISECONDS,
+             4096);
+    }
+
+    public HashedWheelTimer(long tickDuration,
+                            TimeUnit unit,
+                            int wheelSize) {
+        this(tickDuration,
+             unit,
+             wheelSize,
+             System.nanoTime(),
+             null);
+    }
+
+    public HashedWheelTimer(long tickDuration,
+                            TimeUnit unit,
+                            int wheelSize,
+                            long startNanos,
+                            Executor taskExecutor) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("Tick duration must be positive: " + tickDuration);
+        }
+        if (wheelSize <= 0 || wheelSize > (1 << 30)) {
+            throw new IllegalArgumentException("Invalid wheel size: " + wheelSize);
+        }
+
+        this.tickNanos = unit.toNanos(tickDuration);
+        this.startNanos = startNanos;
+        this.taskExecutor = taskExecutor;
+
+        int size = Integer.highestOneBit(wheelSize);
+        if (size < wheelSize) {
+            size <<= 1;
+        }
+        this.mask = size - 1;
+        this.buckets = new int[size];
+        Arrays.fill(buckets,
+                    NIL);
+    }
+
+    public long schedule(Runnable task,
+                         long delay,
+                         TimeUnit unit) {
+        if (task == null) {
+            throw new IllegalArgumentException("Task must not be null");
+        }
+
+        long delayTicks = Math.max(1L,
+                                   (unit.toNanos(Math.max(0L,
+                                                          delay)) + tickNanos - 1) / tickNanos);
+        synchronized (lock) {
+            int slot = allocate();
+            long deadline = baseTick() + delayTicks;
+            deadlines[slot] = deadline;
+            tasks[slot] = task;
+            link(slot,
+                 (int) (deadline & mask));
+            pending++;
+            return handle(slot);
+        }
+    }
+
+    public boolean cancel(long handle) {
+        int slot = (int) handle;
+        int generation = (int) (handle >>> 32);
+        synchronized (lock) {
+            if (slot < 0 || slot >= highWaterMark || generations[slot] != generation || tasks[slot] == null) {
+                return false;
+            }
+            unlink(slot);
+            release(slot);
+            return true;
+        }
+    }
+
+    public boolean isPending(long handle) {
+        int slot = (int) handle;
+        int generation = (int) (handle >>> 32);
+        synchronized (lock) {
+            return slot >= 0 && slot < highWaterMark && generations[slot] == generation && tasks[slot] != null;
+        }
+    }
+
+    public int getPendingTimers() {
+        synchronized (lock) {
+            return pending;
+        }
+    }
+
+    /**
+     * Processes all ticks elapsed up to the given time and runs the expired tasks.
+     * Called by the worker thread once started, can also be driven directly.
+     * @return number of expired timers
+     */
+    public int advance(long nowNanos) {
+        long targetTick = (nowNanos - startNanos) / tickNanos;
+        List<Runnable> expired = new ArrayList<>();
+        int expiredCount = 0;
+        while (true) {
+            synchronized (lock) {
+                if (currentTick >= targetTick) {
+                    break;
+                }
+                if (pending == 0) {
+                    currentTick = targetTick;
+                    break;
+                }
+                currentTick++;
+                expire(currentTick,
+                       expired);
+            }
+
+            // tasks run outside the lock, one batch per tick, so they can schedule follow-up timers
+            for (Runnable task : expired) {
+                run(task);
+            }
+            expiredCount += expired.size();
+            expired.clear();
+        }
+        return expiredCount;
+    }
+
+    public void start() {
+        synchronized (lock) {
+            if (worker != null) {
+                return;
+            }
+            running = true;
+            worker = new Thread(this::work,
+                                "workflow-timer");
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    public void stop() {
+        Thread stopped;
+        synchronized (lock) {
+            running = false;
+            stopped = worker;
+            worker = null;
+        }
+        if (stopped != null) {
+            LockSupport.unpark(stopped);
+        }
+    }
+
+    private void work() {
+        while (running) {
+            advance(System.nanoTime());
+            LockSupport.parkNanos(this,
+                                  tickNanos);
+        }
+    }
+
+    // the worker can lag behind the clock while it runs a batch, delays count from the elapsed time then
+    private long baseTick() {
+        if (worker == null) {
+            return currentTick;
+        }
+        return Math.max(currentTick,
+                        (System.nanoTime() - startNanos) / tickNanos);
+    }
+
+    private void run(Runnable task) {
+        try {
+            if (taskExecutor != null) {
+                taskExecutor.execute(task);
+            } else {
+                task.run();
+            }
+        } catch (Exception e) {
+            logger.warn("Timer task failed: {}",
+                        e.getMessage());
+        }
+    }
+
+    private void expire(long tick,
+                        List<Runnable> expired) {
+        int slot = buckets[(int) (tick & mask)];
+        while (slot != NIL) {
+            int following = next[slot];
+            // entries of later rounds share the bucket, they stay until their own tick comes
+            if (deadlines[slot] <= tick) {
+                expired.add(tasks[slot]);
+                unlink(slot);
+                release(slot);
+            }
+            slot = following;
+        }
+    }
+
+    private int allocate() {
+        if (freeHead != NIL) {
+            int slot = freeHead;
+            freeHead = next[slot];
+            return slot;
+        }
+        if (highWaterMark == tasks.length) {
+            grow();
+        }
+        return highWaterMark++;
+    }
+
+    private void release(int slot) {
+        tasks[slot] = null;
+        generations[slot]++;
+        next[slot] = freeHead;
+        prev[slot] = NIL;
+        freeHead = slot;
+        pending--;
+    }
+
+    private void link(int slot,
+                      int bucket) {
+        int head = buckets[bucket];
+        next[slot] = head;
+        prev[slot] = NIL;
+        if (head != NIL) {
+            prev[head] = slot;
+        }
+        buckets[bucket] = slot;
+    }
+
+    private void unlink(int slot) {
+        int before = prev[slot];
+        int after = next[slot];
+        if (before == NIL) {
+            buckets[(int) (deadlines[slot] & mask)] = after;
+        } else {
+            next[before] = after;
+        }
+        if (after != NIL) {
+            prev[after] = before;
+        }
+    }
+
+    private void grow() {
+        int capacity = tasks.length << 1;
+        if (capacity < 0) {
+            throw new IllegalStateException("Timer capacity exceeded");
+        }
+        deadlines = Arrays.copyOf(deadlines,
+                                  capacity);
+        next = Arrays.copyOf(next,
+                             capacity);
+        prev = Arrays.copyOf(prev,
+                             capacity);
+        generations = Arrays.copyOf(generations,
+                                    capacity);
+        tasks = Arrays.copyOf(tasks,
+                              capacity);
+    }
+
+    private long handle(int slot) {
+        return ((long) generations[slot] << 32) | (slot & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package org.serverless.workflow.impl.timer;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.serverless.workflow.api.actions.Action;
+import org.serverless.workflow.api.events.Event;
+import org.serverless.workflow.api.states.DelayState;
+import org.serverless.workflow.impl.utils.WorkflowUtils;
+
+public class TimeoutScheduler {
+
+    public static final long NO_TIMEOUT = -1L;
+
+    private final HashedWheelTimer timer;
+
+    public TimeoutScheduler(HashedWheelTimer timer) {
+        this.timer = timer;
+    }
+
+    public long scheduleDelay(DelayState delayState,
+                              Runnable onExpiry) {
+        return schedule(delayState.getTimeDelay(),
+                        onExpiry);
+    }
+
+    public long scheduleEventTimeout(Event event,
+                                     Runnable onTimeout) {
+        return schedule(event.getTimeout(),
+                        onTimeout);
+    }
+
+    public long scheduleActionTimeout(Action action,
+                                      Runnable onTimeout) {
+        return schedule(action.getTimeout(),
+                        onTimeout);
+    }
+
+    public long schedule(String isoDuration,
+                         Runnable task) {
+        Duration duration = WorkflowUtils.getDuration(isoDuration);
+        if (duration == null) {
+            return NO_TIMEOUT;
+        }
+
+        return timer.schedule(task,
+                              duration.toNanos(),
+                              TimeUnit.NANOSECONDS);
+    }
+
+    public boolean cancel(long handle) {
+        return handle != NO_TIMEOUT && timer.cancel(handle);
+    }
+
+    public HashedWheelTimer getTimer() {
+        return timer;
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package org.serverless.workflow.impl.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Computes the 128 bit MurmurHash3 (x64 variant, seed 0) of everything written to it, optionally
+ * passing the bytes on to another stream.
+ * <p>
+ * Bytes are hashed as they are written, so large content can be fingerprinted without being buffered.
+ */
+public class HashingOutputStream extends OutputStream {
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[16];
+    private int buffered;
+    private long length;
+    private long h1;
+    private long h2;
+
+    public HashingOutputStream() {
+        this(null);
+    }
+
+    public HashingOutputStream(OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        buffer[buffered++] = (byte) b;
+        if (buffered == 16) {
+            mix(buffer,
+                0);
+            buffered = 0;
+        }
+        length++;
+        if (out != null) {
+            out.write(b);
+        }
+    }
+
+    @Override
+    public void write(byte[] b,
+                      int off,
+                      int len) throws IOException {
+        if (out != null) {
+            out.write(b,
+                      off,
+                      len);
+        }
+        length += len;
+        int end = off + len;
+
+        // complete the pending block first
+        if (buffered > 0) {
+            int count = Math.min(16 - buffered,
+                                 len);
+            System.arraycopy(b,
+                             off,
+                             buffer,
+                             buffered,
+                             count);
+            buffered += count;
+            off += count;
+            if (buffered < 16) {
+                return;
+            }
+            mix(buffer,
+                0);
+            buffered = 0;
+        }
+
+        for (; off + 16 <= end; off += 16) {
+            mix(b,
+                off);
+        }
+
+        buffered = end - off;
+        System.arraycopy(b,
+                         off,
+                         buffer,
+                         0,
+                         buffered);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (out != null) {
+            out.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (out != null) {
+            out.close();
+        }
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    // hash of everything written so far
+    public Fingerprint getFingerprint() {
+        long[] hash = finish();
+        return new Fingerprint(hash[0],
+                               hash[1]);
+    }
+
+    @Override
+    public String toString() {
+        return getFingerprint().toString();
+    }
+
+    private void mix(byte[] block,
+                     int off) {
+        long k1 = getLong(block,
+                          off);
+        long k2 = getLong(block,
+                          off + 8);
+
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1,
+                             31);
+        k1 *= C2;
+        h1 ^= k1;
+
+        h1 = Long.rotateLeft(h1,
+                             27);
+        h1 += h2;
+        h1 = h1 * 5 + 0x52dce729;
+
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2,
+                             33);
+        k2 *= C1;
+        h2 ^= k2;
+
+        h2 = Long.rotateLeft(h2,
+                             31);
+        h2 += h1;
+        h2 = h2 * 5 + 0x38495ab5;
+    }
+
+    // finalizes a copy of the state so more bytes can still be written afterwards
+    private long[] finish() {
+        long x1 = h1;
+        long x2 = h2;
+        long k1 = 0;
+        long k2 = 0;
+
+        for (int i = buffered - 1; i >= 8; i--) {
+            k2 ^= (buffer[i] & 0xffL) << ((i - 8) * 8);
+        }
+        if (buffered > 8) {
+            k2 *= C2;
+            k2 = Long.rotateLeft(k2,
+                                 33);
+            k2 *= C1;
+            x2 ^= k2;
+        }
+
+        for (int i = Math.min(buffered,
+                              8) - 1; i >= 0; i--) {
+            k1 ^= (buffer[i] & 0xffL) << (i * 8);
+        }
+        if (buffered > 0) {
+            k1 *= C1;
+            k1 = Long.rotateLeft(k1,
+                                 31);
+            k1 *= C2;
+            x1 ^= k1;
+        }
+
+        x1 ^= length;
+        x2 ^= length;
+        x1 += x2;
+        x2 += x1;
+        x1 = fmix(x1);
+        x2 = fmix(x2);
+        x1 += x2;
+        x2 += x1;
+        return new long[]{x1, x2};
+    }
+
+    private static long fmix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    private static long getLong(byte[] b,
+                                int off) {
+        return (b[off] & 0xffL)
+                | (b[off + 1] & 0xffL) << 8
+                | (b[off + 2] & 0xffL) << 16
+                | (b[off + 3] & 0xffL) << 24
+                | (b[off + 4] & 0xffL) << 32
+                | (b[off + 5] & 0xffL) << 40
+                | (b[off + 6] & 0xffL) << 48
+                | (b[off + 7] & 0xffL) << 56;
+    }
+}
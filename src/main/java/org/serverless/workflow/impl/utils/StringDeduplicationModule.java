@@ -0,0 +1,94 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package org.serverless.workflow.impl.utils;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.DeserializationConfig;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.deser.BeanDeserializerModifier;
+import com.fasterxml.jackson.databind.deser.std.DelegatingDeserializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+
+/**
+ * Module that canonicalizes the strings of deserialized models through a StringTable.
+ * <p>
+ * It wraps whichever String deserializer is in place (including property source resolution),
+ * so only the returned values are affected.
+ */
+public class StringDeduplicationModule extends SimpleModule {
+
+    private final StringTable stringTable;
+    private volatile boolean enabled = true;
+
+    public StringDeduplicationModule(StringTable stringTable) {
+        super("string-deduplication");
+        this.stringTable = stringTable;
+        setDeserializerModifier(new BeanDeserializerModifier() {
+            @Override
+            public JsonDeserializer<?> modifyDeserializer(DeserializationConfig config,
+                                                          BeanDescription beanDesc,
+                                                          JsonDeserializer<?> deserializer) {
+                if (beanDesc.getBeanClass() == String.class) {
+                    return new CanonicalStringDeserializer(deserializer);
+                }
+                return deserializer;
+            }
+        });
+    }
+
+    public StringTable getStringTable() {
+        return stringTable;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    private class CanonicalStringDeserializer extends DelegatingDeserializer {
+
+        CanonicalStringDeserializer(JsonDeserializer<?> delegate) {
+            super(delegate);
+        }
+
+        @Override
+        protected JsonDeserializer<?> newDelegatingInstance(JsonDeserializer<?> newDelegatee) {
+            return new CanonicalStringDeserializer(newDelegatee);
+        }
+
+        @Override
+        public Object deserialize(JsonParser jp,
+                                  DeserializationContext ctxt) throws IOException {
+            Object value = super.deserialize(jp,
+                                             ctxt);
+            if (enabled && value instanceof String) {
+                return stringTable.canonicalize((String) value);
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package org.serverless.workflow.impl.utils;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded, lock-free table of canonical strings.
+ * <p>
+ * Each string hashes to a single slot holding a weak reference, so the table never grows, never keeps
+ * a string alive on its own, and a colliding string simply replaces the previous one.
+ */
+public class StringTable {
+
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private static final StringTable DEFAULT = new StringTable(DEFAULT_CAPACITY);
+
+    private final AtomicReferenceArray<WeakReference<String>> slots;
+    private final int mask;
+
+    public StringTable(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Invalid string table capacity: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    public static StringTable getDefault() {
+        return DEFAULT;
+    }
+
+    public String canonicalize(String value) {
+        if (value == null) {
+            return null;
+        }
+
+        int hash = value.hashCode();
+        int index = (hash ^ (hash >>> 16)) & mask;
+        WeakReference<String> slot = slots.get(index);
+        if (slot != null) {
+            String canonical = slot.get();
+            if (canonical != null && canonical.equals(value)) {
+                return canonical;
+            }
+        }
+
+        slots.set(index,
+                  new WeakReference<>(value));
+        return value;
+    }
+
+    public int getCapacity() {
+        return slots.length();
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package org.serverless.workflow.impl.utils;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Concurrent cache keyed by object identity that does not keep its keys alive.
+ * <p>
+ * Entries are dropped once their key is garbage collected. Values must not refer to their key,
+ * otherwise the key stays reachable and the entry is never dropped.
+ */
+public class WeakIdentityCache<K, V> {
+
+    private final Map<IdentityReference<K>, V> entries = new ConcurrentHashMap<>();
+    private final ReferenceQueue<K> collected = new ReferenceQueue<>();
+
+    public V get(K key) {
+        expunge();
+        return entries.get(new IdentityReference<>(key,
+                                                   null));
+    }
+
+    public void put(K key,
+                    V value) {
+        expunge();
+        entries.put(new IdentityReference<>(key,
+                                            collected),
+                    value);
+    }
+
+    public V computeIfAbsent(K key,
+                             Function<? super K, ? extends V> mappingFunction) {
+        V value = get(key);
+        if (value == null) {
+            // computed outside of the map so the mapping function can use the cache too
+            value = mappingFunction.apply(key);
+            if (value != null) {
+                V previous = entries.putIfAbsent(new IdentityReference<>(key,
+                                                                         collected),
+                                                 value);
+                if (previous != null) {
+                    value = previous;
+                }
+            }
+        }
+        return value;
+    }
+
+    public V remove(K key) {
+        expunge();
+        return entries.remove(new IdentityReference<>(key,
+                                                      null));
+    }
+
+    public int size() {
+        expunge();
+        return entries.size();
+    }
+
+    public void clear() {
+        entries.clear();
+        expunge();
+    }
+
+    private void expunge() {
+        Object reference;
+        while ((reference = collected.poll()) != null) {
+            entries.remove(reference);
+        }
+    }
+
+    private static class IdentityReference<K> extends WeakReference<K> {
+
+        private final int hash;
+
+        IdentityReference(K key,
+                          ReferenceQueue<K> queue) {
+            super(key,
+                  queue);
+            this.hash = System.identityHashCode(key);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof IdentityReference)) {
+                return false;
+            }
+            Object key = get();
+            return key != null && key == ((IdentityReference<?>) o).get();
+        }
+    }
+}
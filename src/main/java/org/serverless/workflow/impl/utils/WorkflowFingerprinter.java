@@ -0,0 +1,189 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package org.serverless.workflow.impl.utils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import org.serverless.workflow.api.Workflow;
+
+/**
+ * Canonical 128 bit content hash of workflow models.
+ * <p>
+ * The model is serialized into a token buffer, never into a string, and hashed bottom up: the hash of an
+ * object combines the hashes of its fields sorted by name, so it does not depend on field or map entry
+ * order, and the same model gets the same fingerprint whether it was read from json or yaml.
+ * Fingerprints of workflows are memoized per instance; a workflow that is modified afterwards has to be
+ * invalidated.
+ */
+public class WorkflowFingerprinter {
+
+    private static final Comparator<Map.Entry<String, Fingerprint>> BY_NAME = Map.Entry.comparingByKey();
+
+    private final ObjectMapper objectMapper;
+    private final WeakIdentityCache<Workflow, Fingerprint> fingerprints = new WeakIdentityCache<>();
+
+    public WorkflowFingerprinter(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    public Fingerprint getFingerprint(Workflow workflow) {
+        return fingerprints.computeIfAbsent(workflow,
+                                            this::computeFingerprint);
+    }
+
+    public void invalidate(Workflow workflow) {
+        fingerprints.remove(workflow);
+    }
+
+    // not memoized, works for any part of the model
+    public Fingerprint computeFingerprint(Object value) {
+        TokenBuffer tokens = new TokenBuffer(objectMapper,
+                                             false);
+        try {
+            objectMapper.writeValue(tokens,
+                                    value);
+            try (JsonParser parser = tokens.asParser()) {
+                parser.nextToken();
+                return hashValue(parser);
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not fingerprint " + value.getClass().getSimpleName() + ": " + e.getMessage());
+        }
+    }
+
+    private static Fingerprint hashValue(JsonParser parser) throws IOException {
+        HashingOutputStream hash = new HashingOutputStream();
+        JsonToken token = parser.currentToken();
+        switch (token) {
+            case START_OBJECT:
+                List<Map.Entry<String, Fingerprint>> fields = new ArrayList<>();
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.getCurrentName();
+                    parser.nextToken();
+                    fields.add(new AbstractMap.SimpleImmutableEntry<>(name,
+                                                                      hashValue(parser)));
+                }
+                fields.sort(BY_NAME);
+                hash.write('O');
+                writeInt(hash,
+                         fields.size());
+                for (Map.Entry<String, Fingerprint> field : fields) {
+                    writeString(hash,
+                                field.getKey());
+                    writeFingerprint(hash,
+                                     field.getValue());
+                }
+                break;
+            case START_ARRAY:
+                List<Fingerprint> elements = new ArrayList<>();
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    elements.add(hashValue(parser));
+                }
+                hash.write('A');
+                writeInt(hash,
+                         elements.size());
+                for (Fingerprint element : elements) {
+                    writeFingerprint(hash,
+                                     element);
+                }
+                break;
+            case VALUE_STRING:
+                hash.write('s');
+                writeString(hash,
+                            parser.getText());
+                break;
+            case VALUE_NUMBER_INT:
+                hash.write('i');
+                writeString(hash,
+                            parser.getBigIntegerValue().toString());
+                break;
+            case VALUE_NUMBER_FLOAT:
+                hash.write('d');
+                writeString(hash,
+                            parser.getDecimalValue().stripTrailingZeros().toString());
+                break;
+            case VALUE_TRUE:
+                hash.write('t');
+                break;
+            case VALUE_FALSE:
+                hash.write('f');
+                break;
+            case VALUE_NULL:
+                hash.write('n');
+                break;
+            case VALUE_EMBEDDED_OBJECT:
+                Object embedded = parser.getEmbeddedObject();
+                hash.write('e');
+                if (embedded instanceof byte[]) {
+                    writeInt(hash,
+                             ((byte[]) embedded).length);
+                    hash.write((byte[]) embedded);
+                } else {
+                    writeString(hash,
+                                String.valueOf(embedded));
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unexpected token " + token);
+        }
+        return hash.getFingerprint();
+    }
+
+    private static void writeString(HashingOutputStream hash,
+                                    String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeInt(hash,
+                 bytes.length);
+        hash.write(bytes);
+    }
+
+    private static void writeInt(HashingOutputStream hash,
+                                 int value) throws IOException {
+        hash.write(value >>> 24);
+        hash.write(value >>> 16);
+        hash.write(value >>> 8);
+        hash.write(value);
+    }
+
+    private static void writeFingerprint(HashingOutputStream hash,
+                                         Fingerprint fingerprint) throws IOException {
+        writeLong(hash,
+                  fingerprint.getHigh());
+        writeLong(hash,
+                  fingerprint.getLow());
+    }
+
+    private static void writeLong(HashingOutputStream hash,
+                                  long value) throws IOException {
+        writeInt(hash,
+                 (int) (value >>> 32));
+        writeInt(hash,
+                 (int) value);
+    }
+}
@@ -18,6 +18,11 @@
 
 package org.serverless.workflow.impl.utils;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -31,6 +36,7 @@ import org.serverless.workflow.api.events.TriggerEvent;
 import org.serverless.workflow.api.functions.Function;
 import org.serverless.workflow.api.interfaces.State;
 import org.serverless.workflow.api.states.EventState;
+import org.serverless.workflow.impl.states.LazyStateList;
 
 public class WorkflowUtils {
 
@@ -145,12 +151,18 @@ public class WorkflowUtils {
     }
 
     public static State getStartState(WorkflowManager workflowManager) {
+        if (workflowManager.getWorkflow().getStates() instanceof LazyStateList) {
+            return ((LazyStateList) workflowManager.getWorkflow().getStates()).getState(workflowManager.getWorkflow().getStartsAt());
+        }
         return workflowManager.getWorkflow().getStates().stream().filter(s -> s.getName().equals(workflowManager.getWorkflow().getStartsAt()))
                 .findFirst().orElse(null);
     }
 
     public static State getStateByNAme(String stateName,
                                        WorkflowManager workflowManager) {
+        if (workflowManager.getWorkflow().getStates() instanceof LazyStateList) {
+            return ((LazyStateList) workflowManager.getWorkflow().getStates()).getState(stateName);
+        }
         return workflowManager.getWorkflow().getStates().stream().filter(state -> state.getName().equals(stateName))
                 .findFirst().orElse(null);
     }
@@ -159,4 +171,39 @@ public class WorkflowUtils {
         return workflowManager.getWorkflow().getStates().stream()
                 .anyMatch(state -> state.isEnd());
     }
+
+    public static Duration getDuration(String isoDuration) {
+        if (isoDuration == null || isoDuration.trim().isEmpty()) {
+            return null;
+        }
+
+        try {
+            return Duration.parse(isoDuration.trim());
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    public static String getSha256(String... values) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String value : values) {
+                digest.update(value.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            byte[] hash = digest.digest();
+
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(Character.forDigit((b >> 4) & 0xF,
+                                              16));
+                hex.append(Character.forDigit(b & 0xF,
+                                              16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 is not available",
+                                       e);
+        }
+    }
 }
@@ -0,0 +1,427 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package org.serverless.workflow.impl.validator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.everit.json.schema.Schema;
+import org.everit.json.schema.ValidationException;
+import org.json.JSONObject;
+import org.serverless.workflow.api.Workflow;
+import org.serverless.workflow.api.events.TriggerEvent;
+import org.serverless.workflow.api.interfaces.State;
+import org.serverless.workflow.api.validation.ValidationError;
+import org.serverless.workflow.impl.utils.HashingOutputStream;
+
+/**
+ * Validation results of the previous run, reused for the states and trigger events that did not change.
+ * <p>
+ * Every element is fingerprinted on each run, but the schema and rule checks only run for elements
+ * whose fingerprint is new. Schema checks of an element run against a document holding the top level
+ * fields and that single element, so their cost does not depend on the size of the workflow. They only
+ * tell whether the workflow is invalid: when any fails, the whole document is validated against the schema
+ * once, so the reported messages (the summary and the violations under it) are those of a full validation.
+ * Name uniqueness and start and end state counts are kept up to date from the added and removed elements.
+ */
+class IncrementalValidation {
+
+    private static final String STATES = "states";
+    private static final String TRIGGER_DEFS = "trigger-defs";
+
+    private static final ObjectMapper treeMapper = new ObjectMapper();
+
+    private final Schema workflowSchema;
+    private boolean schemaValidationEnabled;
+
+    private String topLevelFingerprint;
+    private ObjectNode topLevel;
+    private List<ValidationError> topLevelSchemaErrors = Collections.emptyList();
+
+    private Map<String, List<Entry>> states = new HashMap<>();
+    private Map<String, List<Entry>> triggerEvents = new HashMap<>();
+    private final Map<String, Integer> stateNames = new HashMap<>();
+    private final Set<String> duplicateStateNames = new LinkedHashSet<>();
+    private final Map<String, Integer> eventNames = new HashMap<>();
+    private final Set<String> duplicateEventNames = new LinkedHashSet<>();
+    private int endStates;
+    private int revalidated;
+
+    IncrementalValidation(Schema workflowSchema) {
+        this.workflowSchema = workflowSchema;
+    }
+
+    List<ValidationError> validate(Workflow workflow,
+                                   JsonNode workflowNode,
+                                   boolean schemaValidationEnabled) {
+        if (this.schemaValidationEnabled != schemaValidationEnabled) {
+            clear();
+            this.schemaValidationEnabled = schemaValidationEnabled;
+        }
+        revalidated = 0;
+
+        ObjectNode currentTopLevel = treeMapper.createObjectNode();
+        workflowNode.fields().forEachRemaining(field -> {
+            boolean elements = STATES.equals(field.getKey()) || TRIGGER_DEFS.equals(field.getKey());
+            currentTopLevel.set(field.getKey(),
+                                elements ? treeMapper.createArrayNode() : field.getValue());
+        });
+        String fingerprint = fingerprint(currentTopLevel);
+        if (!fingerprint.equals(topLevelFingerprint)) {
+            topLevelFingerprint = fingerprint;
+            topLevel = currentTopLevel;
+            topLevelSchemaErrors = validateSchema(currentTopLevel,
+                                                  pointer -> !pointer.startsWith("#/" + STATES) && !pointer.startsWith("#/" + TRIGGER_DEFS));
+            revalidated++;
+        }
+
+        List<Entry> currentStates = updateStates(workflow.getStates() == null ? Collections.emptyList() : workflow.getStates(),
+                                                 workflowNode.get(STATES));
+        List<Entry> currentTriggerEvents = updateTriggerEvents(workflow.getTriggerDefs() == null ? Collections.emptyList() : workflow.getTriggerDefs(),
+                                                               workflowNode.get(TRIGGER_DEFS));
+
+        List<ValidationError> validationErrors = new ArrayList<>();
+        if (hasSchemaErrors(currentStates) || hasSchemaErrors(currentTriggerEvents) || !topLevelSchemaErrors.isEmpty()) {
+            validateWorkflowSchema(workflowNode,
+                                   validationErrors);
+        }
+
+        if (workflow.getName() == null || workflow.getName().trim().isEmpty()) {
+            WorkflowValidatorImpl.addValidationError(validationErrors,
+                                                     "Workflow name should not be empty",
+                                                     ValidationError.WORKFLOW_VALIDATION);
+        }
+        if (workflow.getStartsAt() == null || workflow.getStartsAt().trim().isEmpty()) {
+            WorkflowValidatorImpl.addValidationError(validationErrors,
+                                                     "Workflow does not define a start state",
+                                                     ValidationError.WORKFLOW_VALIDATION);
+        }
+        if (currentStates.isEmpty()) {
+            WorkflowValidatorImpl.addValidationError(validationErrors,
+                                                     "No states found.",
+                                                     ValidationError.WORKFLOW_VALIDATION);
+        }
+
+        currentStates.forEach(entry -> validationErrors.addAll(entry.errors));
+        for (String name : duplicateStateNames) {
+            for (int i = 1; i < stateNames.get(name); i++) {
+                WorkflowValidatorImpl.addValidationError(validationErrors,
+                                                         "State does not have a unique name: " + name,
+                                                         ValidationError.WORKFLOW_VALIDATION);
+            }
+        }
+
+        int startStates = workflow.getStartsAt() == null ? 0 : stateNames.getOrDefault(workflow.getStartsAt(),
+                                                                                         0);
+        if (startStates == 0) {
+            WorkflowValidatorImpl.addValidationError(validationErrors,
+                                                     "No start state found.",
+                                                     ValidationError.WORKFLOW_VALIDATION);
+        }
+        if (startStates > 1) {
+            WorkflowValidatorImpl.addValidationError(validationErrors,
+                                                     "Multiple start states found.",
+                                                     ValidationError.WORKFLOW_VALIDATION);
+        }
+        if (endStates == 0) {
+            WorkflowValidatorImpl.addValidationError(validationErrors,
+                                                     "No end state found.",
+                                                     ValidationError.WORKFLOW_VALIDATION);
+        }
+
+        currentTriggerEvents.forEach(entry -> validationErrors.addAll(entry.errors));
+        for (String name : duplicateEventNames) {
+            for (int i = 1; i < eventNames.get(name); i++) {
+                WorkflowValidatorImpl.addValidationError(validationErrors,
+                                                         "Trigger Event does not have unique name: " + name,
+                                                         ValidationError.WORKFLOW_VALIDATION);
+            }
+        }
+
+        return validationErrors;
+    }
+
+    // number of top level, state and trigger event checks that ran in the last validation
+    int getRevalidated() {
+        return revalidated;
+    }
+
+    void clear() {
+        topLevelFingerprint = null;
+        topLevel = null;
+        topLevelSchemaErrors = Collections.emptyList();
+        states = new HashMap<>();
+        triggerEvents = new HashMap<>();
+        stateNames.clear();
+        duplicateStateNames.clear();
+        eventNames.clear();
+        duplicateEventNames.clear();
+        endStates = 0;
+    }
+
+    private List<Entry> updateStates(List<State> workflowStates,
+                                     JsonNode statesNode) {
+        Map<String, List<Entry>> previous = states;
+        Map<String, List<Entry>> current = new HashMap<>();
+        List<Entry> ordered = new ArrayList<>(workflowStates.size());
+        for (int i = 0; i < workflowStates.size(); i++) {
+            State state = workflowStates.get(i);
+            JsonNode stateNode = statesNode.get(i);
+            String fingerprint = fingerprint(stateNode);
+            Entry entry = take(previous,
+                               fingerprint);
+            if (entry == null) {
+                List<ValidationError> errors = new ArrayList<>();
+                boolean blankName = state.getName() != null && state.getName().trim().isEmpty();
+                if (blankName) {
+                    WorkflowValidatorImpl.addValidationError(errors,
+                                                             "Name should not be empty.",
+                                                             ValidationError.WORKFLOW_VALIDATION);
+                }
+                WorkflowValidatorImpl.addStateErrors(state,
+                                                     errors);
+                entry = new Entry(state.getName(),
+                                  !blankName,
+                                  state.isEnd(),
+                                  validateElementSchema(STATES,
+                                                        stateNode),
+                                  errors);
+                addName(stateNames,
+                        duplicateStateNames,
+                        entry);
+                if (entry.end) {
+                    endStates++;
+                }
+                revalidated++;
+            }
+            current.computeIfAbsent(fingerprint,
+                                    key -> new ArrayList<>()).add(entry);
+            ordered.add(entry);
+        }
+
+        previous.values().forEach(removed -> removed.forEach(entry -> {
+            removeName(stateNames,
+                       duplicateStateNames,
+                       entry);
+            if (entry.end) {
+                endStates--;
+            }
+        }));
+        states = current;
+        return ordered;
+    }
+
+    private List<Entry> updateTriggerEvents(List<TriggerEvent> workflowTriggerEvents,
+                                            JsonNode triggerEventsNode) {
+        Map<String, List<Entry>> previous = triggerEvents;
+        Map<String, List<Entry>> current = new HashMap<>();
+        List<Entry> ordered = new ArrayList<>(workflowTriggerEvents.size());
+        for (int i = 0; i < workflowTriggerEvents.size(); i++) {
+            TriggerEvent triggerEvent = workflowTriggerEvents.get(i);
+            JsonNode triggerEventNode = triggerEventsNode.get(i);
+            String fingerprint = fingerprint(triggerEventNode);
+            Entry entry = take(previous,
+                               fingerprint);
+            if (entry == null) {
+                List<ValidationError> errors = new ArrayList<>();
+                boolean named = triggerEvent.getName() != null && !triggerEvent.getName().isEmpty();
+                if (!named) {
+                    WorkflowValidatorImpl.addValidationError(errors,
+                                                             "Trigger Event has no name",
+                                                             ValidationError.WORKFLOW_VALIDATION);
+                }
+                if (triggerEvent.getType() == null || triggerEvent.getType().isEmpty()) {
+                    WorkflowValidatorImpl.addValidationError(errors,
+                                                             "Trigger Event has no type",
+                                                             ValidationError.WORKFLOW_VALIDATION);
+                }
+                entry = new Entry(triggerEvent.getName(),
+                                  named,
+                                  false,
+                                  validateElementSchema(TRIGGER_DEFS,
+                                                        triggerEventNode),
+                                  errors);
+                addName(eventNames,
+                        duplicateEventNames,
+                        entry);
+                revalidated++;
+            }
+            current.computeIfAbsent(fingerprint,
+                                    key -> new ArrayList<>()).add(entry);
+            ordered.add(entry);
+        }
+
+        previous.values().forEach(removed -> removed.forEach(entry -> removeName(eventNames,
+                                                                                duplicateEventNames,
+                                                                                entry)));
+        triggerEvents = current;
+        return ordered;
+    }
+
+    private List<ValidationError> validateElementSchema(String arrayName,
+                                                        JsonNode elementNode) {
+        if (!schemaValidationEnabled) {
+            return Collections.emptyList();
+        }
+        ObjectNode document = topLevel.deepCopy();
+        document.set(arrayName,
+                     treeMapper.createArrayNode().add(elementNode));
+        String elementPointer = "#/" + arrayName + "/0";
+        return validateSchema(document,
+                              pointer -> pointer.startsWith(elementPointer));
+    }
+
+    private void validateWorkflowSchema(JsonNode workflowNode,
+                                        List<ValidationError> validationErrors) {
+        try {
+            workflowSchema.validate(new JSONObject(treeMapper.writeValueAsString(workflowNode)));
+        } catch (ValidationException e) {
+            WorkflowValidatorImpl.addSchemaErrors(validationErrors,
+                                                  e);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not write workflow document: " + e.getMessage());
+        }
+    }
+
+    private List<ValidationError> validateSchema(ObjectNode document,
+                                                 Predicate<String> pointerFilter) {
+        if (!schemaValidationEnabled) {
+            return Collections.emptyList();
+        }
+        try {
+            workflowSchema.validate(new JSONObject(treeMapper.writeValueAsString(document)));
+            return Collections.emptyList();
+        } catch (ValidationException e) {
+            List<ValidationError> validationErrors = new ArrayList<>();
+            addViolations(validationErrors,
+                          e,
+                          pointerFilter);
+            return validationErrors;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not write workflow document: " + e.getMessage());
+        }
+    }
+
+    // only the leaf violations are kept, they decide whether the whole document is validated
+    private static void addViolations(List<ValidationError> validationErrors,
+                                      ValidationException e,
+                                      Predicate<String> pointerFilter) {
+        if (e.getCausingExceptions().isEmpty()) {
+            if (pointerFilter.test(e.getPointerToViolation())) {
+                WorkflowValidatorImpl.addValidationError(validationErrors,
+                                                         e.getMessage(),
+                                                         ValidationError.SCHEMA_VALIDATION);
+            }
+            return;
+        }
+        e.getCausingExceptions().forEach(cause -> addViolations(validationErrors,
+                                                                cause,
+                                                                pointerFilter));
+    }
+
+    private static boolean hasSchemaErrors(List<Entry> entries) {
+        for (Entry entry : entries) {
+            if (!entry.schemaErrors.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Entry take(Map<String, List<Entry>> entries,
+                              String fingerprint) {
+        List<Entry> candidates = entries.get(fingerprint);
+        if (candidates == null) {
+            return null;
+        }
+        Entry entry = candidates.remove(candidates.size() - 1);
+        if (candidates.isEmpty()) {
+            entries.remove(fingerprint);
+        }
+        return entry;
+    }
+
+    private static void addName(Map<String, Integer> names,
+                                Set<String> duplicateNames,
+                                Entry entry) {
+        int count = names.merge(entry.name,
+                                1,
+                                Integer::sum);
+        if (count > 1 && entry.unique) {
+            duplicateNames.add(entry.name);
+        }
+    }
+
+    private static void removeName(Map<String, Integer> names,
+                                   Set<String> duplicateNames,
+                                   Entry entry) {
+        int count = names.merge(entry.name,
+                                -1,
+                                Integer::sum);
+        if (count < 2) {
+            duplicateNames.remove(entry.name);
+        }
+        if (count == 0) {
+            names.remove(entry.name);
+        }
+    }
+
+    private static String fingerprint(JsonNode node) {
+        HashingOutputStream hashingOutputStream = new HashingOutputStream();
+        try {
+            treeMapper.writeValue(hashingOutputStream,
+                                  node);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not fingerprint workflow element: " + e.getMessage());
+        }
+        return hashingOutputStream.toString();
+    }
+
+    private static class Entry {
+
+        final String name;
+        final boolean unique;
+        final boolean end;
+        final List<ValidationError> schemaErrors;
+        final List<ValidationError> errors;
+
+        Entry(String name,
+              boolean unique,
+              boolean end,
+              List<ValidationError> schemaErrors,
+              List<ValidationError> errors) {
+            this.name = name;
+            this.unique = unique;
+            this.end = end;
+            this.schemaErrors = schemaErrors;
+            this.errors = errors;
+        }
+    }
+}
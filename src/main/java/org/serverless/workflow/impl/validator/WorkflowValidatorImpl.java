@@ -18,11 +18,14 @@
 
 package org.serverless.workflow.impl.validator;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.everit.json.schema.Schema;
 import org.everit.json.schema.ValidationException;
 import org.json.JSONObject;
@@ -30,12 +33,15 @@ import org.serverless.workflow.api.Workflow;
 import org.serverless.workflow.api.WorkflowManager;
 import org.serverless.workflow.api.WorkflowValidator;
 import org.serverless.workflow.api.branches.Branch;
+import org.serverless.workflow.api.interfaces.State;
 import org.serverless.workflow.api.states.DelayState;
 import org.serverless.workflow.api.states.OperationState;
 import org.serverless.workflow.api.states.ParallelState;
 import org.serverless.workflow.api.states.SwitchState;
 import org.serverless.workflow.api.validation.ValidationError;
 import org.serverless.workflow.api.validation.WorkflowSchemaLoader;
+import org.serverless.workflow.impl.expression.WorkflowExpressionCompiler;
+import org.serverless.workflow.impl.manager.WorkflowManagerImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -44,9 +50,12 @@ public class WorkflowValidatorImpl implements WorkflowValidator {
     private boolean enabled = true;
     private boolean schemaValidationEnabled = true;
     private boolean strictValidationEnabled = false;
+    private boolean incrementalValidationEnabled = false;
+    private boolean expressionCompilationEnabled = false;
     private List<ValidationError> validationErrors = new ArrayList<>();
-    private Schema workflowSchema = WorkflowSchemaLoader.getWorkflowSchema();
+    private static final Schema workflowSchema = WorkflowSchemaLoader.getWorkflowSchema();
     private WorkflowManager workflowManager;
+    private final IncrementalValidation incrementalValidation = new IncrementalValidation(workflowSchema);
 
     private static final Logger logger = LoggerFactory.getLogger(WorkflowValidatorImpl.class);
 
@@ -56,6 +65,9 @@ public class WorkflowValidatorImpl implements WorkflowValidator {
         enabled = true;
         schemaValidationEnabled = true;
         strictValidationEnabled = false;
+        incrementalValidationEnabled = false;
+        expressionCompilationEnabled = false;
+        incrementalValidation.clear();
     }
 
     @Override
@@ -67,32 +79,58 @@ public class WorkflowValidatorImpl implements WorkflowValidator {
     @Override
     public List<ValidationError> validate() {
         validationErrors.clear();
+        if (enabled && incrementalValidationEnabled && workflowManager.getWorkflow() != null) {
+            try {
+                validationErrors.addAll(incrementalValidation.validate(workflowManager.getWorkflow(),
+                                                                       toJsonNode(workflowManager),
+                                                                       schemaValidationEnabled));
+                addExpressionErrors(workflowManager.getWorkflow(),
+                                    validationErrors);
+                return validationErrors;
+            } catch (Exception e) {
+                logger.warn("Incremental validation failed, validating the whole workflow: " + e.getMessage());
+                incrementalValidation.clear();
+            }
+        }
+        validationErrors.addAll(validate(workflowManager.getWorkflow(),
+                                         workflowManager.toJson()));
+        return validationErrors;
+    }
+
+    // validates the given workflow without touching the manager or the errors of validate(), so it is thread safe
+    public List<ValidationError> validate(Workflow workflow) {
+        String workflowJson = null;
+        if (workflow != null && workflowManager instanceof WorkflowManagerImpl) {
+            workflowJson = ((WorkflowManagerImpl) workflowManager).toJson(workflow);
+        }
+        return validate(workflow,
+                        workflowJson);
+    }
+
+    private List<ValidationError> validate(Workflow workflow,
+                                           String workflowJson) {
+        List<ValidationError> validationErrors = new ArrayList<>();
         if (enabled) {
             try {
-                if (schemaValidationEnabled && workflowManager.toJson() != null) {
+                if (schemaValidationEnabled && workflowJson != null) {
                     try {
-                        workflowSchema.validate(new JSONObject(workflowManager.toJson()));
+                        workflowSchema.validate(new JSONObject(workflowJson));
                     } catch (ValidationException e) {
-                        // main error
-                        addValidationError(e.getMessage(),
-                                           ValidationError.SCHEMA_VALIDATION);
-                        // suberrors
-                        e.getCausingExceptions().stream()
-                                .map(ValidationException::getMessage)
-                                .forEach(m -> addValidationError(m,
-                                                                 ValidationError.SCHEMA_VALIDATION));
+                        addSchemaErrors(validationErrors,
+                                        e);
                     }
                 }
 
-                if (workflowManager.getWorkflow() != null) {
-                    Workflow workflow = workflowManager.getWorkflow();
+                if (workflow != null) {
                     if (workflow.getName() == null || workflow.getName().trim().isEmpty()) {
-                        addValidationError("Workflow name should not be empty",
+                        addValidationError(validationErrors,
+                                           "Workflow name should not be empty",
                                            ValidationError.WORKFLOW_VALIDATION);
                     }
 
                     if(workflow.getStartsAt() == null || workflow.getStartsAt().trim().isEmpty()) {
-                        addValidationError("Workflow does not define a start state",
+                        addValidationError(validationErrors,
+                                           "Workflow does not define a start state",
                                            ValidationError.WORKFLOW_VALIDATION);
                     }
 
@@ -100,16 +138,18 @@ public class WorkflowValidatorImpl implements WorkflowValidator {
 
                     // make sure we have at least one state
                     if (workflow.getStates() == null || workflow.getStates().isEmpty()) {
-                        addValidationError("No states found.",
+                        addValidationError(validationErrors,
+                                           "No states found.",
                                            ValidationError.WORKFLOW_VALIDATION);
                     }
 
                     // make sure we have at least one end state and check for null next id and next-state
-                    final Validation validation = new Validation();
+                    final Validation validation = new Validation(validationErrors);
                     if (workflow.getStates() != null) {
                         workflow.getStates().forEach(s -> {
                             if (s.getName() != null && s.getName().trim().isEmpty()) {
-                                addValidationError("Name should not be empty.",
+                                addValidationError(validationErrors,
+                                                   "Name should not be empty.",
                                                    ValidationError.WORKFLOW_VALIDATION);
                             } else {
                                 validation.addState(s.getName());
@@ -123,62 +163,26 @@ public class WorkflowValidatorImpl implements WorkflowValidator {
                                 validation.addEndState();
                             }
 
-                            if (s instanceof OperationState) {
-                                OperationState operationState = (OperationState) s;
-
-                                if (operationState.getNextState() == null || operationState.getNextState().trim().isEmpty()) {
-                                    addValidationError("Next state should not be empty.",
-                                                       ValidationError.WORKFLOW_VALIDATION);
-                                }
-                            }
-                            if (s instanceof SwitchState) {
-                                SwitchState switchState = (SwitchState) s;
-
-                                if (switchState.getDefault() == null || switchState.getDefault().trim().isEmpty()) {
-                                    addValidationError("Default should not be empty.",
-                                                       ValidationError.WORKFLOW_VALIDATION);
-                                }
-                            }
-                            if (s instanceof ParallelState) {
-                                ParallelState parallelState = (ParallelState) s;
-
-                                if (parallelState.getNextState() == null || parallelState.getNextState().trim().isEmpty()) {
-                                    addValidationError("Next state should not be empty.",
-                                                       ValidationError.WORKFLOW_VALIDATION);
-                                }
-
-                                if(parallelState.getBranches() != null && parallelState.getBranches().size() > 0) {
-                                    for(Branch branch : parallelState.getBranches()) {
-                                        if(branch.getStartsAt() == null || branch.getStartsAt().trim().isEmpty()) {
-                                            addValidationError("Branch does not define a start state..",
-                                                               ValidationError.WORKFLOW_VALIDATION);
-                                        }
-                                    }
-                                }
-                            }
-                            if (s instanceof DelayState) {
-                                DelayState delayState = (DelayState) s;
-
-                                if (delayState.getNextState() == null || delayState.getNextState().trim().isEmpty()) {
-                                    addValidationError("Next state should not be empty.",
-                                                       ValidationError.WORKFLOW_VALIDATION);
-                                }
-                            }
+                            addStateErrors(s,
+                                           validationErrors);
                         });
                     }
 
                     if (validation.startStates == 0) {
-                        addValidationError("No start state found.",
+                        addValidationError(validationErrors,
+                                           "No start state found.",
                                            ValidationError.WORKFLOW_VALIDATION);
                     }
 
                     if (validation.startStates > 1) {
-                        addValidationError("Multiple start states found.",
+                        addValidationError(validationErrors,
+                                           "Multiple start states found.",
                                            ValidationError.WORKFLOW_VALIDATION);
                     }
 
                     if (validation.endStates == 0) {
-                        addValidationError("No end state found.",
+                        addValidationError(validationErrors,
+                                           "No end state found.",
                                            ValidationError.WORKFLOW_VALIDATION);
                     }
 
@@ -186,17 +190,22 @@ public class WorkflowValidatorImpl implements WorkflowValidator {
                     if (workflow.getTriggerDefs() != null) {
                         workflow.getTriggerDefs().forEach(triggerEvent -> {
                             if (triggerEvent.getName() == null || triggerEvent.getName().isEmpty()) {
-                                addValidationError("Trigger Event has no name",
+                                addValidationError(validationErrors,
+                                                   "Trigger Event has no name",
                                                    ValidationError.WORKFLOW_VALIDATION);
                             } else {
                                 validation.addEvent(triggerEvent.getName());
                             }
                             if (triggerEvent.getType() == null || triggerEvent.getType().isEmpty()) {
-                                addValidationError("Trigger Event has no type",
+                                addValidationError(validationErrors,
+                                                   "Trigger Event has no type",
                                                    ValidationError.WORKFLOW_VALIDATION);
                             }
                         });
                     }
+
+                    addExpressionErrors(workflow,
+                                        validationErrors);
                 }
             } catch (Exception e) {
                 logger.error("Error loading schema: " + e.getMessage());
@@ -206,6 +215,22 @@ public class WorkflowValidatorImpl implements WorkflowValidator {
         return validationErrors;
     }
 
+    // compiles event-expressions and choice paths with the manager's evaluator, which keeps them compiled
+    private void addExpressionErrors(Workflow workflow,
+                                     List<ValidationError> validationErrors) {
+        if (expressionCompilationEnabled && workflowManager != null) {
+            validationErrors.addAll(WorkflowExpressionCompiler.compile(workflow,
+                                                                       workflowManager.getExpressionEvaluator()));
+        }
+    }
+
+    private static JsonNode toJsonNode(WorkflowManager workflowManager) throws IOException {
+        if (workflowManager instanceof WorkflowManagerImpl) {
+            return ((WorkflowManagerImpl) workflowManager).toJsonNode(workflowManager.getWorkflow());
+        }
+        return new ObjectMapper().readTree(workflowManager.toJson());
+    }
+
     @Override
     public boolean isValid() {
         return validate().size() < 1;
@@ -216,34 +241,143 @@ public class WorkflowValidatorImpl implements WorkflowValidator {
         this.enabled = enabled;
     }
 
+    public boolean isEnabled() {
+        return enabled;
+    }
+
     @Override
     public void setSchemaValidationEnabled(boolean schemaValidationEnabled) {
         this.schemaValidationEnabled = schemaValidationEnabled;
     }
 
+    public boolean isSchemaValidationEnabled() {
+        return schemaValidationEnabled;
+    }
+
     @Override
     public void setStrictValidationEnabled(boolean strictValidationEnabled) {
         this.strictValidationEnabled = strictValidationEnabled;
     }
 
-    private void addValidationError(String message,
-                                    String type) {
+    public boolean isStrictValidationEnabled() {
+        return strictValidationEnabled;
+    }
+
+    // reuses the results of unchanged states and trigger events between validations
+    public void setIncrementalValidationEnabled(boolean incrementalValidationEnabled) {
+        this.incrementalValidationEnabled = incrementalValidationEnabled;
+        incrementalValidation.clear();
+    }
+
+    public boolean isIncrementalValidationEnabled() {
+        return incrementalValidationEnabled;
+    }
+
+    // off by default, so validation results do not depend on the manager's expression evaluator
+    public void setExpressionCompilationEnabled(boolean expressionCompilationEnabled) {
+        this.expressionCompilationEnabled = expressionCompilationEnabled;
+    }
+
+    public boolean isExpressionCompilationEnabled() {
+        return expressionCompilationEnabled;
+    }
+
+    // number of top level, state and trigger event checks that ran in the last incremental validation
+    public int getRevalidatedCount() {
+        return incrementalValidation.getRevalidated();
+    }
+
+    // checks of a single state that do not depend on the rest of the workflow
+    static void addStateErrors(State s,
+                               List<ValidationError> validationErrors) {
+        if (s instanceof OperationState) {
+            OperationState operationState = (OperationState) s;
+
+            if (operationState.getNextState() == null || operationState.getNextState().trim().isEmpty()) {
+                addValidationError(validationErrors,
+                                   "Next state should not be empty.",
+                                   ValidationError.WORKFLOW_VALIDATION);
+            }
+        }
+        if (s instanceof SwitchState) {
+            SwitchState switchState = (SwitchState) s;
+
+            if (switchState.getDefault() == null || switchState.getDefault().trim().isEmpty()) {
+                addValidationError(validationErrors,
+                                   "Default should not be empty.",
+                                   ValidationError.WORKFLOW_VALIDATION);
+            }
+        }
+        if (s instanceof ParallelState) {
+            ParallelState parallelState = (ParallelState) s;
+
+            if (parallelState.getNextState() == null || parallelState.getNextState().trim().isEmpty()) {
+                addValidationError(validationErrors,
+                                   "Next state should not be empty.",
+                                   ValidationError.WORKFLOW_VALIDATION);
+            }
+
+            if(parallelState.getBranches() != null && parallelState.getBranches().size() > 0) {
+                for(Branch branch : parallelState.getBranches()) {
+                    if(branch.getStartsAt() == null || branch.getStartsAt().trim().isEmpty()) {
+                        addValidationError(validationErrors,
+                                           "Branch does not define a start state..",
+                                           ValidationError.WORKFLOW_VALIDATION);
+                    }
+                }
+            }
+        }
+        if (s instanceof DelayState) {
+            DelayState delayState = (DelayState) s;
+
+            if (delayState.getNextState() == null || delayState.getNextState().trim().isEmpty()) {
+                addValidationError(validationErrors,
+                                   "Next state should not be empty.",
+                                   ValidationError.WORKFLOW_VALIDATION);
+            }
+        }
+    }
+
+    // schema errors of the whole workflow: the main error and its direct causes
+    static void addSchemaErrors(List<ValidationError> validationErrors,
+                                ValidationException e) {
+        // main error
+        addValidationError(validationErrors,
+                           e.getMessage(),
+                           ValidationError.SCHEMA_VALIDATION);
+        // suberrors
+        e.getCausingExceptions().stream()
+                .map(ValidationException::getMessage)
+                .forEach(m -> addValidationError(validationErrors,
+                                                 m,
+                                                 ValidationError.SCHEMA_VALIDATION));
+    }
+
+    static void addValidationError(List<ValidationError> validationErrors,
+                                   String message,
+                                   String type) {
         ValidationError mainError = new ValidationError();
         mainError.setMessage(message);
         mainError.setType(type);
         validationErrors.add(mainError);
     }
 
-    private class Validation {
+    private static class Validation {
 
+        final List<ValidationError> validationErrors;
         final Set<String> events = new HashSet<>();
         final Set<String> states = new HashSet<>();
         Integer startStates = 0;
         Integer endStates = 0;
 
+        Validation(List<ValidationError> validationErrors) {
+            this.validationErrors = validationErrors;
+        }
+
         void addEvent(String name) {
             if (events.contains(name)) {
-                addValidationError("Trigger Event does not have unique name: " + name,
+                addValidationError(validationErrors,
+                                   "Trigger Event does not have unique name: " + name,
                                    ValidationError.WORKFLOW_VALIDATION);
             } else {
                 events.add(name);
@@ -252,7 +386,8 @@ public class WorkflowValidatorImpl implements WorkflowValidator {
 
         void addState(String name) {
             if (states.contains(name)) {
-                addValidationError("State does not have a unique name: " + name,
+                addValidationError(validationErrors,
+                                   "State does not have a unique name: " + name,
                                    ValidationError.WORKFLOW_VALIDATION);
             } else {
                 states.add(name);
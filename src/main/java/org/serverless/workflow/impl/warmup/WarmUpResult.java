@@ -0,0 +1,83 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package org.serverless.workflow.impl.warmup;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+public class WarmUpResult {
+
+    public enum Stage {
+        PARSE,
+        TO_JSON,
+        TO_YAML,
+        VALIDATE,
+        EVALUATE
+    }
+
+    private final Duration duration;
+    private final int rounds;
+    private final boolean stable;
+    private final List<Long> roundLatencies;
+    private final Map<Stage, Long> stageLatencies;
+
+    public WarmUpResult(Duration duration,
+                        int rounds,
+                        boolean stable,
+                        List<Long> roundLatencies,
+                        Map<Stage, Long> stageLatencies) {
+        this.duration = duration;
+        this.rounds = rounds;
+        this.stable = stable;
+        this.roundLatencies = Collections.unmodifiableList(roundLatencies);
+        this.stageLatencies = Collections.unmodifiableMap(new EnumMap<>(stageLatencies));
+    }
+
+    public Duration getDuration() {
+        return duration;
+    }
+
+    public int getRounds() {
+        return rounds;
+    }
+
+    // false when warm-up stopped at the round or time limit before latencies settled
+    public boolean isStable() {
+        return stable;
+    }
+
+    // mean nanoseconds for one pass over the workload, per round
+    public List<Long> getRoundLatencies() {
+        return roundLatencies;
+    }
+
+    // mean nanoseconds of each stage for one pass over the workload, in the last round
+    public long getStageLatency(Stage stage) {
+        Long latency = stageLatencies.get(stage);
+        return latency == null ? 0 : latency;
+    }
+
+    @Override
+    public String toString() {
+        return "WarmUpResult{duration=" + duration + ", rounds=" + rounds + ", stable=" + stable + ", stageLatencies=" + stageLatencies + "}";
+    }
+}
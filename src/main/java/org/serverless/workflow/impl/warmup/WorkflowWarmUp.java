@@ -0,0 +1,283 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package org.serverless.workflow.impl.warmup;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.serverless.workflow.api.ExpressionEvaluator;
+import org.serverless.workflow.api.Workflow;
+import org.serverless.workflow.api.actions.Action;
+import org.serverless.workflow.api.branches.Branch;
+import org.serverless.workflow.api.choices.AndChoice;
+import org.serverless.workflow.api.choices.DefaultChoice;
+import org.serverless.workflow.api.events.Event;
+import org.serverless.workflow.api.events.TriggerEvent;
+import org.serverless.workflow.api.functions.Function;
+import org.serverless.workflow.api.interfaces.Choice;
+import org.serverless.workflow.api.interfaces.State;
+import org.serverless.workflow.api.states.DefaultState;
+import org.serverless.workflow.api.states.DelayState;
+import org.serverless.workflow.api.states.EventState;
+import org.serverless.workflow.api.states.OperationState;
+import org.serverless.workflow.api.states.ParallelState;
+import org.serverless.workflow.api.states.SwitchState;
+import org.serverless.workflow.impl.manager.WorkflowManagerImpl;
+import org.serverless.workflow.impl.validator.WorkflowValidatorImpl;
+import org.serverless.workflow.impl.warmup.WarmUpResult.Stage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs a synthetic workload through parsing, json and yaml mapping, validation and expression evaluation of a
+ * manager until the time of a round stops changing, so the first real workflows do not pay for cold mappers,
+ * expression engines and schema.
+ * <p>
+ * Each round passes over the workload {@code iterationsPerRound} times. Warm-up is stable once
+ * {@code stableRounds} consecutive rounds are within {@code tolerance} of the previous one, and stops at
+ * {@code maxRounds} or {@code maxDuration} otherwise. The manager's current workflow is not touched.
+ */
+public class WorkflowWarmUp {
+
+    public static final int DEFAULT_ITERATIONS_PER_ROUND = 50;
+    public static final int DEFAULT_STABLE_ROUNDS = 3;
+    public static final int DEFAULT_MAX_ROUNDS = 200;
+    public static final double DEFAULT_TOLERANCE = 0.1;
+    public static final Duration DEFAULT_MAX_DURATION = Duration.ofSeconds(30);
+
+    private static final String WARM_UP_TRIGGER = "warm-up-trigger";
+
+    private final WorkflowManagerImpl workflowManager;
+    private List<String> markups;
+    private List<TriggerEvent> triggerEvents;
+    private int iterationsPerRound = DEFAULT_ITERATIONS_PER_ROUND;
+    private int stableRounds = DEFAULT_STABLE_ROUNDS;
+    private int maxRounds = DEFAULT_MAX_ROUNDS;
+    private double tolerance = DEFAULT_TOLERANCE;
+    private Duration maxDuration = DEFAULT_MAX_DURATION;
+
+    // keeps the results alive so the workload is not optimized away
+    private volatile int sink;
+
+    private static Logger logger = LoggerFactory.getLogger(WorkflowWarmUp.class);
+
+    public WorkflowWarmUp(WorkflowManagerImpl workflowManager) {
+        this.workflowManager = workflowManager;
+    }
+
+    // json or yaml workflow markups, a synthetic workflow with every state type when not set
+    public WorkflowWarmUp withMarkups(List<String> markups) {
+        this.markups = markups;
+        return this;
+    }
+
+    public WorkflowWarmUp withTriggerEvents(List<TriggerEvent> triggerEvents) {
+        this.triggerEvents = triggerEvents;
+        return this;
+    }
+
+    public WorkflowWarmUp withIterationsPerRound(int iterationsPerRound) {
+        if (iterationsPerRound < 1) {
+            throw new IllegalArgumentException("Iterations per round must be at least 1: " + iterationsPerRound);
+        }
+        this.iterationsPerRound = iterationsPerRound;
+        return this;
+    }
+
+    public WorkflowWarmUp withStableRounds(int stableRounds) {
+        if (stableRounds < 1) {
+            throw new IllegalArgumentException("Stable rounds must be at least 1: " + stableRounds);
+        }
+        this.stableRounds = stableRounds;
+        return this;
+    }
+
+    public WorkflowWarmUp withMaxRounds(int maxRounds) {
+        if (maxRounds < 1) {
+            throw new IllegalArgumentException("Max rounds must be at least 1: " + maxRounds);
+        }
+        this.maxRounds = maxRounds;
+        return this;
+    }
+
+    public WorkflowWarmUp withTolerance(double tolerance) {
+        if (tolerance < 0.0) {
+            throw new IllegalArgumentException("Tolerance must not be negative: " + tolerance);
+        }
+        this.tolerance = tolerance;
+        return this;
+    }
+
+    public WorkflowWarmUp withMaxDuration(Duration maxDuration) {
+        this.maxDuration = maxDuration;
+        return this;
+    }
+
+    public WarmUpResult run() {
+        List<String> workload = markups == null || markups.isEmpty() ? getDefaultMarkups() : markups;
+        List<TriggerEvent> events = triggerEvents == null || triggerEvents.isEmpty() ? getDefaultTriggerEvents() : triggerEvents;
+
+        long start = System.nanoTime();
+        long deadline = maxDuration == null ? Long.MAX_VALUE : start + maxDuration.toNanos();
+        List<Long> roundLatencies = new ArrayList<>();
+        Map<Stage, Long> stageLatencies = new EnumMap<>(Stage.class);
+        long[] stageNanos = new long[Stage.values().length];
+        int stable = 0;
+
+        while (roundLatencies.size() < maxRounds && stable < stableRounds && System.nanoTime() - deadline < 0) {
+            Arrays.fill(stageNanos,
+                        0);
+            for (int i = 0; i < iterationsPerRound; i++) {
+                for (String markup : workload) {
+                    runWorkload(markup,
+                                events,
+                                stageNanos);
+                }
+            }
+
+            long roundLatency = 0;
+            for (Stage stage : Stage.values()) {
+                long stageLatency = stageNanos[stage.ordinal()] / iterationsPerRound;
+                stageLatencies.put(stage,
+                                   stageLatency);
+                roundLatency += stageLatency;
+            }
+
+            if (!roundLatencies.isEmpty()) {
+                long previous = roundLatencies.get(roundLatencies.size() - 1);
+                stable = Math.abs(roundLatency - previous) <= tolerance * previous ? stable + 1 : 0;
+            }
+            roundLatencies.add(roundLatency);
+        }
+
+        WarmUpResult result = new WarmUpResult(Duration.ofNanos(System.nanoTime() - start),
+                                               roundLatencies.size(),
+                                               stable >= stableRounds,
+                                               roundLatencies,
+                                               stageLatencies);
+        if (result.isStable()) {
+            logger.info("Warm-up finished in {} ms after {} rounds",
+                        result.getDuration().toMillis(),
+                        result.getRounds());
+        } else {
+            logger.warn("Warm-up stopped in {} ms after {} rounds before latencies were stable",
+                        result.getDuration().toMillis(),
+                        result.getRounds());
+        }
+        return result;
+    }
+
+    private void runWorkload(String markup,
+                             List<TriggerEvent> events,
+                             long[] stageNanos) {
+        long time = System.nanoTime();
+        Workflow workflow = workflowManager.toWorkflow(markup);
+        time = addStageTime(Stage.PARSE,
+                            time,
+                            stageNanos);
+
+        String json = workflowManager.toJson(workflow);
+        time = addStageTime(Stage.TO_JSON,
+                            time,
+                            stageNanos);
+
+        String yaml = workflowManager.toYaml(workflow);
+        time = addStageTime(Stage.TO_YAML,
+                            time,
+                            stageNanos);
+
+        int validationErrors = 0;
+        if (workflowManager.getWorkflowValidator() instanceof WorkflowValidatorImpl) {
+            validationErrors = ((WorkflowValidatorImpl) workflowManager.getWorkflowValidator()).validate(workflow).size();
+        }
+        time = addStageTime(Stage.VALIDATE,
+                            time,
+                            stageNanos);
+
+        int matches = 0;
+        ExpressionEvaluator expressionEvaluator = workflowManager.getExpressionEvaluator();
+        if (workflow.getStates() != null) {
+            for (State state : workflow.getStates()) {
+                if (state instanceof EventState && ((EventState) state).getEvents() != null) {
+                    for (Event event : ((EventState) state).getEvents()) {
+                        for (TriggerEvent triggerEvent : events) {
+                            if (event.getEventExpression() != null && expressionEvaluator.evaluate(event.getEventExpression(),
+                                                                                                   triggerEvent)) {
+                                matches++;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        addStageTime(Stage.EVALUATE,
+                     time,
+                     stageNanos);
+
+        sink += (json == null ? 0 : json.length()) + (yaml == null ? 0 : yaml.length()) + validationErrors + matches;
+    }
+
+    private static long addStageTime(Stage stage,
+                                     long start,
+                                     long[] stageNanos) {
+        long now = System.nanoTime();
+        stageNanos[stage.ordinal()] += now - start;
+        return now;
+    }
+
+    private List<String> getDefaultMarkups() {
+        Workflow workflow = new Workflow().withName("warm-up").withStartsAt("event-state")
+                .withTriggerDefs(Arrays.asList(new TriggerEvent().withName(WARM_UP_TRIGGER).withType("warmup").withSource("warmup")))
+                .withStates(Arrays.<State>asList(
+                        new EventState().withType(DefaultState.Type.EVENT).withName("event-state").withEnd(false)
+                                .withEvents(Arrays.asList(new Event().withEventExpression("name eq '" + WARM_UP_TRIGGER + "'")
+                                                                  .withNextState("switch-state")
+                                                                  .withActions(Arrays.asList(newAction())))),
+                        new SwitchState().withType(DefaultState.Type.SWITCH).withName("switch-state").withDefault("operation-state").withEnd(false)
+                                .withChoices(Arrays.<Choice>asList(
+                                        new AndChoice().withNextState("delay-state").withAnd(Arrays.asList(
+                                                new DefaultChoice().withOperator(DefaultChoice.Operator.EQUALS)
+                                                        .withPath("path")
+                                                        .withValue("value"))))),
+                        new OperationState().withType(DefaultState.Type.OPERATION).withName("operation-state").withEnd(false).withNextState("delay-state")
+                                .withActionMode(OperationState.ActionMode.SEQUENTIAL)
+                                .withActions(Arrays.asList(newAction())),
+                        new DelayState().withType(DefaultState.Type.DELAY).withName("delay-state").withEnd(false).withNextState("parallel-state").withTimeDelay("PT1S"),
+                        new ParallelState().withType(DefaultState.Type.PARALLEL).withName("parallel-state").withEnd(true).withNextState("event-state")
+                                .withBranches(Arrays.asList(
+                                        new Branch().withName("branch").withStartsAt("branch-delay-state").withStates(Arrays.<State>asList(
+                                                new DelayState().withType(DefaultState.Type.DELAY).withName("branch-delay-state").withEnd(true).withNextState("event-state").withTimeDelay("PT1S")))))));
+
+        return Arrays.asList(workflowManager.toJson(workflow),
+                             workflowManager.toYaml(workflow));
+    }
+
+    private static Action newAction() {
+        return new Action().withFunction(new Function().withName("warm-up-function").withType("warmup")).withTimeout("PT5S");
+    }
+
+    private static List<TriggerEvent> getDefaultTriggerEvents() {
+        return Arrays.asList(new TriggerEvent().withName(WARM_UP_TRIGGER).withType("warmup").withSource("warmup"),
+                             new TriggerEvent().withName("other-trigger").withType("warmup").withSource("warmup"));
+    }
+}
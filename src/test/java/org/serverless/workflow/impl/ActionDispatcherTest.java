@@ -0,0 +1,149 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package org.serverless.workflow.impl;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.serverless.workflow.api.WorkflowManager;
+import org.serverless.workflow.api.actions.Action;
+import org.serverless.workflow.api.events.Event;
+import org.serverless.workflow.api.functions.Function;
+import org.serverless.workflow.api.states.EventState;
+import org.serverless.workflow.impl.actions.ActionDispatcher;
+import org.serverless.workflow.impl.actions.ActionExecutor;
+import org.serverless.workflow.impl.actions.ActionResult;
+import org.serverless.workflow.impl.utils.WorkflowUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ActionDispatcherTest extends BaseWorkflowTest {
+
+    private static final long ACTION_LATENCY = 300;
+
+    private ExecutorService executorService;
+
+    private ActionExecutor actionExecutor = action -> {
+        String functionName = action.getFunction().getName();
+        if ("failingFunction".equals(functionName)) {
+            throw new IllegalStateException("failed: " + functionName);
+        }
+        Thread.sleep(ACTION_LATENCY);
+        return functionName;
+    };
+
+    @BeforeEach
+    public void setUp() {
+        executorService = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"actions/parallelactions.json", "actions/parallelactions.yml"})
+    public void testParallelActions(String model) {
+        WorkflowManager workflowManager = getWorkflowManager();
+        assertNotNull(workflowManager);
+        workflowManager.setMarkup(getFileContents(getResourcePath(model)));
+
+        EventState eventState = (EventState) WorkflowUtils.getStateByNAme("test-state",
+                                                                         workflowManager);
+        Event event = eventState.getEvents().get(0);
+        assertEquals(Event.ActionMode.PARALLEL,
+                     event.getActionMode());
+
+        ActionDispatcher actionDispatcher = new ActionDispatcher(actionExecutor,
+                                                                 executorService);
+        long start = System.currentTimeMillis();
+        List<ActionResult> results = actionDispatcher.dispatch(event);
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals(3,
+                     results.size());
+        assertTrue(results.stream().allMatch(ActionResult::isCompleted));
+        assertEquals("firstFunction",
+                     results.get(0).getResult());
+        assertEquals("secondFunction",
+                     results.get(1).getResult());
+        assertEquals("thirdFunction",
+                     results.get(2).getResult());
+        assertTrue(elapsed < 3 * ACTION_LATENCY);
+
+        List<ActionResult> triggerResults = actionDispatcher.dispatch(eventState,
+                                                                      WorkflowUtils.getUniqueTriggerEvents(workflowManager).get("test-trigger"),
+                                                                      workflowManager);
+        assertEquals(3,
+                     triggerResults.size());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"actions/parallelactions.json", "actions/parallelactions.yml"})
+    public void testSequentialActionsStopOnFailure(String model) {
+        WorkflowManager workflowManager = getWorkflowManager();
+        assertNotNull(workflowManager);
+        workflowManager.setMarkup(getFileContents(getResourcePath(model)));
+
+        EventState eventState = (EventState) WorkflowUtils.getStateByNAme("test-state",
+                                                                         workflowManager);
+        Event event = eventState.getEvents().get(1);
+        assertEquals(Event.ActionMode.SEQUENTIAL,
+                     event.getActionMode());
+
+        List<ActionResult> results = new ActionDispatcher(actionExecutor,
+                                                          executorService).dispatch(event);
+
+        assertEquals(2,
+                     results.size());
+        assertTrue(results.get(0).isCompleted());
+        assertEquals(ActionResult.Status.FAILED,
+                     results.get(1).getStatus());
+        assertTrue(results.get(1).getError() instanceof IllegalStateException);
+    }
+
+    @Test
+    public void testParallelActionTimeout() {
+        Event event = new Event().withActionMode(Event.ActionMode.PARALLEL)
+                .withActions(Arrays.asList(
+                        new Action().withFunction(new Function().withName("fastFunction")).withTimeout("PT5S"),
+                        new Action().withFunction(new Function().withName("slowFunction")).withTimeout("PT0.05S")
+                ));
+
+        List<ActionResult> results = new ActionDispatcher(actionExecutor,
+                                                          executorService).dispatch(event);
+
+        assertEquals(2,
+                     results.size());
+        assertTrue(results.get(0).isCompleted());
+        assertEquals(ActionResult.Status.TIMED_OUT,
+                     results.get(1).getStatus());
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package org.serverless.workflow.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.ToIntFunction;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.serverless.workflow.api.choices.AndChoice;
+import org.serverless.workflow.api.choices.DefaultChoice;
+import org.serverless.workflow.api.choices.NotChoice;
+import org.serverless.workflow.api.choices.OrChoice;
+import org.serverless.workflow.api.choices.SingleChoice;
+import org.serverless.workflow.api.interfaces.Choice;
+import org.serverless.workflow.api.states.SwitchState;
+import org.serverless.workflow.impl.choices.ChoiceCompiler;
+import org.serverless.workflow.impl.choices.ChoiceOperator;
+import org.serverless.workflow.impl.choices.CompiledSwitch;
+import org.serverless.workflow.impl.manager.WorkflowManagerImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ChoiceCompilerTest extends BaseWorkflowTest {
+
+    private static Logger logger = LoggerFactory.getLogger(ChoiceCompilerTest.class);
+
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @ParameterizedTest
+    @ValueSource(strings = {"basic/singleswitchstatesinglechoice.json", "basic/singleswitchstateandchoice.json",
+            "basic/singleswitchstateorchoice.json", "basic/singleswitchstatenotchoice.json",
+            "basic/singleswitchstatesinglechoice.yml", "basic/singleswitchstateandchoice.yml",
+            "basic/singleswitchstateorchoice.yml", "basic/singleswitchstatenotchoice.yml"})
+    public void testChoiceForms(String model) throws Exception {
+        WorkflowManagerImpl workflowManager = (WorkflowManagerImpl) getWorkflowManager();
+        workflowManager.setMarkup(getFileContents(getResourcePath(model)));
+        CompiledSwitch compiledSwitch = ChoiceCompiler.compile((SwitchState) workflowManager.getWorkflow().getStates().get(0));
+
+        boolean not = model.contains("notchoice");
+        assertEquals(not ? "defaultteststate" : "testnextstate",
+                     compiledSwitch.getNextState(toData("{\"testpath\": \"testvalue\"}")));
+        assertEquals(not ? "testnextstate" : "defaultteststate",
+                     compiledSwitch.getNextState(toData("{\"testpath\": \"othervalue\"}")));
+        assertEquals(not ? "testnextstate" : "defaultteststate",
+                     compiledSwitch.getNextState(toData("{}")));
+    }
+
+    @Test
+    public void testFirstMatchAndSharedConditions() throws Exception {
+        SwitchState switchState = new SwitchState().withName("test-state").withDefault("default").withChoices(Arrays.<Choice>asList(
+                new AndChoice().withNextState("adult-us").withAnd(Arrays.asList(
+                        newCondition("$.customer.age",
+                                     DefaultChoice.Operator.GREATER_THAN_EQUALS,
+                                     "18"),
+                        newCondition("$.customer.country",
+                                     DefaultChoice.Operator.EQUALS,
+                                     "US"))),
+                new SingleChoice().withPath("customer.age").withOperator(SingleChoice.Operator.GREATER_THAN_EQUALS).withValue("18.0").withNextState("adult"),
+                new OrChoice().withNextState("europe").withOr(Arrays.asList(
+                        newCondition("$.customer.country",
+                                     DefaultChoice.Operator.EQUALS,
+                                     "ES"),
+                        newCondition("$.customer.country",
+                                     DefaultChoice.Operator.EQUALS,
+                                     "FR"))),
+                new NotChoice().withNextState("not-us").withNot(newCondition("$.customer.country",
+                                                                           DefaultChoice.Operator.EQUALS,
+                                                                           "US"))));
+
+        CompiledSwitch compiledSwitch = ChoiceCompiler.compile(switchState);
+
+        // "18" and "18.0" on customer.age are the same condition, as are both tests of country "US"
+        assertEquals(4,
+                     compiledSwitch.getConditionCount());
+        assertEquals(2,
+                     compiledSwitch.getPathCount());
+        assertEquals(4,
+                     compiledSwitch.getChoiceCount());
+
+        assertEquals("adult-us",
+                     compiledSwitch.getNextState(toData("{\"customer\": {\"age\": 30, \"country\": \"US\"}}")));
+        assertEquals("adult",
+                     compiledSwitch.getNextState(toData("{\"customer\": {\"age\": \"18\", \"country\": \"FR\"}}")));
+        assertEquals("europe",
+                     compiledSwitch.getNextState(toData("{\"customer\": {\"age\": 17, \"country\": \"FR\"}}")));
+        assertEquals("not-us",
+                     compiledSwitch.getNextState(toData("{\"customer\": {\"age\": 17, \"country\": \"UK\"}}")));
+        assertEquals("default",
+                     compiledSwitch.getNextState(toData("{\"customer\": {\"age\": 17, \"country\": \"US\"}}")));
+        assertEquals(-1,
+                     compiledSwitch.getMatchingChoice(toData("{\"customer\": {\"age\": 17, \"country\": \"US\"}}")));
+
+        // one lookup for all country conditions and one age comparison, each done once
+        assertEquals(2,
+                     compiledSwitch.getComparisons(toData("{\"customer\": {\"age\": 17, \"country\": \"US\"}}")));
+    }
+
+    @Test
+    public void testOperatorNames() {
+        assertEquals(ChoiceOperator.EQUALS,
+                     ChoiceOperator.fromString("Equals"));
+        assertEquals(ChoiceOperator.EQUALS,
+                     ChoiceOperator.fromString("EQUALS"));
+        assertEquals(ChoiceOperator.LESS_THAN_EQUALS,
+                     ChoiceOperator.fromString("LessThanEquals"));
+        assertEquals(ChoiceOperator.LESS_THAN_EQUALS,
+                     ChoiceOperator.fromString("LESS_THAN_EQUALS"));
+        assertEquals(ChoiceOperator.GREATER_THAN,
+                     ChoiceOperator.fromString("greaterthan"));
+        assertThrows(IllegalArgumentException.class,
+                     () -> ChoiceOperator.fromString("Contains"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"$", "name", "$.customer.age", "items[0].id", "$.items[*].id", "$[0]"})
+    public void testValidPaths(String path) {
+        ChoiceCompiler.checkPath(path);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "a..b", "a.", "a[0", "a[]", "a]", "a[0]b", "a[[0]]"})
+    public void testInvalidPaths(String path) {
+        assertThrows(IllegalArgumentException.class,
+                     () -> ChoiceCompiler.checkPath(path));
+    }
+
+    @Test
+    public void testEmptySwitch() throws Exception {
+        CompiledSwitch compiledSwitch = ChoiceCompiler.compile(new SwitchState().withName("test-state").withDefault("default"));
+
+        assertEquals("default",
+                     compiledSwitch.getNextState(toData("{\"testpath\": \"testvalue\"}")));
+        assertNull(compiledSwitch.getDispatchPath());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {100, 500, 1_000})
+    public void testManyChoicesBenchmark(int choiceCount) throws Exception {
+        SwitchState switchState = newLargeSwitch(choiceCount);
+        CompiledSwitch compiledSwitch = ChoiceCompiler.compile(switchState);
+        assertEquals("/order/type",
+                     compiledSwitch.getDispatchPath());
+
+        // each choice on its own, as a consumer evaluating the choices one by one from scratch would
+        List<CompiledSwitch> separateChoices = new ArrayList<>();
+        for (Choice choice : switchState.getChoices()) {
+            separateChoices.add(ChoiceCompiler.compile(new SwitchState().withName("choice").withChoices(Collections.singletonList(choice))));
+        }
+
+        List<JsonNode> inputs = newInputs(choiceCount,
+                                          1_000);
+        long compiledComparisons = 0;
+        long separateComparisons = 0;
+        for (JsonNode input : inputs) {
+            int expected = -1;
+            for (int i = 0; i < separateChoices.size() && expected == -1; i++) {
+                separateComparisons += separateChoices.get(i).getComparisons(input);
+                if (separateChoices.get(i).getMatchingChoice(input) == 0) {
+                    expected = i;
+                }
+            }
+            assertEquals(expected,
+                         compiledSwitch.getMatchingChoice(input));
+            compiledComparisons += compiledSwitch.getComparisons(input);
+        }
+
+        long compiledNanos = time(inputs,
+                                  input -> compiledSwitch.getMatchingChoice(input));
+        long separateNanos = time(inputs,
+                                  input -> {
+                                      for (int i = 0; i < separateChoices.size(); i++) {
+                                          if (separateChoices.get(i).getMatchingChoice(input) == 0) {
+                                              return i;
+                                          }
+                                      }
+                                      return -1;
+                                  });
+        logger.info("{} choices: {} conditions, compiled {} comparisons and {} ns per decision, separately {} comparisons and {} ns per decision",
+                    choiceCount,
+                    compiledSwitch.getConditionCount(),
+                    compiledComparisons / inputs.size(),
+                    compiledNanos / inputs.size(),
+                    separateComparisons / inputs.size(),
+                    separateNanos / inputs.size());
+
+        // a lookup on the order type, then at most the amount and tier tests, whatever the number of choices
+        assertTrue(compiledComparisons <= 3L * inputs.size(),
+                   "compiled switch needs " + compiledComparisons + " comparisons for " + inputs.size() + " decisions");
+        assertTrue(compiledComparisons * 10 < separateComparisons);
+    }
+
+    // order types with a single choice each, every tenth also requiring a minimum amount, and tier
+    // choices that apply to any order type
+    private static SwitchState newLargeSwitch(int choiceCount) {
+        List<Choice> choices = new ArrayList<>();
+        for (int i = 0; i < choiceCount; i++) {
+            if (i % 50 == 25) {
+                choices.add(new OrChoice().withNextState("tier-" + i).withOr(Arrays.asList(
+                        newCondition("$.customer.tier",
+                                     DefaultChoice.Operator.EQUALS,
+                                     "tier-" + i),
+                        newCondition("$.customer.tier",
+                                     DefaultChoice.Operator.EQUALS,
+                                     "tier-" + (i + 1)))));
+            } else if (i % 10 == 0) {
+                choices.add(new AndChoice().withNextState("large-" + i).withAnd(Arrays.asList(
+                        newCondition("$.order.amount",
+                                     DefaultChoice.Operator.GREATER_THAN,
+                                     "100"),
+                        newCondition("$.order.type",
+                                     DefaultChoice.Operator.EQUALS,
+                                     "type-" + i))));
+            } else {
+                choices.add(new SingleChoice().withPath("$.order.type").withOperator(SingleChoice.Operator.EQUALS).withValue("type-" + i).withNextState("state-" + i));
+            }
+        }
+        return new SwitchState().withName("test-state").withDefault("default").withChoices(choices);
+    }
+
+    private List<JsonNode> newInputs(int choiceCount,
+                                     int inputCount) {
+        Random random = new Random(42);
+        List<JsonNode> inputs = new ArrayList<>();
+        for (int i = 0; i < inputCount; i++) {
+            ObjectNode input = objectMapper.createObjectNode();
+            // a few order types that no choice expects
+            input.with("order").put("type",
+                                    "type-" + random.nextInt(choiceCount + choiceCount / 10));
+            input.with("order").put("amount",
+                                    random.nextInt(200));
+            input.with("customer").put("tier",
+                                       "tier-" + random.nextInt(choiceCount));
+            inputs.add(input);
+        }
+        return inputs;
+    }
+
+    private static long time(List<JsonNode> inputs,
+                             ToIntFunction<JsonNode> decision) {
+        int sink = 0;
+        for (int round = 0; round < 5; round++) {
+            for (JsonNode input : inputs) {
+                sink += decision.applyAsInt(input);
+            }
+        }
+        long start = System.nanoTime();
+        for (JsonNode input : inputs) {
+            sink += decision.applyAsInt(input);
+        }
+        long nanos = System.nanoTime() - start;
+        assertTrue(sink != Integer.MIN_VALUE);
+        return nanos;
+    }
+
+    private static DefaultChoice newCondition(String path,
+                                              DefaultChoice.Operator operator,
+                                              String value) {
+        return new DefaultChoice().withPath(path).withOperator(operator).withValue(value);
+    }
+
+    private JsonNode toData(String json) throws Exception {
+        return objectMapper.readTree(json);
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package org.serverless.workflow.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.serverless.workflow.api.WorkflowManager;
+import org.serverless.workflow.api.events.TriggerEvent;
+import org.serverless.workflow.api.states.EventState;
+import org.serverless.workflow.impl.correlation.CorrelationIndex;
+import org.serverless.workflow.impl.correlation.WaitingInstance;
+import org.serverless.workflow.impl.timer.HashedWheelTimer;
+import org.serverless.workflow.impl.timer.TimeoutScheduler;
+import org.serverless.workflow.impl.utils.WorkflowUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CorrelationIndexTest extends BaseWorkflowTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {"controller/eventstatewithtrigger.json", "controller/eventstatewithtrigger.yml"})
+    public void testLookupAndInstanceCompletion(String model) {
+        WorkflowManager workflowManager = getWorkflowManager();
+        assertNotNull(workflowManager);
+        workflowManager.setMarkup(getFileContents(getResourcePath(model)));
+
+        TriggerEvent triggerEvent = WorkflowUtils.getUniqueTriggerEvents(workflowManager).get("test-trigger");
+        EventState eventState = (EventState) WorkflowUtils.getStateByNAme("test-state",
+                                                                         workflowManager);
+
+        CorrelationIndex correlationIndex = new CorrelationIndex();
+        int instances = 10_000;
+        for (int i = 0; i < instances; i++) {
+            correlationIndex.register("instance-" + i,
+                                      triggerEvent,
+                                      "order-" + (i % 100),
+                                      eventState);
+        }
+        assertEquals(instances,
+                     correlationIndex.size());
+
+        Collection<WaitingInstance> waiting = correlationIndex.lookup("test-trigger",
+                                                                      "order-7");
+        assertEquals(instances / 100,
+                     waiting.size());
+        WaitingInstance waitingInstance = waiting.iterator().next();
+        assertSame(eventState,
+                   waitingInstance.getEventState());
+        assertEquals("order-7",
+                     waitingInstance.getTokenValue());
+
+        assertTrue(correlationIndex.lookup("test-trigger",
+                                           "unknown").isEmpty());
+        assertTrue(correlationIndex.lookup("other-trigger",
+                                           "order-7").isEmpty());
+
+        assertEquals(1,
+                     correlationIndex.removeInstance("instance-7"));
+        assertEquals(0,
+                     correlationIndex.removeInstance("instance-7"));
+        assertEquals(instances / 100 - 1,
+                     correlationIndex.lookup("test-trigger",
+                                             "order-7").size());
+
+        List<WaitingInstance> delivered = new ArrayList<>(correlationIndex.lookup("test-trigger",
+                                                                                  "order-7"));
+        for (WaitingInstance instance : delivered) {
+            assertTrue(correlationIndex.remove(instance));
+            assertFalse(correlationIndex.remove(instance));
+        }
+        assertTrue(correlationIndex.lookup("test-trigger",
+                                           "order-7").isEmpty());
+        assertEquals(instances - instances / 100,
+                     correlationIndex.size());
+    }
+
+    @Test
+    public void testRegistrationTimeout() {
+        HashedWheelTimer timer = new HashedWheelTimer(1,
+                                                      TimeUnit.MILLISECONDS,
+                                                      512,
+                                                      0L,
+                                                      null);
+        List<WaitingInstance> timedOut = new ArrayList<>();
+        CorrelationIndex correlationIndex = new CorrelationIndex(new TimeoutScheduler(timer),
+                                                                 timedOut::add);
+        TriggerEvent triggerEvent = new TriggerEvent().withName("test-trigger").withCorrelationToken("testcorrelationtoken");
+
+        correlationIndex.register("instance-1",
+                                  triggerEvent,
+                                  "order-1",
+                                  null,
+                                  "PT1S");
+        correlationIndex.register("instance-2",
+                                  triggerEvent,
+                                  "order-1",
+                                  null,
+                                  "PT5S");
+        correlationIndex.removeInstance("instance-2");
+        assertEquals(1,
+                     timer.getPendingTimers());
+
+        timer.advance(TimeUnit.SECONDS.toNanos(2));
+        assertEquals(1,
+                     timedOut.size());
+        assertEquals("instance-1",
+                     timedOut.get(0).getInstanceId());
+        assertEquals(0,
+                     correlationIndex.size());
+        assertEquals(0,
+                     correlationIndex.removeInstance("instance-1"));
+    }
+
+    @Test
+    public void testConcurrentRegisterAndRemoveInstance() throws Exception {
+        HashedWheelTimer timer = new HashedWheelTimer(1,
+                                                      TimeUnit.MILLISECONDS,
+                                                      512,
+                                                      0L,
+                                                      null);
+        List<WaitingInstance> timedOut = Collections.synchronizedList(new ArrayList<>());
+        CorrelationIndex correlationIndex = new CorrelationIndex(new TimeoutScheduler(timer),
+                                                                 timedOut::add);
+        TriggerEvent triggerEvent = new TriggerEvent().withName("test-trigger").withCorrelationToken("testcorrelationtoken");
+        int instances = 8;
+        int rounds = 100_000;
+
+        CountDownLatch start = new CountDownLatch(1);
+        Thread registering = new Thread(() -> {
+            awaitQuietly(start);
+            for (int i = 0; i < rounds; i++) {
+                correlationIndex.register("instance-" + (i % instances),
+                                          triggerEvent,
+                                          "order-" + (i % 3),
+                                          null,
+                                          "PT1S");
+            }
+        });
+        Thread removing = new Thread(() -> {
+            awaitQuietly(start);
+            for (int i = 0; i < rounds; i++) {
+                correlationIndex.removeInstance("instance-" + (i % instances));
+            }
+        });
+        // registrations that raced with removeInstance are still reachable through their instance
+        for (int i = 0; i < instances; i++) {
+            correlationIndex.removeInstance("instance-" + i);
+        }
+        assertEquals(0,
+                     correlationIndex.size());
+        timer.advance(TimeUnit.SECONDS.toNanos(2));
+        assertTrue(timedOut.isEmpty());
+        assertEquals(0,
+                     timer.getPendingTimers());
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package org.serverless.workflow.impl;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.serverless.workflow.api.events.TriggerEvent;
+import org.serverless.workflow.api.validation.ValidationError;
+import org.serverless.workflow.impl.expression.CompilingExpressionEvaluator;
+import org.serverless.workflow.impl.manager.WorkflowManagerImpl;
+import org.serverless.workflow.impl.validator.WorkflowValidatorImpl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ExpressionCompilationTest extends BaseWorkflowTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {"jexl", "spel"})
+    public void testSyntaxErrorsAreValidationErrors(String evaluatorName) {
+        WorkflowManagerImpl workflowManager = (WorkflowManagerImpl) getWorkflowManager();
+        workflowManager.setDefaultExpressionEvaluator(evaluatorName);
+        workflowManager.setMarkup(getFileContents(getResourcePath("expressions/invalidexpressions.json")));
+        WorkflowValidatorImpl workflowValidator = (WorkflowValidatorImpl) workflowManager.getWorkflowValidator();
+        workflowValidator.setExpressionCompilationEnabled(true);
+        CompilingExpressionEvaluator expressionEvaluator = (CompilingExpressionEvaluator) workflowManager.getExpressionEvaluator();
+        expressionEvaluator.clearCompiledExpressions();
+
+        List<ValidationError> validationErrors = workflowValidator.validate();
+        assertTrue(hasError(validationErrors,
+                            "Invalid event-expression in state test-state-2: name == )"));
+        assertTrue(hasError(validationErrors,
+                            "Invalid choice path in state test-state-3: $.items[0 ("));
+        assertFalse(hasError(validationErrors,
+                             "$.items[*].id"));
+        // only the valid event-expression, choice paths are not compiled as expressions
+        assertEquals(1,
+                     expressionEvaluator.getCompiledExpressionCount());
+        assertFalse(hasError(validationErrors,
+                             "in state test-state-1"));
+
+        List<ValidationError> warmUpErrors = workflowManager.warmUpExpressions();
+        assertEquals(2,
+                     warmUpErrors.size());
+        assertEquals(ValidationError.WORKFLOW_VALIDATION,
+                     warmUpErrors.get(0).getType());
+    }
+
+    @Test
+    public void testExpressionCompilationDisabled() {
+        WorkflowManagerImpl workflowManager = (WorkflowManagerImpl) getWorkflowManager();
+        workflowManager.setMarkup(getFileContents(getResourcePath("expressions/invalidexpressions.json")));
+        WorkflowValidatorImpl workflowValidator = (WorkflowValidatorImpl) workflowManager.getWorkflowValidator();
+
+        assertFalse(workflowValidator.isExpressionCompilationEnabled());
+        assertFalse(hasError(workflowValidator.validate(),
+                             "Invalid event-expression"));
+
+        workflowValidator.setExpressionCompilationEnabled(true);
+        assertTrue(hasError(workflowValidator.validate(),
+                            "Invalid event-expression"));
+
+        workflowValidator.reset();
+        assertFalse(workflowValidator.isExpressionCompilationEnabled());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"jexl", "spel"})
+    public void testWarmUpLeavesExpressionsCompiled(String evaluatorName) {
+        WorkflowManagerImpl workflowManager = (WorkflowManagerImpl) getWorkflowManager();
+        workflowManager.setDefaultExpressionEvaluator(evaluatorName);
+        workflowManager.setMarkup(getFileContents(getResourcePath("expressions/eventstatestriggers-" + evaluatorName + ".json")));
+
+        CompilingExpressionEvaluator expressionEvaluator = (CompilingExpressionEvaluator) workflowManager.getExpressionEvaluator();
+        assertNotNull(expressionEvaluator);
+        expressionEvaluator.clearCompiledExpressions();
+
+        assertTrue(workflowManager.warmUpExpressions().isEmpty());
+        int compiled = expressionEvaluator.getCompiledExpressionCount();
+        assertTrue(compiled > 0);
+
+        assertTrue(expressionEvaluator.evaluate("name eq 'test-trigger-1'",
+                                                new TriggerEvent().withName("test-trigger-1")));
+        assertEquals(compiled,
+                     expressionEvaluator.getCompiledExpressionCount());
+    }
+
+    private static boolean hasError(List<ValidationError> validationErrors,
+                                    String message) {
+        return validationErrors.stream().anyMatch(e -> e.getMessage().contains(message));
+    }
+}
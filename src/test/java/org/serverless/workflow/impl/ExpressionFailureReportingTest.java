@@ -0,0 +1,184 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package org.serverless.workflow.impl;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+import org.serverless.workflow.api.Workflow;
+import org.serverless.workflow.api.WorkflowManager;
+import org.serverless.workflow.api.events.Event;
+import org.serverless.workflow.api.events.TriggerEvent;
+import org.serverless.workflow.api.states.DefaultState;
+import org.serverless.workflow.api.states.EventState;
+import org.serverless.workflow.impl.expression.ExpressionFailureListener;
+import org.serverless.workflow.impl.expression.ExpressionFailureReporter;
+import org.serverless.workflow.impl.expression.JexlExpressionEvaluatorImpl;
+import org.serverless.workflow.impl.expression.SpelExpressionEvaluatorImpl;
+import org.serverless.workflow.impl.utils.WorkflowUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ExpressionFailureReportingTest extends BaseWorkflowTest {
+
+    private static final String BAD_EXPRESSION = "name eq eq";
+
+    @Test
+    public void testRepeatedFailuresAreCounted() {
+        JexlExpressionEvaluatorImpl evaluator = new JexlExpressionEvaluatorImpl();
+        ExpressionFailureReporter failureReporter = evaluator.getFailureReporter();
+        TriggerEvent triggerEvent = new TriggerEvent().withName("testtrigger");
+
+        AtomicInteger notified = new AtomicInteger();
+        AtomicLong lastCount = new AtomicLong();
+        failureReporter.addFailureListener((evaluatorName, expression, exception, failureCount) -> {
+            assertEquals("jexl",
+                         evaluatorName);
+            assertEquals(BAD_EXPRESSION,
+                         expression);
+            notified.incrementAndGet();
+            lastCount.set(failureCount);
+        });
+
+        for (int i = 0; i < 1000; i++) {
+            assertFalse(evaluator.evaluate(BAD_EXPRESSION,
+                                           triggerEvent));
+        }
+        assertTrue(evaluator.evaluate("name eq 'testtrigger'",
+                                      triggerEvent));
+
+        assertEquals(1000,
+                     failureReporter.getFailureCount(BAD_EXPRESSION));
+        assertEquals(0,
+                     failureReporter.getFailureCount("name eq 'testtrigger'"));
+        assertEquals(1000,
+                     notified.get());
+        assertEquals(1000,
+                     lastCount.get());
+        assertEquals(1,
+                     failureReporter.getReportCount());
+    }
+
+    @Test
+    public void testReportInterval() {
+        SpelExpressionEvaluatorImpl evaluator = new SpelExpressionEvaluatorImpl();
+        evaluator.setFailureReporter(new ExpressionFailureReporter("spel",
+                                                                   0,
+                                                                   ExpressionFailureReporter.DEFAULT_MAX_EXPRESSIONS));
+        TriggerEvent triggerEvent = new TriggerEvent().withName("testtrigger");
+
+        for (int i = 0; i < 5; i++) {
+            assertFalse(evaluator.evaluate(BAD_EXPRESSION,
+                                           triggerEvent));
+        }
+
+        assertEquals(5,
+                     evaluator.getFailureReporter().getFailureCount(BAD_EXPRESSION));
+        assertEquals(5,
+                     evaluator.getFailureReporter().getReportCount());
+    }
+
+    @Test
+    public void testMaxExpressions() {
+        ExpressionFailureReporter failureReporter = new ExpressionFailureReporter("jexl",
+                                                                                  ExpressionFailureReporter.DEFAULT_REPORT_INTERVAL_MILLIS,
+                                                                                  2);
+        Exception exception = new IllegalArgumentException("test");
+        for (int i = 0; i < 10; i++) {
+            failureReporter.reportFailure("expression" + i,
+                                          exception);
+        }
+
+        assertEquals(1,
+                     failureReporter.getFailureCount("expression0"));
+        assertEquals(1,
+                     failureReporter.getFailureCount("expression1"));
+        assertEquals(0,
+                     failureReporter.getFailureCount("expression5"));
+        assertEquals(10,
+                     failureReporter.getFailureCount());
+        assertEquals(3,
+                     failureReporter.getFailureCounts().size());
+
+        failureReporter.reset();
+        assertEquals(0,
+                     failureReporter.getFailureCount());
+    }
+
+    @Test
+    public void testRemoveFailureListener() {
+        ExpressionFailureReporter failureReporter = new ExpressionFailureReporter("jexl");
+        AtomicInteger notified = new AtomicInteger();
+        ExpressionFailureListener listener = (evaluatorName, expression, exception, failureCount) -> notified.incrementAndGet();
+        failureReporter.addFailureListener(listener);
+        failureReporter.reportFailure("expression",
+                                      new IllegalArgumentException("test"));
+        failureReporter.removeFailureListener(listener);
+        failureReporter.reportFailure("expression",
+                                      new IllegalArgumentException("test"));
+
+        assertEquals(1,
+                     notified.get());
+        assertEquals(2,
+                     failureReporter.getFailureCount("expression"));
+    }
+
+    @Test
+    public void testNullExpression() {
+        TriggerEvent triggerEvent = new TriggerEvent().withName("testtrigger");
+
+        JexlExpressionEvaluatorImpl jexlEvaluator = new JexlExpressionEvaluatorImpl();
+        assertFalse(jexlEvaluator.evaluate(null,
+                                           triggerEvent));
+        assertEquals(1,
+                     jexlEvaluator.getFailureReporter().getFailureCount(null));
+        assertThrows(IllegalArgumentException.class,
+                     () -> jexlEvaluator.compile(null));
+
+        SpelExpressionEvaluatorImpl spelEvaluator = new SpelExpressionEvaluatorImpl();
+        assertFalse(spelEvaluator.evaluate(null,
+                                           triggerEvent));
+        assertEquals(1,
+                     spelEvaluator.getFailureReporter().getFailureCount(null));
+        assertThrows(IllegalArgumentException.class,
+                     () -> spelEvaluator.compile(null));
+
+        // events without an expression do not match any trigger
+        WorkflowManager workflowManager = getWorkflowManager();
+        workflowManager.setWorkflow(new Workflow().withName("test-wf")
+                                            .withStates(Collections.singletonList(new EventState().withName("test-state")
+                                                                                          .withType(DefaultState.Type.EVENT)
+                                                                                          .withEvents(Collections.singletonList(new Event().withNextState("test-state"))))));
+        assertTrue(WorkflowUtils.getEventStatesForTriggerEvent(triggerEvent,
+                                                               workflowManager).isEmpty());
+    }
+
+    @Test
+    public void testInvalidSettings() {
+        assertThrows(IllegalArgumentException.class,
+                     () -> new ExpressionFailureReporter("jexl",
+                                                         -1,
+                                                         10));
+    }
+}
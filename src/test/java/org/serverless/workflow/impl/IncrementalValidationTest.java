@@ -0,0 +1,209 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package org.serverless.workflow.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.serverless.workflow.api.Workflow;
+import org.serverless.workflow.api.WorkflowManager;
+import org.serverless.workflow.api.events.TriggerEvent;
+import org.serverless.workflow.api.interfaces.State;
+import org.serverless.workflow.api.states.DelayState;
+import org.serverless.workflow.api.validation.ValidationError;
+import org.serverless.workflow.impl.utils.HashingOutputStream;
+import org.serverless.workflow.impl.validator.WorkflowValidatorImpl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class IncrementalValidationTest extends BaseWorkflowTest {
+
+    @Test
+    public void testOnlyChangedStatesAreRevalidated() {
+        Workflow workflow = getWorkflow(100);
+        WorkflowManager workflowManager = getWorkflowManager();
+        workflowManager.setWorkflow(workflow);
+        WorkflowValidatorImpl workflowValidator = (WorkflowValidatorImpl) workflowManager.getWorkflowValidator();
+        workflowValidator.setIncrementalValidationEnabled(true);
+        try {
+            assertTrue(workflowValidator.validate().isEmpty());
+            // top level, 100 states and 1 trigger event
+            assertEquals(102,
+                         workflowValidator.getRevalidatedCount());
+
+            assertTrue(workflowValidator.validate().isEmpty());
+            assertEquals(0,
+                         workflowValidator.getRevalidatedCount());
+
+            DelayState edited = (DelayState) workflow.getStates().get(42);
+            edited.setNextState("");
+            assertEquals(Collections.singletonList("Next state should not be empty."),
+                         getMessages(workflowValidator.validate()));
+            assertEquals(1,
+                         workflowValidator.getRevalidatedCount());
+
+            edited.setNextState("state-43");
+            assertTrue(workflowValidator.validate().isEmpty());
+            assertEquals(1,
+                         workflowValidator.getRevalidatedCount());
+        } finally {
+            workflowValidator.setIncrementalValidationEnabled(false);
+        }
+    }
+
+    @Test
+    public void testUniquenessAndCountsFollowEdits() {
+        Workflow workflow = getWorkflow(10);
+        WorkflowManager workflowManager = getWorkflowManager();
+        workflowManager.setWorkflow(workflow);
+        WorkflowValidatorImpl workflowValidator = (WorkflowValidatorImpl) workflowManager.getWorkflowValidator();
+        workflowValidator.setIncrementalValidationEnabled(true);
+        try {
+            assertTrue(workflowValidator.validate().isEmpty());
+
+            ((DelayState) workflow.getStates().get(5)).setName("state-4");
+            workflow.getTriggerDefs().add(new TriggerEvent().withName("trigger").withType("type"));
+            List<String> incremental = getMessages(workflowValidator.validate());
+            assertEquals(2,
+                         workflowValidator.getRevalidatedCount());
+            assertTrue(incremental.contains("State does not have a unique name: state-4"));
+            assertTrue(incremental.contains("Trigger Event does not have unique name: trigger"));
+            assertFullValidationAgrees(workflowValidator,
+                                       incremental);
+
+            ((DelayState) workflow.getStates().get(9)).setEnd(false);
+            workflow.setStartsAt("state-4");
+            incremental = getMessages(workflowValidator.validate());
+            assertTrue(incremental.contains("No end state found."));
+            assertTrue(incremental.contains("Multiple start states found."));
+            assertFullValidationAgrees(workflowValidator,
+                                       incremental);
+
+            workflow.getStates().remove(5);
+            workflow.getTriggerDefs().remove(1);
+            ((DelayState) workflow.getStates().get(8)).setEnd(true);
+            assertTrue(workflowValidator.validate().isEmpty());
+        } finally {
+            workflowValidator.setIncrementalValidationEnabled(false);
+        }
+    }
+
+    @Test
+    public void testSchemaErrorsMatchFullValidation() {
+        Workflow workflow = getWorkflow(10);
+        WorkflowManager workflowManager = getWorkflowManager();
+        workflowManager.setWorkflow(workflow);
+        WorkflowValidatorImpl workflowValidator = (WorkflowValidatorImpl) workflowManager.getWorkflowValidator();
+        workflowValidator.setIncrementalValidationEnabled(true);
+        try {
+            assertTrue(workflowValidator.validate().isEmpty());
+
+            workflow.getTriggerDefs().add(new TriggerEvent().withType("type"));
+            List<ValidationError> validationErrors = workflowValidator.validate();
+            assertTrue(validationErrors.stream().anyMatch(validationError -> ValidationError.SCHEMA_VALIDATION.equals(validationError.getType())));
+            List<String> incremental = getMessages(validationErrors);
+            assertTrue(incremental.contains("#/trigger-defs/1: required key [name] not found"));
+            assertFullValidationAgrees(workflowValidator,
+                                       incremental);
+
+            // several violations are reported under their summaries, as in a full validation
+            workflow.getTriggerDefs().add(new TriggerEvent().withType("type"));
+            incremental = getMessages(workflowValidator.validate());
+            assertTrue(incremental.stream().anyMatch(message -> message.endsWith("2 schema violations found")));
+            assertFullValidationAgrees(workflowValidator,
+                                       incremental);
+
+            workflow.getTriggerDefs().remove(2);
+            workflow.getTriggerDefs().remove(1);
+            assertTrue(workflowValidator.validate().isEmpty());
+        } finally {
+            workflowValidator.setIncrementalValidationEnabled(false);
+        }
+    }
+
+    @Test
+    public void testHashingOutputStream() throws Exception {
+        byte[] content = "The quick brown fox jumps over the lazy dog".getBytes(StandardCharsets.UTF_8);
+
+        HashingOutputStream whole = new HashingOutputStream();
+        whole.write(content);
+        assertEquals("e34bbc7bbc071b6c7a433ca9c49a9347",
+                     whole.toString());
+
+        // the hash does not depend on how the bytes are written
+        HashingOutputStream split = new HashingOutputStream();
+        split.write(content[0]);
+        split.write(content,
+                    1,
+                    20);
+        split.write(content,
+                    21,
+                    content.length - 21);
+        assertEquals(whole.toString(),
+                     split.toString());
+        assertEquals(content.length,
+                     split.getLength());
+
+        assertEquals("00000000000000000000000000000000",
+                     new HashingOutputStream().toString());
+    }
+
+    private static void assertFullValidationAgrees(WorkflowValidatorImpl workflowValidator,
+                                                   List<String> incremental) {
+        workflowValidator.setIncrementalValidationEnabled(false);
+        List<String> full = getMessages(workflowValidator.validate());
+        workflowValidator.setIncrementalValidationEnabled(true);
+        assertEquals(sorted(full),
+                     sorted(incremental));
+        // rebuild the incremental results after the full validation
+        workflowValidator.validate();
+    }
+
+    private static Workflow getWorkflow(int stateCount) {
+        List<State> states = new ArrayList<>();
+        for (int i = 0; i < stateCount; i++) {
+            states.add(new DelayState().withName("state-" + i)
+                               .withNextState("state-" + (i + 1))
+                               .withTimeDelay("PT1S")
+                               .withEnd(i == stateCount - 1));
+        }
+        return new Workflow().withName("incremental-wf")
+                .withStartsAt("state-0")
+                .withStates(states)
+                .withTriggerDefs(new ArrayList<>(Arrays.asList(new TriggerEvent().withName("trigger").withType("type"))));
+    }
+
+    private static List<String> getMessages(List<ValidationError> validationErrors) {
+        return validationErrors.stream()
+                .map(ValidationError::getMessage)
+                .collect(Collectors.toList());
+    }
+
+    private static List<String> sorted(List<String> messages) {
+        List<String> sorted = new ArrayList<>(messages);
+        Collections.sort(sorted);
+        return sorted;
+    }
+}
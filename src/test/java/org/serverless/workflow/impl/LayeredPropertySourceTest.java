@@ -0,0 +1,188 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package org.serverless.workflow.impl;
+
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.serverless.workflow.impl.manager.WorkflowManagerImpl;
+import org.serverless.workflow.impl.propertysource.WorkflowPropertySourceImpl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LayeredPropertySourceTest extends BaseWorkflowTest {
+
+    @TempDir
+    Path configDir;
+
+    @Test
+    public void testLayers() throws Exception {
+        Path externalFile = configDir.resolve("workflow.properties");
+        writeProperties(externalFile,
+                        "workflow.name=external-wf\nworkflow.external=value\n");
+
+        System.setProperty("workflow.state.name",
+                           "system-state");
+        System.setProperty("workflow.undefined",
+                           "ignored");
+        try {
+            WorkflowPropertySourceImpl propertySource = new WorkflowPropertySourceImpl(externalFile);
+            Properties properties = propertySource.getPropertySource();
+
+            // classpath
+            assertEquals("test-trigger",
+                         properties.getProperty("workflow.trigger.name"));
+            // external file
+            assertEquals("external-wf",
+                         properties.getProperty("workflow.name"));
+            assertEquals("value",
+                         properties.getProperty("workflow.external"));
+            // system properties only override defined keys
+            assertEquals("system-state",
+                         properties.getProperty("workflow.state.name"));
+            assertFalse(properties.containsKey("workflow.undefined"));
+        } finally {
+            System.clearProperty("workflow.state.name");
+            System.clearProperty("workflow.undefined");
+        }
+    }
+
+    @Test
+    public void testReloadSwapsSnapshot() throws Exception {
+        Path externalFile = configDir.resolve("workflow.properties");
+        writeProperties(externalFile,
+                        "workflow.name=first-wf\n");
+        WorkflowPropertySourceImpl propertySource = new WorkflowPropertySourceImpl(externalFile);
+        Properties first = propertySource.getPropertySource();
+
+        assertFalse(propertySource.reload());
+
+        writeProperties(externalFile,
+                        "workflow.name=second-wf\n");
+        assertTrue(propertySource.reload());
+
+        assertEquals("second-wf",
+                     propertySource.getPropertySource().getProperty("workflow.name"));
+        // earlier snapshots are immutable
+        assertEquals("first-wf",
+                     first.getProperty("workflow.name"));
+        assertThrows(UnsupportedOperationException.class,
+                     () -> first.setProperty("workflow.name",
+                                             "changed"));
+        assertThrows(UnsupportedOperationException.class,
+                     () -> first.putIfAbsent("workflow.other",
+                                             "changed"));
+        assertThrows(UnsupportedOperationException.class,
+                     () -> first.merge("workflow.name",
+                                       "changed",
+                                       (previous, value) -> value));
+        assertThrows(UnsupportedOperationException.class,
+                     () -> first.computeIfAbsent("workflow.other",
+                                                 key -> "changed"));
+        assertThrows(UnsupportedOperationException.class,
+                     () -> first.replace("workflow.name",
+                                         "changed"));
+        assertThrows(UnsupportedOperationException.class,
+                     () -> first.load(new StringReader("workflow.name=changed")));
+        assertThrows(UnsupportedOperationException.class,
+                     first::clear);
+        assertEquals("first-wf",
+                     first.getProperty("workflow.name"));
+    }
+
+    @Test
+    public void testReloadReachesParsedWorkflow() {
+        WorkflowManagerImpl workflowManager = new WorkflowManagerImpl();
+        WorkflowPropertySourceImpl propertySource = (WorkflowPropertySourceImpl) workflowManager.getWorkflowPropertySource();
+        String markup = "{\"name\": \"workflow.name\", \"version\": \"1.0\", \"starts-at\": \"test-state\"}";
+
+        Properties properties = new Properties();
+        properties.setProperty("workflow.name",
+                               "first-wf");
+        propertySource.setPropertySource(properties);
+        assertEquals("first-wf",
+                     workflowManager.toWorkflow(markup).getName());
+
+        properties.setProperty("workflow.name",
+                               "second-wf");
+        propertySource.setPropertySource(properties);
+        assertEquals("second-wf",
+                     workflowManager.toWorkflow(markup).getName());
+    }
+
+    @Test
+    public void testPolling() throws Exception {
+        Path externalFile = configDir.resolve("workflow.properties");
+        writeProperties(externalFile,
+                        "workflow.name=first-wf\n");
+        WorkflowPropertySourceImpl propertySource = new WorkflowPropertySourceImpl(externalFile);
+
+        CountDownLatch changed = new CountDownLatch(1);
+        propertySource.addChangeListener(properties -> {
+            if ("second-wf".equals(properties.getProperty("workflow.name"))) {
+                changed.countDown();
+            }
+        });
+        propertySource.startPolling(20,
+                                    TimeUnit.MILLISECONDS);
+        try {
+            writeProperties(externalFile,
+                            "workflow.name=second-wf\n");
+            assertTrue(changed.await(10,
+                                     TimeUnit.SECONDS));
+        } finally {
+            propertySource.stopPolling();
+        }
+    }
+
+    @Test
+    public void testExplicitPropertySource() {
+        WorkflowPropertySourceImpl propertySource = new WorkflowPropertySourceImpl(null);
+        Properties explicit = new Properties();
+        explicit.setProperty("workflow.name",
+                             "explicit-wf");
+        propertySource.setPropertySource(explicit);
+
+        assertEquals("explicit-wf",
+                     propertySource.getPropertySource().getProperty("workflow.name"));
+        assertNull(propertySource.getPropertySource().getProperty("workflow.trigger.name"));
+
+        propertySource.setPropertySource(null);
+        assertEquals("test-wf",
+                     propertySource.getPropertySource().getProperty("workflow.name"));
+    }
+
+    private static void writeProperties(Path file,
+                                        String content) throws Exception {
+        Files.write(file,
+                    content.getBytes(StandardCharsets.UTF_8));
+    }
+}
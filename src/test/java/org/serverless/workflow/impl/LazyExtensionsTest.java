@@ -0,0 +1,129 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package org.serverless.workflow.impl;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.serverless.workflow.api.Workflow;
+import org.serverless.workflow.api.interfaces.Extension;
+import org.serverless.workflow.impl.extensions.LazyExtension;
+import org.serverless.workflow.impl.manager.WorkflowManagerImpl;
+import org.serverless.workflow.impl.util.SecondTestExtensionImpl;
+import org.serverless.workflow.impl.util.TestExtensionImpl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.serverless.workflow.impl.util.IsEqualJSON.equalToJSON;
+
+public class LazyExtensionsTest extends BaseWorkflowTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {"extensions/twoextensions.json", "extensions/twoextensions.yml"})
+    public void testLazyExtensions(String model) {
+        WorkflowManagerImpl workflowManager = (WorkflowManagerImpl) getWorkflowManager();
+        workflowManager.registerExtension("testextension",
+                                          TestExtensionImpl.class);
+        workflowManager.registerExtension("secondtestextension",
+                                          SecondTestExtensionImpl.class);
+        String eagerJson = workflowManager.setMarkup(getFileContents(getResourcePath(model))).toJson();
+
+        workflowManager.setLazyExtensions(true);
+        assertTrue(workflowManager.isLazyExtensions());
+        workflowManager.setMarkup(getFileContents(getResourcePath(model)));
+
+        Workflow workflow = workflowManager.getWorkflow();
+        assertEquals(2,
+                     workflow.getExtensions().size());
+        LazyExtension first = (LazyExtension) workflow.getExtensions().get(0);
+        LazyExtension second = (LazyExtension) workflow.getExtensions().get(1);
+        assertEquals("testextension",
+                     first.getExtensionId());
+        assertFalse(first.isBound());
+        assertFalse(second.isBound());
+
+        // unaccessed extensions are written from their tree
+        assertThat(workflowManager.toJson(),
+                   equalToJSON(eagerJson));
+        assertFalse(first.isBound());
+
+        Extension extension = workflowManager.getExtension("testextension");
+        assertTrue(extension instanceof TestExtensionImpl);
+        assertEquals("testvalue1",
+                     ((TestExtensionImpl) extension).getTestparam1());
+        assertTrue(first.isBound());
+        assertFalse(second.isBound());
+        assertSame(extension,
+                   LazyExtension.resolve(first));
+    }
+
+    @Test
+    public void testBoundExtensionChangesAreSerialized() {
+        WorkflowManagerImpl workflowManager = (WorkflowManagerImpl) getWorkflowManager();
+        workflowManager.registerExtension("testextension",
+                                          TestExtensionImpl.class);
+        workflowManager.setLazyExtensions(true);
+        workflowManager.setMarkup(getFileContents(getResourcePath("extensions/twoextensions.json")));
+
+        TestExtensionImpl extension = (TestExtensionImpl) workflowManager.getExtension("testextension");
+        extension.setTestparam1("changedvalue");
+
+        String json = workflowManager.toJson();
+        assertTrue(json.contains("changedvalue"));
+        assertFalse(json.contains("\"testvalue1\""));
+    }
+
+    @Test
+    public void testConcurrentBinding() throws Exception {
+        WorkflowManagerImpl workflowManager = (WorkflowManagerImpl) getWorkflowManager();
+        workflowManager.registerExtension("testextension",
+                                          TestExtensionImpl.class);
+        workflowManager.setLazyExtensions(true);
+        workflowManager.setMarkup(getFileContents(getResourcePath("extensions/twoextensions.json")));
+
+        LazyExtension lazyExtension = (LazyExtension) workflowManager.getWorkflow().getExtensions().get(0);
+        Set<Extension> bound = ConcurrentHashMap.newKeySet();
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 100; i++) {
+            executorService.submit(() -> bound.add(lazyExtension.get()));
+        }
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(1,
+                                                    TimeUnit.MINUTES));
+        assertEquals(1,
+                     bound.size());
+
+        // extensions that are not registered are left to the workflow module
+        assertNotNull(workflowManager.getWorkflow().getExtensions());
+        assertFalse(workflowManager.getWorkflow().getExtensions().stream()
+                            .skip(1)
+                            .anyMatch(extension -> extension instanceof LazyExtension));
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package org.serverless.workflow.impl;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.serverless.workflow.api.Workflow;
+import org.serverless.workflow.api.interfaces.State;
+import org.serverless.workflow.api.states.DelayState;
+import org.serverless.workflow.impl.manager.WorkflowManagerImpl;
+import org.serverless.workflow.impl.states.LazyStateList;
+import org.serverless.workflow.impl.utils.WorkflowUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LazyStatesTest extends BaseWorkflowTest {
+
+    @Test
+    public void testLazyStates() {
+        int stateCount = 20_000;
+        String markup = getDelayStatesMarkup(stateCount);
+
+        WorkflowManagerImpl workflowManager = (WorkflowManagerImpl) getWorkflowManager();
+        workflowManager.setLazyStates(true);
+        workflowManager.setMarkup(markup);
+
+        Workflow workflow = workflowManager.getWorkflow();
+        assertEquals("test-wf",
+                     workflow.getName());
+        assertTrue(workflow.getStates() instanceof LazyStateList);
+        LazyStateList states = (LazyStateList) workflow.getStates();
+        assertEquals(stateCount,
+                     states.size());
+        assertEquals(0,
+                     states.getMaterializedCount());
+
+        State startState = WorkflowUtils.getStartState(workflowManager);
+        assertEquals("state-0",
+                     startState.getName());
+        DelayState delayState = (DelayState) WorkflowUtils.getStateByNAme("state-12345",
+                                                                         workflowManager);
+        assertEquals("state-12346",
+                     delayState.getNextState());
+        assertNull(WorkflowUtils.getStateByNAme("unknown",
+                                                workflowManager));
+        assertEquals(2,
+                     states.getMaterializedCount());
+        assertTrue(states.isMaterialized(12345));
+        assertFalse(states.isMaterialized(12344));
+        assertSame(delayState,
+                   states.get(12345));
+
+        // traversal binds the remaining states
+        WorkflowManagerImpl eagerWorkflowManager = (WorkflowManagerImpl) getWorkflowManager();
+        eagerWorkflowManager.setMarkup(markup);
+        assertEquals(eagerWorkflowManager.toJson(),
+                     workflowManager.toJson());
+        assertEquals(stateCount,
+                     states.getMaterializedCount());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"basic/singleeventstate.json", "basic/singleeventstate.yml"})
+    public void testLazyStatesMatchEagerStates(String model) {
+        WorkflowManagerImpl workflowManager = (WorkflowManagerImpl) getWorkflowManager();
+        workflowManager.setLazyStates(true);
+        workflowManager.setMarkup(getFileContents(getResourcePath(model)));
+
+        // yaml markup is always bound eagerly
+        assertEquals(model.endsWith(".json"),
+                     workflowManager.getWorkflow().getStates() instanceof LazyStateList);
+
+        WorkflowManagerImpl eagerWorkflowManager = (WorkflowManagerImpl) getWorkflowManager();
+        eagerWorkflowManager.setMarkup(getFileContents(getResourcePath(model)));
+        assertEquals(eagerWorkflowManager.toJson(),
+                     workflowManager.toJson());
+    }
+
+    private static String getDelayStatesMarkup(int stateCount) {
+        StringBuilder markup = new StringBuilder("{\"name\": \"test-wf\", \"starts-at\": \"state-0\", \"states\": [");
+        for (int i = 0; i < stateCount; i++) {
+            if (i > 0) {
+                markup.append(",");
+            }
+            markup.append("{\"name\": \"state-").append(i)
+                    .append("\", \"type\": \"DELAY\", \"time-delay\": \"PT1S\", \"next-state\": \"state-").append(i + 1)
+                    .append("\", \"end\": ").append(i == stateCount - 1).append("}");
+        }
+        return markup.append("]}").toString();
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package org.serverless.workflow.impl;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.serverless.workflow.api.WorkflowManager;
+import org.serverless.workflow.api.actions.Action;
+import org.serverless.workflow.api.actions.Retry;
+import org.serverless.workflow.api.functions.Function;
+import org.serverless.workflow.api.states.OperationState;
+import org.serverless.workflow.impl.retry.RetryCallback;
+import org.serverless.workflow.impl.retry.RetryPolicy;
+import org.serverless.workflow.impl.retry.RetryScheduler;
+import org.serverless.workflow.impl.timer.HashedWheelTimer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RetrySchedulerTest extends BaseWorkflowTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {"basic/singleoperationstate.json", "basic/singleoperationstate.yml"})
+    public void testRetryUntilSuccess(String model) {
+        WorkflowManager workflowManager = getWorkflowManager();
+        assertNotNull(workflowManager);
+        workflowManager.setMarkup(getFileContents(getResourcePath(model)));
+
+        OperationState operationState = (OperationState) workflowManager.getWorkflow().getStates().get(0);
+        Action action = operationState.getActions().get(0);
+
+        AtomicInteger attempts = new AtomicInteger();
+        HashedWheelTimer timer = manualTimer();
+        RetryScheduler retryScheduler = new RetryScheduler(a -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new IllegalStateException("testMatch");
+            }
+            return "done";
+        },
+                                                           Runnable::run,
+                                                           timer);
+        RecordingCallback callback = new RecordingCallback();
+
+        retryScheduler.execute(action,
+                               callback);
+        assertEquals(1,
+                     attempts.get());
+        assertEquals(1,
+                     retryScheduler.getInFlightRetries());
+
+        // retry interval is PT5S
+        timer.advance(TimeUnit.SECONDS.toNanos(4));
+        assertEquals(1,
+                     attempts.get());
+        timer.advance(TimeUnit.SECONDS.toNanos(5));
+        assertEquals(2,
+                     attempts.get());
+        timer.advance(TimeUnit.SECONDS.toNanos(10));
+        assertEquals(3,
+                     attempts.get());
+
+        assertEquals(1,
+                     callback.events.size());
+        assertEquals("success:done",
+                     callback.events.get(0));
+        assertEquals(0,
+                     retryScheduler.getInFlightRetries());
+        assertEquals(0,
+                     retryScheduler.getExhaustedRetries());
+    }
+
+    @Test
+    public void testRetriesExhausted() {
+        Action action = new Action().withFunction(new Function().withName("testFunction"))
+                .withRetry(new Retry().withMatch("IllegalState.*").withMaxRetry(2)
+                                   .withRetryInterval("PT1S")
+                                   .withNextState("testNextRetryState"));
+
+        HashedWheelTimer timer = manualTimer();
+        RetryScheduler retryScheduler = new RetryScheduler(a -> {
+            throw new IllegalStateException("always");
+        },
+                                                           Runnable::run,
+                                                           timer);
+        RecordingCallback callback = new RecordingCallback();
+
+        retryScheduler.execute(action,
+                               callback);
+        timer.advance(TimeUnit.SECONDS.toNanos(10));
+
+        assertEquals(1,
+                     callback.events.size());
+        assertEquals("exhausted:testNextRetryState",
+                     callback.events.get(0));
+        assertEquals(0,
+                     retryScheduler.getInFlightRetries());
+        assertEquals(1,
+                     retryScheduler.getExhaustedRetries());
+    }
+
+    @Test
+    public void testNonMatchingErrorIsNotRetried() {
+        Action action = new Action().withFunction(new Function().withName("testFunction"))
+                .withRetry(new Retry().withMatch("TimeoutException").withMaxRetry(5)
+                                   .withRetryInterval("PT1S"));
+
+        RetryScheduler retryScheduler = new RetryScheduler(a -> {
+            throw new IllegalArgumentException("bad input");
+        },
+                                                           Runnable::run,
+                                                           manualTimer());
+        RecordingCallback callback = new RecordingCallback();
+        retryScheduler.execute(action,
+                               callback);
+
+        assertEquals(1,
+                     callback.events.size());
+        assertEquals("failure:bad input",
+                     callback.events.get(0));
+        assertEquals(0,
+                     retryScheduler.getInFlightRetries());
+    }
+
+    @Test
+    public void testJitteredExponentialBackoff() {
+        Retry retry = new Retry().withMaxRetry(10).withRetryInterval("PT1S");
+
+        RetryPolicy fixed = RetryPolicy.fixed(retry);
+        assertEquals(TimeUnit.SECONDS.toNanos(1),
+                     fixed.getDelayNanos(5));
+
+        RetryPolicy exponential = new RetryPolicy(retry,
+                                                  2.0,
+                                                  Duration.ofSeconds(30),
+                                                  0.0);
+        assertEquals(TimeUnit.SECONDS.toNanos(1),
+                     exponential.getDelayNanos(1));
+        assertEquals(TimeUnit.SECONDS.toNanos(8),
+                     exponential.getDelayNanos(4));
+        assertEquals(TimeUnit.SECONDS.toNanos(30),
+                     exponential.getDelayNanos(10));
+
+        RetryPolicy jittered = new RetryPolicy(retry,
+                                               2.0,
+                                               Duration.ofSeconds(30),
+                                               0.5);
+        long previous = -1;
+        boolean varies = false;
+        for (int i = 0; i < 100; i++) {
+            long delay = jittered.getDelayNanos(4);
+            assertTrue(delay >= TimeUnit.SECONDS.toNanos(4));
+            assertTrue(delay <= TimeUnit.SECONDS.toNanos(8));
+            varies |= previous >= 0 && previous != delay;
+            previous = delay;
+        }
+        assertTrue(varies);
+
+        assertTrue(RetryPolicy.fixed(new Retry()).matches(new RuntimeException()));
+        assertFalse(RetryPolicy.fixed(new Retry()).canRetry(1));
+    }
+
+    private HashedWheelTimer manualTimer() {
+        return new HashedWheelTimer(10,
+                                    TimeUnit.MILLISECONDS,
+                                    512,
+                                    0L,
+                                    null);
+    }
+
+    private static class RecordingCallback implements RetryCallback {
+
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void onSuccess(Action action,
+                              Object result) {
+            events.add("success:" + result);
+        }
+
+        @Override
+        public void onFailure(Action action,
+                              Throwable error) {
+            events.add("failure:" + error.getMessage());
+        }
+
+        @Override
+        public void onRetriesExhausted(Action action,
+                                       String nextState,
+                                       Throwable error) {
+            events.add("exhausted:" + nextState);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package org.serverless.workflow.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.openjdk.jol.info.GraphLayout;
+import org.serverless.workflow.api.Workflow;
+import org.serverless.workflow.api.states.EventState;
+import org.serverless.workflow.impl.manager.WorkflowManagerImpl;
+import org.serverless.workflow.impl.utils.StringTable;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StringDeduplicationTest extends BaseWorkflowTest {
+
+    @Test
+    public void testStringTable() {
+        StringTable stringTable = new StringTable(1000);
+        assertEquals(1024,
+                     stringTable.getCapacity());
+
+        String first = new String("test-state");
+        String second = new String("test-state");
+        assertNotSame(first,
+                      second);
+        assertSame(first,
+                   stringTable.canonicalize(first));
+        assertSame(first,
+                   stringTable.canonicalize(second));
+    }
+
+    @Test
+    public void testParsedStringsAreShared() {
+        String markup = getFileContents(getResourcePath("basic/singleeventstate.json"));
+        WorkflowManagerImpl workflowManager = (WorkflowManagerImpl) getWorkflowManager();
+        assertFalse(workflowManager.isStringDeduplication());
+        assertNotSame(workflowManager.toWorkflow(markup).getName(),
+                      workflowManager.toWorkflow(markup).getName());
+
+        workflowManager.setStringDeduplication(true);
+        Workflow first = workflowManager.toWorkflow(markup);
+        Workflow second = workflowManager.toWorkflow(markup);
+
+        assertSame(first.getName(),
+                   second.getName());
+        EventState firstState = (EventState) first.getStates().get(0);
+        EventState secondState = (EventState) second.getStates().get(0);
+        assertSame(firstState.getName(),
+                   secondState.getName());
+        assertSame(firstState.getEvents().get(0).getActions().get(0).getFunction().getName(),
+                   secondState.getEvents().get(0).getActions().get(0).getFunction().getName());
+    }
+
+    @Test
+    public void testFootprintOfLoadedVersions() {
+        int versions = 1_000;
+        String markup = getFileContents(getResourcePath("basic/singleeventstate.json"));
+
+        WorkflowManagerImpl workflowManager = (WorkflowManagerImpl) getWorkflowManager();
+        long duplicatedSize = GraphLayout.parseInstance(loadVersions(workflowManager,
+                                                                     markup,
+                                                                     versions)).totalSize();
+
+        workflowManager.setStringDeduplication(true);
+        long deduplicatedSize = GraphLayout.parseInstance(loadVersions(workflowManager,
+                                                                       markup,
+                                                                       versions)).totalSize();
+
+        // only the version strings differ between the loaded workflows
+        assertTrue(deduplicatedSize < duplicatedSize * 0.6,
+                   "expected " + deduplicatedSize + " to be well below " + duplicatedSize);
+    }
+
+    private static List<Workflow> loadVersions(WorkflowManagerImpl workflowManager,
+                                               String markup,
+                                               int versions) {
+        List<Workflow> workflows = new ArrayList<>(versions);
+        for (int i = 0; i < versions; i++) {
+            Workflow workflow = workflowManager.toWorkflow(markup);
+            workflow.setVersion("1." + i);
+            workflows.add(workflow);
+        }
+        return workflows;
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package org.serverless.workflow.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.serverless.workflow.api.WorkflowManager;
+import org.serverless.workflow.api.states.DelayState;
+import org.serverless.workflow.impl.timer.HashedWheelTimer;
+import org.serverless.workflow.impl.timer.TimeoutScheduler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TimerTest extends BaseWorkflowTest {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void testExpiryAndCancel() {
+        HashedWheelTimer timer = new HashedWheelTimer(1,
+                                                      TimeUnit.MILLISECONDS,
+                                                      8,
+                                                      0L,
+                                                      null);
+        List<String> expired = new ArrayList<>();
+
+        timer.schedule(() -> expired.add("first"),
+                       3,
+                       TimeUnit.MILLISECONDS);
+        // wraps around the 8 bucket wheel, must not expire on its first pass
+        timer.schedule(() -> expired.add("second"),
+                       11,
+                       TimeUnit.MILLISECONDS);
+        long cancelled = timer.schedule(() -> expired.add("cancelled"),
+                                        5,
+                                        TimeUnit.MILLISECONDS);
+        assertEquals(3,
+                     timer.getPendingTimers());
+
+        assertTrue(timer.cancel(cancelled));
+        assertFalse(timer.cancel(cancelled));
+        assertFalse(timer.isPending(cancelled));
+
+        assertEquals(0,
+                     timer.advance(2 * MILLIS));
+        assertEquals(1,
+                     timer.advance(3 * MILLIS));
+        assertEquals(0,
+                     timer.advance(10 * MILLIS));
+        assertEquals(1,
+                     timer.advance(11 * MILLIS));
+
+        assertEquals(2,
+                     expired.size());
+        assertEquals("first",
+                     expired.get(0));
+        assertEquals("second",
+                     expired.get(1));
+        assertEquals(0,
+                     timer.getPendingTimers());
+    }
+
+    @Test
+    public void testStaleHandleDoesNotCancelReusedSlot() {
+        HashedWheelTimer timer = new HashedWheelTimer(1,
+                                                      TimeUnit.MILLISECONDS,
+                                                      8,
+                                                      0L,
+                                                      null);
+        long first = timer.schedule(() -> {
+                                    },
+                                    1,
+                                    TimeUnit.MILLISECONDS);
+        assertTrue(timer.cancel(first));
+
+        long second = timer.schedule(() -> {
+                                     },
+                                     1,
+                                     TimeUnit.MILLISECONDS);
+        assertFalse(timer.cancel(first));
+        assertTrue(timer.isPending(second));
+    }
+
+    @Test
+    public void testManyPendingTimers() {
+        int count = 1_000_000;
+        HashedWheelTimer timer = new HashedWheelTimer(1,
+                                                      TimeUnit.MILLISECONDS,
+                                                      4096,
+                                                      0L,
+                                                      null);
+        AtomicInteger expired = new AtomicInteger();
+        Runnable task = expired::incrementAndGet;
+
+        long[] handles = new long[count];
+        for (int i = 0; i < count; i++) {
+            handles[i] = timer.schedule(task,
+                                        1 + (i % 10_000),
+                                        TimeUnit.MILLISECONDS);
+        }
+        assertEquals(count,
+                     timer.getPendingTimers());
+
+        for (int i = 0; i < count; i += 2) {
+            assertTrue(timer.cancel(handles[i]));
+        }
+
+        timer.advance(10_000 * MILLIS);
+        assertEquals(count / 2,
+                     expired.get());
+        assertEquals(0,
+                     timer.getPendingTimers());
+    }
+
+    @Test
+    public void testDelayCountsFromScheduleWhileWorkerIsStalled() throws Exception {
+        HashedWheelTimer timer = new HashedWheelTimer(1,
+                                                      TimeUnit.MILLISECONDS,
+                                                      512);
+        CountDownLatch stalled = new CountDownLatch(1);
+        CountDownLatch expired = new CountDownLatch(1);
+        long[] expiredAt = new long[1];
+        timer.start();
+        try {
+            // tasks run on the worker, this one keeps it from advancing for 300ms
+            timer.schedule(() -> {
+                               stalled.countDown();
+                               sleepQuietly(300);
+                           },
+                           1,
+                           TimeUnit.MILLISECONDS);
+            assertTrue(stalled.await(5,
+                                     TimeUnit.SECONDS));
+            sleepQuietly(100);
+
+            long scheduledAt = System.nanoTime();
+            timer.schedule(() -> {
+                               expiredAt[0] = System.nanoTime();
+                               expired.countDown();
+                           },
+                           400,
+                           TimeUnit.MILLISECONDS);
+            assertTrue(expired.await(5,
+                                     TimeUnit.SECONDS));
+            assertTrue(expiredAt[0] - scheduledAt >= 399 * MILLIS,
+                       "expired after " + (expiredAt[0] - scheduledAt) / MILLIS + "ms");
+        } finally {
+            timer.stop();
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"basic/singledelaystate.json", "basic/singledelaystate.yml"})
+    public void testDelayStateTimeout(String model) throws Exception {
+        WorkflowManager workflowManager = getWorkflowManager();
+        assertNotNull(workflowManager);
+        workflowManager.setMarkup(getFileContents(getResourcePath(model)));
+
+        DelayState delayState = (DelayState) workflowManager.getWorkflow().getStates().get(0);
+
+        HashedWheelTimer timer = new HashedWheelTimer(1,
+                                                      TimeUnit.MILLISECONDS,
+                                                      512,
+                                                      0L,
+                                                      null);
+        TimeoutScheduler timeoutScheduler = new TimeoutScheduler(timer);
+        CountDownLatch latch = new CountDownLatch(1);
+
+        long handle = timeoutScheduler.scheduleDelay(delayState,
+                                                     latch::countDown);
+        assertTrue(timer.isPending(handle));
+
+        timer.advance(TimeUnit.SECONDS.toNanos(4));
+        assertEquals(1,
+                     latch.getCount());
+        timer.advance(TimeUnit.SECONDS.toNanos(5));
+        assertTrue(latch.await(0,
+                               TimeUnit.MILLISECONDS));
+
+        assertEquals(TimeoutScheduler.NO_TIMEOUT,
+                     timeoutScheduler.schedule("testTimeout",
+                                               latch::countDown));
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
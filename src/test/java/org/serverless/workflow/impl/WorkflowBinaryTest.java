@@ -0,0 +1,81 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package org.serverless.workflow.impl;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.serverless.workflow.api.Workflow;
+import org.serverless.workflow.impl.manager.WorkflowManagerImpl;
+import org.serverless.workflow.impl.util.SecondTestExtensionImpl;
+import org.serverless.workflow.impl.util.TestExtensionImpl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WorkflowBinaryTest extends BaseWorkflowTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {"basic/singleeventstate.json", "basic/singleoperationstate.yml",
+            "basic/singleparallelstate.json", "basic/singleswitchstateandchoice.yml",
+            "basic/singleswitchstatenotchoice.json", "basic/singletriggerevent.yml"})
+    public void testBinaryRoundTrip(String model) {
+        WorkflowManagerImpl workflowManager = (WorkflowManagerImpl) getWorkflowManager();
+        assertNotNull(workflowManager);
+        workflowManager.setMarkup(getFileContents(getResourcePath(model)));
+
+        byte[] binary = workflowManager.toBinary();
+        assertNotNull(binary);
+        assertTrue(binary.length < workflowManager.toJson().length());
+
+        WorkflowManagerImpl binaryWorkflowManager = (WorkflowManagerImpl) getWorkflowManager();
+        binaryWorkflowManager.setBinary(binary);
+
+        assertEquals(workflowManager.toJson(),
+                     binaryWorkflowManager.toJson());
+    }
+
+    @Test
+    public void testBinaryWithExtensions() {
+        WorkflowManagerImpl workflowManager = (WorkflowManagerImpl) getWorkflowManager();
+        workflowManager.registerExtension("testextension",
+                                          TestExtensionImpl.class);
+        workflowManager.registerExtension("secondtestextension",
+                                          SecondTestExtensionImpl.class);
+        workflowManager.setMarkup(getFileContents(getResourcePath("extensions/twoextensions.json")));
+
+        Workflow workflow = workflowManager.fromBinary(workflowManager.toBinary());
+        assertEquals(2,
+                     workflow.getExtensions().size());
+        assertTrue(workflow.getExtensions().get(0) instanceof TestExtensionImpl);
+        assertTrue(workflow.getExtensions().get(1) instanceof SecondTestExtensionImpl);
+        assertEquals("testvalue1",
+                     ((TestExtensionImpl) workflow.getExtensions().get(0)).getTestparam1());
+    }
+
+    @Test
+    public void testInvalidBinary() {
+        WorkflowManagerImpl workflowManager = (WorkflowManagerImpl) getWorkflowManager();
+        assertThrows(IllegalArgumentException.class,
+                     () -> workflowManager.fromBinary(new byte[]{1, 2, 3}));
+    }
+}
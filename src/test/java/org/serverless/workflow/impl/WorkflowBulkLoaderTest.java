@@ -0,0 +1,163 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package org.serverless.workflow.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.serverless.workflow.api.Workflow;
+import org.serverless.workflow.impl.loader.BulkLoadResult;
+import org.serverless.workflow.impl.loader.WorkflowBulkLoader;
+import org.serverless.workflow.impl.manager.WorkflowManagerImpl;
+import org.serverless.workflow.impl.registry.WorkflowRegistry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WorkflowBulkLoaderTest extends BaseWorkflowTest {
+
+    @TempDir
+    Path workflowDir;
+
+    @Test
+    public void testLoadDirectory() throws Exception {
+        for (int i = 0; i < 50; i++) {
+            Files.write(workflowDir.resolve(String.format("wf-%02d.json",
+                                                          i)),
+                        getMarkup("wf-" + i,
+                                  "state-" + i).getBytes(StandardCharsets.UTF_8));
+        }
+        Files.write(workflowDir.resolve("broken.json"),
+                    "{ not a workflow".getBytes(StandardCharsets.UTF_8));
+        Files.write(workflowDir.resolve("notes.txt"),
+                    "not a definition".getBytes(StandardCharsets.UTF_8));
+
+        WorkflowBulkLoader bulkLoader = new WorkflowBulkLoader((WorkflowManagerImpl) getWorkflowManager(),
+                                                               4);
+        AtomicInteger notified = new AtomicInteger();
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        bulkLoader.setBulkLoadListener((result, completed, total) -> {
+            notified.incrementAndGet();
+            threads.add(Thread.currentThread().getName());
+            assertEquals(51,
+                         total);
+        });
+
+        List<BulkLoadResult> results = bulkLoader.load(workflowDir);
+        assertEquals(51,
+                     results.size());
+        assertEquals(51,
+                     notified.get());
+        assertFalse(threads.isEmpty());
+
+        // results keep the order of the sorted file names
+        BulkLoadResult broken = results.get(0);
+        assertTrue(broken.getSource().endsWith("broken.json"));
+        assertNull(broken.getWorkflow());
+        assertFalse(broken.isValid());
+        assertEquals(1,
+                     broken.getValidationErrors().size());
+
+        for (int i = 0; i < 50; i++) {
+            BulkLoadResult result = results.get(i + 1);
+            assertTrue(result.isValid());
+            assertEquals("wf-" + i,
+                         result.getWorkflow().getName());
+        }
+
+        WorkflowRegistry workflowRegistry = new WorkflowRegistry((WorkflowManagerImpl) getWorkflowManager());
+        assertEquals(50,
+                     WorkflowBulkLoader.registerAll(results,
+                                                    workflowRegistry));
+        assertNotNull(workflowRegistry.get("wf-7",
+                                           "1.0"));
+    }
+
+    @Test
+    public void testLoadMarkupsReportsValidationErrors() {
+        Map<String, String> markups = new LinkedHashMap<>();
+        markups.put("valid",
+                    getMarkup("valid-wf",
+                              "start"));
+        markups.put("no-name",
+                    getMarkup("",
+                              "start"));
+
+        WorkflowManagerImpl workflowManager = (WorkflowManagerImpl) getWorkflowManager();
+        Workflow current = new Workflow().withName("current-wf").withVersion("1.0");
+        workflowManager.setWorkflow(current);
+
+        List<BulkLoadResult> results = new WorkflowBulkLoader(workflowManager,
+                                                              2).loadMarkups(markups);
+        assertEquals(2,
+                     results.size());
+        assertEquals("valid",
+                     results.get(0).getSource());
+        assertTrue(results.get(0).isValid());
+
+        assertEquals("no-name",
+                     results.get(1).getSource());
+        assertNotNull(results.get(1).getWorkflow());
+        assertFalse(results.get(1).isValid());
+
+        // loading leaves the workflow of the manager untouched
+        assertSame(current,
+                   workflowManager.getWorkflow());
+    }
+
+    @Test
+    public void testInvalidParallelism() {
+        assertThrows(IllegalArgumentException.class,
+                     () -> new WorkflowBulkLoader((WorkflowManagerImpl) getWorkflowManager(),
+                                                  0));
+    }
+
+    private static String getMarkup(String name,
+                                    String startsAt) {
+        return "{\n" +
+                "  \"name\": \"" + name + "\",\n" +
+                "  \"version\": \"1.0\",\n" +
+                "  \"starts-at\": \"" + startsAt + "\",\n" +
+                "  \"states\": [\n" +
+                "    {\n" +
+                "      \"name\": \"" + startsAt + "\",\n" +
+                "      \"type\": \"DELAY\",\n" +
+                "      \"time-delay\": \"PT5S\",\n" +
+                "      \"next-state\": \"testNextState\",\n" +
+                "      \"start\": true,\n" +
+                "      \"end\": true\n" +
+                "    }\n" +
+                "  ]\n" +
+                "}";
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package org.serverless.workflow.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.serverless.workflow.impl.persistence.StateTransition;
+import org.serverless.workflow.impl.persistence.WorkflowCheckpoint;
+import org.serverless.workflow.impl.persistence.WorkflowJournal;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WorkflowCheckpointTest extends BaseWorkflowTest {
+
+    @TempDir
+    Path dataDir;
+
+    @Test
+    public void testCheckpointAndTailReplay() throws Exception {
+        int instances = 100_000;
+        Path checkpointFile = dataDir.resolve("instances.checkpoint");
+        long now = System.currentTimeMillis();
+
+        try (WorkflowJournal journal = new WorkflowJournal(dataDir.resolve("journal"),
+                                                           1024 * 1024)) {
+            for (int i = 0; i < instances; i++) {
+                journal.append(new StateTransition("instance-" + i,
+                                                   "state-" + (i % 20),
+                                                   now + i,
+                                                   ("data-" + i).getBytes(StandardCharsets.UTF_8)));
+            }
+
+            WorkflowCheckpoint checkpoint = WorkflowCheckpoint.recover(checkpointFile,
+                                                                       journal);
+            assertEquals(instances,
+                         checkpoint.getInstances().size());
+            checkpoint.write(checkpointFile);
+
+            // repeated state ids are stored once, so an entry costs little more than its instance id and data
+            assertTrue(Files.size(checkpointFile) < instances * 32L);
+
+            // transitions after the checkpoint
+            for (int i = 0; i < 1_000; i++) {
+                journal.append(new StateTransition("instance-" + i,
+                                                   "end",
+                                                   now + instances + i,
+                                                   null));
+            }
+        }
+
+        try (WorkflowJournal journal = new WorkflowJournal(dataDir.resolve("journal"),
+                                                           1024 * 1024)) {
+            WorkflowCheckpoint checkpoint = WorkflowCheckpoint.recover(checkpointFile,
+                                                                       journal);
+            assertEquals(instances,
+                         checkpoint.getInstances().size());
+            assertEquals(journal.getPosition(),
+                         checkpoint.getPosition());
+
+            StateTransition ended = checkpoint.getInstance("instance-10");
+            assertEquals("end",
+                         ended.getStateId());
+            assertEquals(now + instances + 10,
+                         ended.getTimestamp());
+
+            StateTransition running = checkpoint.getInstance("instance-5000");
+            assertEquals("state-0",
+                         running.getStateId());
+            assertEquals(now + 5000,
+                         running.getTimestamp());
+            assertArrayEquals("data-5000".getBytes(StandardCharsets.UTF_8),
+                              running.getData());
+        }
+    }
+
+    @Test
+    public void testRemovedInstanceStaysRemoved() throws Exception {
+        Path checkpointFile = dataDir.resolve("instances.checkpoint");
+        try (WorkflowJournal journal = new WorkflowJournal(dataDir.resolve("journal"))) {
+            journal.append(new StateTransition("removed",
+                                               "test-state",
+                                               1,
+                                               null));
+            journal.append(new StateTransition("running",
+                                               "test-state",
+                                               2,
+                                               null));
+
+            WorkflowCheckpoint checkpoint = WorkflowCheckpoint.recover(checkpointFile,
+                                                                       journal);
+            checkpoint.remove("removed");
+            checkpoint.write(checkpointFile);
+
+            journal.append(new StateTransition("running",
+                                               "next-state",
+                                               3,
+                                               null));
+        }
+
+        try (WorkflowJournal journal = new WorkflowJournal(dataDir.resolve("journal"))) {
+            WorkflowCheckpoint checkpoint = WorkflowCheckpoint.recover(checkpointFile,
+                                                                       journal);
+            assertNull(checkpoint.getInstance("removed"));
+            assertEquals("next-state",
+                         checkpoint.getInstance("running").getStateId());
+            assertEquals(1,
+                         checkpoint.getInstances().size());
+        }
+    }
+
+    @Test
+    public void testRecoverAfterCompaction() throws Exception {
+        Path checkpointFile = dataDir.resolve("instances.checkpoint");
+        try (WorkflowJournal journal = new WorkflowJournal(dataDir.resolve("journal"),
+                                                           4 * 1024)) {
+            for (int i = 0; i < 100; i++) {
+                journal.append(new StateTransition("instance-" + (i % 10),
+                                                   "state-" + i,
+                                                   i,
+                                                   null));
+            }
+            WorkflowCheckpoint.recover(checkpointFile,
+                                       journal).write(checkpointFile);
+
+            // fills the segment of the checkpoint position, seals it and compacts it
+            for (int i = 100; i < 300; i++) {
+                journal.append(new StateTransition("instance-" + (i % 10),
+                                                   "state-" + i,
+                                                   i,
+                                                   null));
+            }
+            journal.compact(null);
+        }
+
+        try (WorkflowJournal journal = new WorkflowJournal(dataDir.resolve("journal"),
+                                                           4 * 1024)) {
+            WorkflowCheckpoint checkpoint = WorkflowCheckpoint.recover(checkpointFile,
+                                                                       journal);
+            assertEquals(10,
+                         checkpoint.getInstances().size());
+            for (int i = 0; i < 10; i++) {
+                assertEquals("state-" + (290 + i),
+                             checkpoint.getInstance("instance-" + i).getStateId());
+            }
+            assertEquals(journal.getPosition(),
+                         checkpoint.getPosition());
+        }
+    }
+
+    @Test
+    public void testReadWrittenCheckpoint() throws Exception {
+        Path checkpointFile = dataDir.resolve("instances.checkpoint");
+        WorkflowCheckpoint checkpoint = new WorkflowCheckpoint();
+        checkpoint.apply(new StateTransition("first",
+                                             null,
+                                             -5,
+                                             null));
+        checkpoint.apply(new StateTransition("second",
+                                             "test-state",
+                                             Long.MAX_VALUE - 1,
+                                             new byte[]{1, 2, 3}));
+        checkpoint.write(checkpointFile);
+
+        WorkflowCheckpoint read = WorkflowCheckpoint.read(checkpointFile);
+        assertEquals(2,
+                     read.getInstances().size());
+        assertNull(read.getInstance("first").getStateId());
+        assertEquals(-5,
+                     read.getInstance("first").getTimestamp());
+        assertEquals(Long.MAX_VALUE - 1,
+                     read.getInstance("second").getTimestamp());
+        assertArrayEquals(new byte[]{1, 2, 3},
+                          read.getInstance("second").getData());
+    }
+
+    @Test
+    public void testCorruptedCheckpointFallsBackToJournal() throws Exception {
+        Path checkpointFile = dataDir.resolve("instances.checkpoint");
+        try (WorkflowJournal journal = new WorkflowJournal(dataDir.resolve("journal"))) {
+            journal.append(new StateTransition("instance",
+                                               "test-state",
+                                               1,
+                                               null));
+            WorkflowCheckpoint.recover(checkpointFile,
+                                       journal).write(checkpointFile);
+
+            Files.write(checkpointFile,
+                        new byte[]{0},
+                        StandardOpenOption.APPEND);
+            assertThrows(IllegalStateException.class,
+                         () -> WorkflowCheckpoint.read(checkpointFile));
+
+            WorkflowCheckpoint checkpoint = WorkflowCheckpoint.recover(checkpointFile,
+                                                                       journal);
+            assertEquals("test-state",
+                         checkpoint.getInstance("instance").getStateId());
+        }
+    }
+}
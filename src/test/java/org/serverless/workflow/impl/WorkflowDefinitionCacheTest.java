@@ -0,0 +1,199 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package org.serverless.workflow.impl;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.serverless.workflow.api.Workflow;
+import org.serverless.workflow.api.validation.ValidationError;
+import org.serverless.workflow.impl.cache.CachedWorkflow;
+import org.serverless.workflow.impl.cache.WorkflowDefinitionCache;
+import org.serverless.workflow.impl.manager.WorkflowManagerImpl;
+import org.serverless.workflow.impl.util.TestExtensionImpl;
+import org.serverless.workflow.impl.validator.WorkflowValidatorImpl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WorkflowDefinitionCacheTest extends BaseWorkflowTest {
+
+    @TempDir
+    Path cacheDir;
+
+    @ParameterizedTest
+    @ValueSource(strings = {"basic/singleeventstate.json", "basic/singleparallelstate.yml"})
+    public void testLoadFromCache(String model) throws Exception {
+        String markup = getFileContents(getResourcePath(model));
+        WorkflowDefinitionCache cache = new WorkflowDefinitionCache(cacheDir,
+                                                                    (WorkflowManagerImpl) getWorkflowManager());
+
+        CachedWorkflow parsed = cache.load(markup);
+        assertFalse(parsed.isFromCache());
+
+        // a new cache on the same directory, as after a restart
+        WorkflowManagerImpl workflowManager = (WorkflowManagerImpl) getWorkflowManager();
+        cache = new WorkflowDefinitionCache(cacheDir,
+                                            workflowManager);
+        CachedWorkflow cached = cache.load(markup);
+        assertTrue(cached.isFromCache());
+        assertEquals(1,
+                     cache.getHits());
+        assertEquals(0,
+                     cache.getMisses());
+
+        assertEquals(parsed.getValidationErrors().size(),
+                     cached.getValidationErrors().size());
+        workflowManager.setWorkflow(parsed.getWorkflow());
+        String parsedJson = workflowManager.toJson();
+        workflowManager.setWorkflow(cached.getWorkflow());
+        assertEquals(parsedJson,
+                     workflowManager.toJson());
+    }
+
+    @Test
+    public void testValidationErrorsAreCached() throws Exception {
+        String markup = getFileContents(getResourcePath("validation/emptyname.json"));
+        WorkflowDefinitionCache cache = new WorkflowDefinitionCache(cacheDir,
+                                                                    (WorkflowManagerImpl) getWorkflowManager());
+        CachedWorkflow parsed = cache.load(markup);
+        CachedWorkflow cached = cache.load(markup);
+
+        assertTrue(cached.isFromCache());
+        assertFalse(cached.isValid());
+        assertEquals(parsed.getValidationErrors().size(),
+                     cached.getValidationErrors().size());
+        for (int i = 0; i < parsed.getValidationErrors().size(); i++) {
+            ValidationError expected = parsed.getValidationErrors().get(i);
+            ValidationError actual = cached.getValidationErrors().get(i);
+            assertEquals(expected.getType(),
+                         actual.getType());
+            assertEquals(expected.getMessage(),
+                         actual.getMessage());
+        }
+    }
+
+    @Test
+    public void testKeyIncludesVersion() throws Exception {
+        String markup = getFileContents(getResourcePath("basic/singledelaystate.json"));
+        WorkflowManagerImpl workflowManager = (WorkflowManagerImpl) getWorkflowManager();
+        WorkflowDefinitionCache cache = new WorkflowDefinitionCache(cacheDir,
+                                                                    workflowManager,
+                                                                    "1.0");
+        WorkflowDefinitionCache upgradedCache = new WorkflowDefinitionCache(cacheDir,
+                                                                            workflowManager,
+                                                                            "1.1");
+        assertNotEquals(cache.getKey(markup),
+                        upgradedCache.getKey(markup));
+
+        cache.load(markup);
+        assertFalse(upgradedCache.load(markup).isFromCache());
+        assertTrue(cache.load(markup).isFromCache());
+    }
+
+    @Test
+    public void testKeyIncludesConfiguration() throws Exception {
+        String markup = getFileContents(getResourcePath("basic/singledelaystate.json"));
+        WorkflowManagerImpl workflowManager = (WorkflowManagerImpl) getWorkflowManager();
+        WorkflowDefinitionCache cache = new WorkflowDefinitionCache(cacheDir,
+                                                                    workflowManager);
+        cache.load(markup);
+        assertTrue(cache.load(markup).isFromCache());
+
+        WorkflowValidatorImpl workflowValidator = (WorkflowValidatorImpl) workflowManager.getWorkflowValidator();
+        workflowValidator.setSchemaValidationEnabled(false);
+        assertFalse(cache.load(markup).isFromCache());
+        workflowValidator.setStrictValidationEnabled(true);
+        assertFalse(cache.load(markup).isFromCache());
+
+        String key = cache.getKey(markup);
+        workflowManager.registerExtension("testextension",
+                                          TestExtensionImpl.class);
+        assertNotEquals(key,
+                        cache.getKey(markup));
+        assertFalse(cache.load(markup).isFromCache());
+
+        key = cache.getKey(markup);
+        workflowManager.setLazyStates(true);
+        String lazyStatesKey = cache.getKey(markup);
+        assertNotEquals(key,
+                        lazyStatesKey);
+        workflowManager.setLazyExtensions(true);
+        String lazyExtensionsKey = cache.getKey(markup);
+        assertNotEquals(lazyStatesKey,
+                        lazyExtensionsKey);
+        workflowManager.setStringDeduplication(true);
+        assertNotEquals(lazyExtensionsKey,
+                        cache.getKey(markup));
+        workflowManager.setStringDeduplication(false);
+        assertEquals(lazyExtensionsKey,
+                     cache.getKey(markup));
+
+        if (workflowManager.getWorkflowPropertySource() != null) {
+            key = cache.getKey(markup);
+            Properties properties = new Properties();
+            properties.setProperty("test.property",
+                                   "test-value");
+            workflowManager.getWorkflowPropertySource().setPropertySource(properties);
+            assertNotEquals(key,
+                            cache.getKey(markup));
+        }
+    }
+
+    @Test
+    public void testLoadKeepsCurrentWorkflow() throws Exception {
+        WorkflowManagerImpl workflowManager = (WorkflowManagerImpl) getWorkflowManager();
+        workflowManager.setMarkup(getFileContents(getResourcePath("basic/singledelaystate.json")));
+        Workflow current = workflowManager.getWorkflow();
+
+        WorkflowDefinitionCache cache = new WorkflowDefinitionCache(cacheDir,
+                                                                    workflowManager);
+        CachedWorkflow loaded = cache.load(getFileContents(getResourcePath("basic/singleeventstate.json")));
+
+        assertSame(current,
+                   workflowManager.getWorkflow());
+        assertNotSame(current,
+                      loaded.getWorkflow());
+    }
+
+    @Test
+    public void testCorruptedEntryIsReplaced() throws Exception {
+        String markup = getFileContents(getResourcePath("basic/singledelaystate.json"));
+        WorkflowDefinitionCache cache = new WorkflowDefinitionCache(cacheDir,
+                                                                    (WorkflowManagerImpl) getWorkflowManager());
+        cache.load(markup);
+
+        Path entry = cacheDir.resolve(cache.getKey(markup) + ".wfc");
+        Files.write(entry,
+                    new byte[]{1, 2, 3});
+
+        assertFalse(cache.load(markup).isFromCache());
+        assertTrue(cache.load(markup).isFromCache());
+    }
+}
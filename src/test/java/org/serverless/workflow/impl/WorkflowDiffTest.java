@@ -0,0 +1,220 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package org.serverless.workflow.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.serverless.workflow.api.Workflow;
+import org.serverless.workflow.api.states.OperationState;
+import org.serverless.workflow.impl.diff.WorkflowChange;
+import org.serverless.workflow.impl.diff.WorkflowDiff;
+import org.serverless.workflow.impl.diff.WorkflowDiffer;
+import org.serverless.workflow.impl.manager.WorkflowManagerImpl;
+import org.serverless.workflow.impl.utils.Fingerprint;
+import org.serverless.workflow.impl.utils.WeakIdentityCache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WorkflowDiffTest extends BaseWorkflowTest {
+
+    @Test
+    public void testIdenticalWorkflows() {
+        WorkflowManagerImpl workflowManager = (WorkflowManagerImpl) getWorkflowManager();
+        Workflow running = workflowManager.toWorkflow(getMarkup(10_000));
+        Workflow candidate = workflowManager.toWorkflow(getMarkup(10_000));
+
+        assertTrue(workflowManager.diff(running,
+                                        candidate).isEmpty());
+        assertTrue(workflowManager.diff(running,
+                                        running).isEmpty());
+    }
+
+    @Test
+    public void testChangedStatesActionsAndFunctions() {
+        WorkflowManagerImpl workflowManager = (WorkflowManagerImpl) getWorkflowManager();
+        Workflow running = workflowManager.toWorkflow(getMarkup(1_000));
+        workflowManager.setWorkflow(workflowManager.toWorkflow(getMarkup(1_000)));
+        Workflow candidate = workflowManager.applyPatch("[" +
+                                                       "{\"op\": \"replace\", \"path\": \"/states/500/actions/0/function/name\", \"value\": \"renamed-fn\"}," +
+                                                       "{\"op\": \"remove\", \"path\": \"/states/10\"}," +
+                                                       "{\"op\": \"add\", \"path\": \"/states/-\", \"value\": {\"name\": \"added-state\", \"type\": \"DELAY\", \"time-delay\": \"PT1S\", \"next-state\": \"state-0\"}}," +
+                                                       "{\"op\": \"replace\", \"path\": \"/trigger-defs/0/type\", \"value\": \"other-type\"}," +
+                                                       "{\"op\": \"replace\", \"path\": \"/starts-at\", \"value\": \"state-1\"}" +
+                                                       "]");
+
+        WorkflowDiff diff = workflowManager.diff(running,
+                                                 candidate);
+        assertEquals(8,
+                     diff.getChanges().size(),
+                     diff.toString());
+
+        assertChange(diff,
+                     "starts-at",
+                     WorkflowChange.Kind.CHANGED,
+                     WorkflowChange.Element.WORKFLOW);
+        assertChange(diff,
+                     "trigger-defs/trigger",
+                     WorkflowChange.Kind.CHANGED,
+                     WorkflowChange.Element.TRIGGER);
+        assertChange(diff,
+                     "states/state-500",
+                     WorkflowChange.Kind.CHANGED,
+                     WorkflowChange.Element.STATE);
+        assertChange(diff,
+                     "states/state-500/actions/0",
+                     WorkflowChange.Kind.CHANGED,
+                     WorkflowChange.Element.ACTION);
+        assertChange(diff,
+                     "states/state-500/functions/fn-500",
+                     WorkflowChange.Kind.REMOVED,
+                     WorkflowChange.Element.FUNCTION);
+        assertChange(diff,
+                     "states/state-500/functions/renamed-fn",
+                     WorkflowChange.Kind.ADDED,
+                     WorkflowChange.Element.FUNCTION);
+        assertChange(diff,
+                     "states/state-10",
+                     WorkflowChange.Kind.REMOVED,
+                     WorkflowChange.Element.STATE);
+        assertChange(diff,
+                     "states/added-state",
+                     WorkflowChange.Kind.ADDED,
+                     WorkflowChange.Element.STATE);
+    }
+
+    @Test
+    public void testStatePatchedAfterDiffIsReported() {
+        WorkflowManagerImpl workflowManager = (WorkflowManagerImpl) getWorkflowManager();
+        Workflow running = workflowManager.toWorkflow(getMarkup(3));
+        Workflow candidate = workflowManager.toWorkflow(getMarkup(3));
+        assertTrue(workflowManager.diff(running,
+                                        candidate).getChanges().isEmpty());
+
+        workflowManager.setWorkflow(candidate);
+        assertSame(candidate,
+                   workflowManager.applyPatch("[{\"op\": \"replace\", \"path\": \"/states/1/next-state\", \"value\": \"state-0\"}]"));
+        WorkflowDiff diff = workflowManager.diff(running,
+                                                 candidate);
+        assertChange(diff,
+                     "states/state-1",
+                     WorkflowChange.Kind.CHANGED,
+                     WorkflowChange.Element.STATE);
+
+        ((OperationState) candidate.getStates().get(2)).setNextState("state-0");
+        workflowManager.getWorkflowDiffer().invalidate(candidate.getStates().get(2));
+        assertChange(workflowManager.diff(running,
+                                          candidate),
+                     "states/state-2",
+                     WorkflowChange.Kind.CHANGED,
+                     WorkflowChange.Element.STATE);
+    }
+
+    @Test
+    public void testSecondDiffDoesNotHashAgain() {
+        WorkflowManagerImpl workflowManager = (WorkflowManagerImpl) getWorkflowManager();
+        Workflow running = workflowManager.toWorkflow(getMarkup(100));
+        Workflow candidate = workflowManager.toWorkflow(getMarkup(100));
+        assertSame(workflowManager.getWorkflowDiffer(),
+                   workflowManager.getWorkflowDiffer());
+        workflowManager.diff(running,
+                             candidate);
+        Fingerprint fingerprint = workflowManager.getWorkflowDiffer().getFingerprint(candidate.getStates().get(50));
+        workflowManager.diff(running,
+                             candidate);
+        assertSame(fingerprint,
+                   workflowManager.getWorkflowDiffer().getFingerprint(candidate.getStates().get(50)));
+
+        AtomicInteger hashed = new AtomicInteger();
+        WorkflowDiffer workflowDiffer = new WorkflowDiffer(new ObjectMapper() {
+            @Override
+            public void writeValue(OutputStream out,
+                                   Object value) throws IOException {
+                hashed.incrementAndGet();
+                super.writeValue(out,
+                                 value);
+            }
+        });
+        assertTrue(workflowDiffer.diff(running,
+                                       candidate).isEmpty());
+        assertTrue(hashed.get() > 0);
+        hashed.set(0);
+        assertTrue(workflowDiffer.diff(running,
+                                       candidate).isEmpty());
+        assertEquals(0,
+                     hashed.get());
+    }
+
+    @Test
+    public void testFingerprintsAreCachedPerInstance() {
+        WorkflowManagerImpl workflowManager = (WorkflowManagerImpl) getWorkflowManager();
+        Workflow workflow = workflowManager.toWorkflow(getMarkup(10));
+        WorkflowDiffer workflowDiffer = new WorkflowDiffer(new ObjectMapper());
+        assertSame(workflowDiffer.getFingerprint(workflow.getStates().get(1)),
+                   workflowDiffer.getFingerprint(workflow.getStates().get(1)));
+        assertEquals(workflowDiffer.getFingerprint(workflow.getStates().get(1)),
+                     workflowDiffer.getFingerprint(workflowManager.toWorkflow(getMarkup(10)).getStates().get(1)));
+
+        WeakIdentityCache<Object, String> cache = new WeakIdentityCache<>();
+        String key = new String("key");
+        cache.put(key,
+                  "value");
+        assertEquals("value",
+                     cache.get(key));
+        assertNull(cache.get(new String("key")));
+        assertNotNull(cache.remove(key));
+        assertEquals(0,
+                     cache.size());
+    }
+
+    private static void assertChange(WorkflowDiff diff,
+                                     String path,
+                                     WorkflowChange.Kind kind,
+                                     WorkflowChange.Element element) {
+        WorkflowChange change = diff.getChange(path);
+        assertNotNull(change,
+                      path + " in " + diff);
+        assertEquals(kind,
+                     change.getKind());
+        assertEquals(element,
+                     change.getElement());
+    }
+
+    private static String getMarkup(int stateCount) {
+        StringBuilder markup = new StringBuilder("{\"name\": \"test-wf\", \"starts-at\": \"state-0\", " +
+                                                         "\"trigger-defs\": [{\"name\": \"trigger\", \"type\": \"type\", \"source\": \"source\"}], \"states\": [");
+        for (int i = 0; i < stateCount; i++) {
+            if (i > 0) {
+                markup.append(",");
+            }
+            markup.append("{\"name\": \"state-").append(i)
+                    .append("\", \"type\": \"OPERATION\", \"action-mode\": \"SEQUENTIAL\", \"next-state\": \"state-").append(i + 1)
+                    .append("\", \"actions\": [{\"function\": {\"name\": \"fn-").append(i)
+                    .append("\", \"type\": \"rest\"}, \"timeout\": \"PT5S\"}], \"end\": ").append(i == stateCount - 1).append("}");
+        }
+        return markup.append("]}").toString();
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package org.serverless.workflow.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.serverless.workflow.api.Workflow;
+import org.serverless.workflow.impl.loader.WorkflowDirectoryWatcher;
+import org.serverless.workflow.impl.manager.WorkflowManagerImpl;
+import org.serverless.workflow.impl.registry.WorkflowRegistry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WorkflowDirectoryWatcherTest extends BaseWorkflowTest {
+
+    @TempDir
+    Path workflowDir;
+
+    @Test
+    public void testHotReload() throws Exception {
+        writeDefinition("first.json",
+                        "first-wf",
+                        "first-state");
+        WorkflowRegistry workflowRegistry = new WorkflowRegistry((WorkflowManagerImpl) getWorkflowManager());
+        WorkflowDirectoryWatcher watcher = new WorkflowDirectoryWatcher(workflowDir,
+                                                                        workflowRegistry,
+                                                                        50);
+        watcher.start();
+        try {
+            Workflow first = workflowRegistry.get("first-wf",
+                                                  "1.0");
+            assertNotNull(first);
+            assertEquals("first-state",
+                         first.getStartsAt());
+
+            // changed file is swapped in, the previously looked up model is untouched
+            writeDefinition("first.json",
+                            "first-wf",
+                            "changed-state");
+            waitFor(() -> "changed-state".equals(workflowRegistry.get("first-wf",
+                                                                      "1.0").getStartsAt()));
+            assertEquals("first-state",
+                         first.getStartsAt());
+
+            writeDefinition("second.json",
+                            "second-wf",
+                            "second-state");
+            waitFor(() -> workflowRegistry.get("second-wf",
+                                               "1.0") != null);
+
+            Files.delete(workflowDir.resolve("second.json"));
+            waitFor(() -> workflowRegistry.get("second-wf",
+                                               "1.0") == null);
+            assertEquals(1,
+                         workflowRegistry.size());
+        } finally {
+            watcher.stop();
+        }
+    }
+
+    @Test
+    public void testInvalidChangeKeepsPreviousVersion() throws Exception {
+        writeDefinition("first.json",
+                        "first-wf",
+                        "first-state");
+        WorkflowRegistry workflowRegistry = new WorkflowRegistry((WorkflowManagerImpl) getWorkflowManager());
+        WorkflowDirectoryWatcher watcher = new WorkflowDirectoryWatcher(workflowDir,
+                                                                        workflowRegistry);
+        watcher.start();
+        try {
+            Files.write(workflowDir.resolve("first.json"),
+                        "{ not a workflow".getBytes(StandardCharsets.UTF_8));
+            waitFor(() -> !watcher.getErrors(Paths.get("first.json")).isEmpty());
+
+            assertEquals("first-state",
+                         workflowRegistry.get("first-wf",
+                                              "1.0").getStartsAt());
+            assertNotNull(watcher.getWorkflowKey(Paths.get("first.json")));
+        } finally {
+            watcher.stop();
+        }
+    }
+
+    @Test
+    public void testReloadKeepsManagerWorkflow() throws Exception {
+        WorkflowManagerImpl workflowManager = (WorkflowManagerImpl) getWorkflowManager();
+        Workflow current = new Workflow().withName("current-wf").withVersion("1.0");
+        workflowManager.setWorkflow(current);
+
+        writeDefinition("first.json",
+                        "first-wf",
+                        "first-state");
+        WorkflowRegistry workflowRegistry = new WorkflowRegistry(workflowManager);
+        WorkflowDirectoryWatcher watcher = new WorkflowDirectoryWatcher(workflowDir,
+                                                                        workflowRegistry);
+        assertTrue(watcher.reload(workflowDir.resolve("first.json")));
+
+        assertNotNull(workflowRegistry.get("first-wf",
+                                           "1.0"));
+        assertSame(current,
+                   workflowManager.getWorkflow());
+    }
+
+    @Test
+    public void testRenamedWorkflowReplacesPrevious() throws Exception {
+        writeDefinition("first.json",
+                        "first-wf",
+                        "first-state");
+        WorkflowRegistry workflowRegistry = new WorkflowRegistry((WorkflowManagerImpl) getWorkflowManager());
+        WorkflowDirectoryWatcher watcher = new WorkflowDirectoryWatcher(workflowDir,
+                                                                        workflowRegistry);
+        watcher.start();
+        watcher.stop();
+
+        writeDefinition("first.json",
+                        "renamed-wf",
+                        "first-state");
+        assertTrue(watcher.reload(workflowDir.resolve("first.json")));
+        assertNull(workflowRegistry.get("first-wf",
+                                        "1.0"));
+        assertNotNull(workflowRegistry.get("renamed-wf",
+                                           "1.0"));
+
+        Files.delete(workflowDir.resolve("first.json"));
+        assertTrue(watcher.reload(workflowDir.resolve("first.json")));
+        assertFalse(watcher.reload(workflowDir.resolve("first.json")));
+        assertEquals(0,
+                     workflowRegistry.size());
+    }
+
+    @Test
+    public void testDeletedDuplicateKeepsWorkflow() throws Exception {
+        writeDefinition("first.json",
+                        "first-wf",
+                        "first-state");
+        writeDefinition("copy.json",
+                        "first-wf",
+                        "first-state");
+        WorkflowRegistry workflowRegistry = new WorkflowRegistry((WorkflowManagerImpl) getWorkflowManager());
+        WorkflowDirectoryWatcher watcher = new WorkflowDirectoryWatcher(workflowDir,
+                                                                        workflowRegistry);
+        assertTrue(watcher.reload(workflowDir.resolve("first.json")));
+        assertTrue(watcher.reload(workflowDir.resolve("copy.json")));
+
+        Files.delete(workflowDir.resolve("copy.json"));
+        assertTrue(watcher.reload(workflowDir.resolve("copy.json")));
+        assertNotNull(workflowRegistry.get("first-wf",
+                                           "1.0"));
+
+        Files.delete(workflowDir.resolve("first.json"));
+        assertTrue(watcher.reload(workflowDir.resolve("first.json")));
+        assertNull(workflowRegistry.get("first-wf",
+                                        "1.0"));
+    }
+
+    private void writeDefinition(String file,
+                                 String name,
+                                 String startsAt) throws Exception {
+        String markup = "{\n" +
+                "  \"name\": \"" + name + "\",\n" +
+                "  \"version\": \"1.0\",\n" +
+                "  \"starts-at\": \"" + startsAt + "\",\n" +
+                "  \"states\": [\n" +
+                "    {\n" +
+                "      \"name\": \"" + startsAt + "\",\n" +
+                "      \"type\": \"DELAY\",\n" +
+                "      \"time-delay\": \"PT5S\",\n" +
+                "      \"next-state\": \"testNextState\",\n" +
+                "      \"end\": true\n" +
+                "    }\n" +
+                "  ]\n" +
+                "}";
+        Files.write(workflowDir.resolve(file),
+                    markup.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Condition not met in time");
+            }
+            Thread.sleep(20);
+        }
+    }
+}
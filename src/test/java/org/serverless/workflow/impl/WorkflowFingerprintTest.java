@@ -0,0 +1,88 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package org.serverless.workflow.impl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.serverless.workflow.api.Workflow;
+import org.serverless.workflow.impl.manager.WorkflowManagerImpl;
+import org.serverless.workflow.impl.utils.Fingerprint;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class WorkflowFingerprintTest extends BaseWorkflowTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {"basic/singleeventstate", "basic/singleoperationstate", "basic/singleparallelstate",
+            "basic/singleswitchstateandchoice", "basic/workflowwithmetadata"})
+    public void testSameFingerprintForJsonAndYaml(String model) {
+        WorkflowManagerImpl workflowManager = (WorkflowManagerImpl) getWorkflowManager();
+        Workflow fromJson = workflowManager.toWorkflow(getFileContents(getResourcePath(model + ".json")));
+        Workflow fromYaml = workflowManager.toWorkflow(getFileContents(getResourcePath(model + ".yml")));
+
+        assertEquals(workflowManager.getFingerprint(fromJson),
+                     workflowManager.getFingerprint(fromYaml));
+    }
+
+    @Test
+    public void testFingerprintIgnoresMapOrder() {
+        Map<String, String> metadata = new LinkedHashMap<>();
+        metadata.put("key1",
+                     "value1");
+        metadata.put("key2",
+                     "value2");
+        Map<String, String> reversedMetadata = new LinkedHashMap<>();
+        reversedMetadata.put("key2",
+                             "value2");
+        reversedMetadata.put("key1",
+                             "value1");
+
+        WorkflowManagerImpl workflowManager = (WorkflowManagerImpl) getWorkflowManager();
+        Fingerprint fingerprint = workflowManager.getFingerprint(new Workflow().withName("test-wf").withMetadata(metadata));
+        assertEquals(fingerprint,
+                     workflowManager.getFingerprint(new Workflow().withName("test-wf").withMetadata(reversedMetadata)));
+
+        reversedMetadata.put("key1",
+                             "changed");
+        assertNotEquals(fingerprint,
+                        workflowManager.getFingerprint(new Workflow().withName("test-wf").withMetadata(reversedMetadata)));
+    }
+
+    @Test
+    public void testFingerprintIsMemoizedUntilPatched() {
+        WorkflowManagerImpl workflowManager = (WorkflowManagerImpl) getWorkflowManager();
+        workflowManager.setMarkup(getFileContents(getResourcePath("basic/singledelaystate.json")));
+        Fingerprint fingerprint = workflowManager.getFingerprint();
+        assertSame(fingerprint,
+                   workflowManager.getFingerprint());
+
+        Workflow workflow = workflowManager.getWorkflow();
+        workflowManager.applyPatch("[{\"op\": \"replace\", \"path\": \"/states/0/time-delay\", \"value\": \"PT10S\"}]");
+        assertSame(workflow,
+                   workflowManager.getWorkflow());
+        assertNotEquals(fingerprint,
+                        workflowManager.getFingerprint());
+    }
+}
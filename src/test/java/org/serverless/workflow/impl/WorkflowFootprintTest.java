@@ -0,0 +1,144 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package org.serverless.workflow.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.openjdk.jol.info.GraphLayout;
+import org.serverless.workflow.api.Workflow;
+import org.serverless.workflow.impl.manager.WorkflowManagerImpl;
+import org.serverless.workflow.impl.validator.WorkflowValidatorImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Retained size of parsed workflows per state type, and of managers and validators.
+ * Fails when the cost of a state, of a workflow or of a manager or validator grows beyond its budget.
+ * Workflows are measured with string deduplication off, so every string is counted in full.
+ */
+public class WorkflowFootprintTest extends BaseWorkflowTest {
+
+    private static final int[] STATE_COUNTS = {10, 100, 1_000};
+
+    // bytes per state, including its events, actions and choices
+    private static final Map<String, Long> STATE_BUDGETS = new HashMap<String, Long>() {{
+        put("DELAY",
+            512L);
+        put("EVENT",
+            2_048L);
+        put("OPERATION",
+            2_048L);
+        put("SWITCH",
+            1_024L);
+        put("PARALLEL",
+            4_096L);
+    }};
+
+    // bytes per workflow besides its states (the workflow, its lists, triggers and metadata)
+    private static final long WORKFLOW_BUDGET = 2_048L;
+
+    // mappers, schema and expression evaluators
+    private static final long MANAGER_BUDGET = 4L * 1024 * 1024;
+
+    // settings and errors only, the schema is shared
+    private static final long VALIDATOR_BUDGET = 4_096L;
+
+    private static Logger logger = LoggerFactory.getLogger(WorkflowFootprintTest.class);
+
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @ParameterizedTest
+    @ValueSource(strings = {"basic/singledelaystate.json", "basic/singleeventstate.json", "basic/singleoperationstate.json",
+            "basic/singleswitchstateandchoice.json", "basic/singleparallelstate.json"})
+    public void testStateFootprint(String model) throws Exception {
+        WorkflowManagerImpl workflowManager = (WorkflowManagerImpl) getWorkflowManager();
+        workflowManager.setStringDeduplication(false);
+        ObjectNode template = (ObjectNode) objectMapper.readTree(getFileContents(getResourcePath(model)));
+        String type = template.get("states").get(0).get("type").asText();
+
+        long[] sizes = new long[STATE_COUNTS.length];
+        for (int i = 0; i < STATE_COUNTS.length; i++) {
+            Workflow workflow = workflowManager.toWorkflow(getMarkup(template,
+                                                                     STATE_COUNTS[i]));
+            assertEquals(STATE_COUNTS[i],
+                         workflow.getStates().size());
+            sizes[i] = GraphLayout.parseInstance(workflow).totalSize();
+            logger.info("{} workflow with {} states: {} bytes",
+                        type,
+                        STATE_COUNTS[i],
+                        sizes[i]);
+        }
+
+        long perState = (sizes[sizes.length - 1] - sizes[0]) / (STATE_COUNTS[STATE_COUNTS.length - 1] - STATE_COUNTS[0]);
+        logger.info("{} state: {} bytes",
+                    type,
+                    perState);
+        assertTrue(perState <= STATE_BUDGETS.get(type),
+                   type + " state costs " + perState + " bytes, budget is " + STATE_BUDGETS.get(type));
+
+        long perWorkflow = sizes[0] - perState * STATE_COUNTS[0];
+        logger.info("{} workflow without states: {} bytes",
+                    type,
+                    perWorkflow);
+        assertTrue(perWorkflow <= WORKFLOW_BUDGET,
+                   type + " workflow costs " + perWorkflow + " bytes besides its states, budget is " + WORKFLOW_BUDGET);
+    }
+
+    @Test
+    public void testManagerAndValidatorFootprint() {
+        long managerSize = GraphLayout.parseInstance(getWorkflowManager()).totalSize();
+        long validatorSize = GraphLayout.parseInstance(new WorkflowValidatorImpl()).totalSize();
+        logger.info("WorkflowManagerImpl: {} bytes, WorkflowValidatorImpl: {} bytes",
+                    managerSize,
+                    validatorSize);
+
+        assertTrue(managerSize <= MANAGER_BUDGET,
+                   "WorkflowManagerImpl costs " + managerSize + " bytes, budget is " + MANAGER_BUDGET);
+        assertTrue(validatorSize <= VALIDATOR_BUDGET,
+                   "WorkflowValidatorImpl costs " + validatorSize + " bytes, budget is " + VALIDATOR_BUDGET);
+    }
+
+    // the single state of the template repeated with unique names
+    private String getMarkup(ObjectNode template,
+                             int stateCount) throws Exception {
+        ObjectNode workflowNode = template.deepCopy();
+        ObjectNode state = (ObjectNode) workflowNode.get("states").get(0);
+        ArrayNode states = workflowNode.putArray("states");
+        for (int i = 0; i < stateCount; i++) {
+            ObjectNode copy = state.deepCopy();
+            copy.put("name",
+                     "test-state-" + i);
+            states.add(copy);
+        }
+        workflowNode.put("starts-at",
+                         "test-state-0");
+        return objectMapper.writeValueAsString(workflowNode);
+    }
+}
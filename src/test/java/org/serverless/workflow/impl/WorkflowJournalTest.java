@@ -0,0 +1,249 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package org.serverless.workflow.impl;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.serverless.workflow.impl.persistence.JournalPosition;
+import org.serverless.workflow.impl.persistence.StateTransition;
+import org.serverless.workflow.impl.persistence.WorkflowJournal;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WorkflowJournalTest extends BaseWorkflowTest {
+
+    @TempDir
+    Path journalDir;
+
+    @Test
+    public void testAppendAndReplayAfterRestart() throws Exception {
+        int transitions = 10_000;
+        try (WorkflowJournal journal = new WorkflowJournal(journalDir,
+                                                           64 * 1024)) {
+            JournalPosition position = null;
+            for (int i = 0; i < transitions; i++) {
+                position = journal.append(new StateTransition("instance-" + (i % 100),
+                                                              "state-" + i,
+                                                              i,
+                                                              ("data-" + i).getBytes(StandardCharsets.UTF_8)));
+            }
+            journal.commit(position);
+            assertEquals(position,
+                         journal.getCommittedPosition());
+            assertTrue(position.getSegment() > 0);
+        }
+
+        List<StateTransition> replayed = new ArrayList<>();
+        try (WorkflowJournal journal = new WorkflowJournal(journalDir,
+                                                           64 * 1024)) {
+            journal.replay(replayed::add);
+
+            // appends continue after the recovered position
+            JournalPosition before = journal.getPosition();
+            JournalPosition after = journal.append(new StateTransition("instance-0",
+                                                                       "final",
+                                                                       transitions,
+                                                                       null));
+            assertTrue(after.compareTo(before) > 0);
+        }
+
+        assertEquals(transitions,
+                     replayed.size());
+        for (int i = 0; i < transitions; i++) {
+            StateTransition transition = replayed.get(i);
+            assertEquals("instance-" + (i % 100),
+                         transition.getInstanceId());
+            assertEquals("state-" + i,
+                         transition.getStateId());
+            assertEquals(i,
+                         transition.getTimestamp());
+            assertArrayEquals(("data-" + i).getBytes(StandardCharsets.UTF_8),
+                              transition.getData());
+        }
+    }
+
+    @Test
+    public void testReplayFromPosition() throws Exception {
+        try (WorkflowJournal journal = new WorkflowJournal(journalDir,
+                                                           4096)) {
+            JournalPosition checkpoint = null;
+            for (int i = 0; i < 500; i++) {
+                JournalPosition position = journal.append(new StateTransition("instance",
+                                                                              "state-" + i,
+                                                                              i,
+                                                                              null));
+                if (i == 249) {
+                    checkpoint = position;
+                }
+            }
+
+            List<StateTransition> tail = new ArrayList<>();
+            JournalPosition end = journal.replay(checkpoint,
+                                                 tail::add);
+            assertEquals(250,
+                         tail.size());
+            assertEquals("state-250",
+                         tail.get(0).getStateId());
+            assertEquals(journal.getPosition(),
+                         end);
+        }
+    }
+
+    @Test
+    public void testTornRecordIsIgnored() throws Exception {
+        JournalPosition position;
+        try (WorkflowJournal journal = new WorkflowJournal(journalDir)) {
+            journal.append(new StateTransition("instance",
+                                               "first",
+                                               1,
+                                               null));
+            position = journal.appendAndCommit(new StateTransition("instance",
+                                                                   "second",
+                                                                   2,
+                                                                   null));
+        }
+
+        // corrupt the payload of the second record
+        File segment = journalDir.toFile().listFiles()[0];
+        try (FileChannel channel = FileChannel.open(segment.toPath(),
+                                                    StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{42}),
+                          position.getOffset() - 1);
+        }
+
+        List<StateTransition> replayed = new ArrayList<>();
+        try (WorkflowJournal journal = new WorkflowJournal(journalDir)) {
+            journal.replay(replayed::add);
+            assertEquals(1,
+                         replayed.size());
+            assertEquals("first",
+                         replayed.get(0).getStateId());
+
+            // the corrupted record is overwritten by the next append
+            journal.append(new StateTransition("instance",
+                                               "third",
+                                               3,
+                                               null));
+            replayed.clear();
+            journal.replay(replayed::add);
+            assertEquals(2,
+                         replayed.size());
+            assertEquals("third",
+                         replayed.get(1).getStateId());
+        }
+    }
+
+    @Test
+    public void testConcurrentGroupCommit() throws Exception {
+        int threads = 8;
+        int perThread = 2_000;
+        try (WorkflowJournal journal = new WorkflowJournal(journalDir,
+                                                           1024 * 1024)) {
+            ExecutorService executorService = Executors.newFixedThreadPool(threads);
+            for (int t = 0; t < threads; t++) {
+                String instanceId = "instance-" + t;
+                executorService.submit(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        journal.appendAndCommit(new StateTransition(instanceId,
+                                                                    "state-" + i,
+                                                                    i,
+                                                                    null));
+                    }
+                });
+            }
+            executorService.shutdown();
+            assertTrue(executorService.awaitTermination(1,
+                                                        TimeUnit.MINUTES));
+
+            Map<String, Integer> lastState = new HashMap<>();
+            int[] count = new int[1];
+            journal.replay(transition -> {
+                count[0]++;
+                Integer previous = lastState.put(transition.getInstanceId(),
+                                                 (int) transition.getTimestamp());
+                // transitions of a single instance keep their order
+                assertEquals(previous == null ? 0 : previous + 1,
+                             transition.getTimestamp());
+            });
+            assertEquals(threads * perThread,
+                         count[0]);
+            assertEquals(journal.getPosition(),
+                         journal.getCommittedPosition());
+        }
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        try (WorkflowJournal journal = new WorkflowJournal(journalDir,
+                                                           4096)) {
+            for (int i = 0; i < 2_000; i++) {
+                journal.append(new StateTransition("instance-" + (i % 10),
+                                                   i % 10 == 9 ? "end" : "state-" + i,
+                                                   i,
+                                                   null));
+            }
+            long segmentsBefore = Files.list(journalDir).count();
+
+            // drop the instances that reached their end state
+            journal.compact(transition -> !"end".equals(transition.getStateId()));
+            assertTrue(Files.list(journalDir).count() < segmentsBefore);
+
+            List<StateTransition> replayed = new ArrayList<>();
+            journal.replay(replayed::add);
+            List<StateTransition> active = new ArrayList<>();
+            journal.replay(new JournalPosition(journal.getPosition().getSegment(),
+                                               0),
+                           active::add);
+
+            // the compacted segment holds one transition per instance that has not ended
+            List<StateTransition> compacted = replayed.subList(0,
+                                                               replayed.size() - active.size());
+            assertEquals(9,
+                         compacted.size());
+            for (StateTransition transition : compacted) {
+                assertFalse("end".equals(transition.getStateId()));
+            }
+
+            Map<String, StateTransition> latest = new HashMap<>();
+            replayed.forEach(transition -> latest.put(transition.getInstanceId(),
+                                                      transition));
+            assertEquals("state-1998",
+                         latest.get("instance-8").getStateId());
+        }
+    }
+}
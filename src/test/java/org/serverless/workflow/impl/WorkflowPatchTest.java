@@ -0,0 +1,163 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package org.serverless.workflow.impl;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.serverless.workflow.api.Workflow;
+import org.serverless.workflow.api.interfaces.State;
+import org.serverless.workflow.api.states.DelayState;
+import org.serverless.workflow.impl.manager.WorkflowManagerImpl;
+import org.serverless.workflow.impl.states.LazyStateList;
+import org.serverless.workflow.impl.utils.WorkflowUtils;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.serverless.workflow.impl.util.IsEqualJSON.equalToJSON;
+
+public class WorkflowPatchTest extends BaseWorkflowTest {
+
+    @Test
+    public void testReplaceStateField() {
+        WorkflowManagerImpl workflowManager = (WorkflowManagerImpl) getWorkflowManager();
+        workflowManager.setMarkup(getDelayStatesMarkup(100));
+        Workflow workflow = workflowManager.getWorkflow();
+        List<State> states = workflow.getStates();
+        State untouched = states.get(41);
+
+        Workflow patched = workflowManager.applyPatch("[{\"op\": \"replace\", \"path\": \"/states/42/next-state\", \"value\": \"state-99\"}]");
+        assertSame(workflow,
+                   patched);
+        assertSame(states,
+                   patched.getStates());
+        assertSame(untouched,
+                   patched.getStates().get(41));
+        assertEquals("state-99",
+                     ((DelayState) patched.getStates().get(42)).getNextState());
+    }
+
+    @Test
+    public void testStructuralChangesKeepInstances() {
+        WorkflowManagerImpl workflowManager = (WorkflowManagerImpl) getWorkflowManager();
+        workflowManager.setMarkup(getDelayStatesMarkup(5));
+        List<State> states = workflowManager.getWorkflow().getStates();
+        State first = states.get(0);
+        State third = states.get(2);
+        State fourth = states.get(3);
+
+        Workflow patched = workflowManager.applyPatch("[" +
+                                                              "{\"op\": \"remove\", \"path\": \"/states/1\"}," +
+                                                              "{\"op\": \"move\", \"from\": \"/states/0\", \"path\": \"/states/-\"}," +
+                                                              "{\"op\": \"add\", \"path\": \"/states/0\", \"value\": {\"name\": \"new-state\", \"type\": \"DELAY\", \"time-delay\": \"PT1S\", \"next-state\": \"state-2\"}}" +
+                                                              "]");
+        List<State> patchedStates = patched.getStates();
+        assertEquals(5,
+                     patchedStates.size());
+        assertEquals("new-state",
+                     patchedStates.get(0).getName());
+        assertSame(third,
+                   patchedStates.get(1));
+        assertSame(fourth,
+                   patchedStates.get(2));
+        assertSame(first,
+                   patchedStates.get(4));
+
+        WorkflowManagerImpl expectedWorkflowManager = (WorkflowManagerImpl) getWorkflowManager();
+        expectedWorkflowManager.setWorkflow(patched);
+        assertThat(workflowManager.toJson(),
+                   equalToJSON(expectedWorkflowManager.toJson()));
+    }
+
+    @Test
+    public void testTopLevelChangeSharesStates() {
+        WorkflowManagerImpl workflowManager = (WorkflowManagerImpl) getWorkflowManager();
+        workflowManager.setMarkup(getDelayStatesMarkup(10));
+        Workflow workflow = workflowManager.getWorkflow();
+
+        Workflow patched = workflowManager.applyPatch("[{\"op\": \"replace\", \"path\": \"/name\", \"value\": \"patched-wf\"}]");
+        assertNotSame(workflow,
+                      patched);
+        assertSame(patched,
+                   workflowManager.getWorkflow());
+        assertEquals("patched-wf",
+                     patched.getName());
+        assertEquals("state-0",
+                     patched.getStartsAt());
+        assertSame(workflow.getStates(),
+                   patched.getStates());
+    }
+
+    @Test
+    public void testFailedPatchChangesNothing() {
+        WorkflowManagerImpl workflowManager = (WorkflowManagerImpl) getWorkflowManager();
+        workflowManager.setMarkup(getDelayStatesMarkup(3));
+        Workflow workflow = workflowManager.getWorkflow();
+        String json = workflowManager.toJson();
+
+        assertThrows(IllegalArgumentException.class,
+                     () -> workflowManager.applyPatch("[" +
+                                                              "{\"op\": \"replace\", \"path\": \"/states/0/next-state\", \"value\": \"state-2\"}," +
+                                                              "{\"op\": \"remove\", \"path\": \"/states/1\"}," +
+                                                              "{\"op\": \"test\", \"path\": \"/name\", \"value\": \"other-wf\"}" +
+                                                              "]"));
+        assertThrows(IllegalArgumentException.class,
+                     () -> workflowManager.applyPatch("[{\"op\": \"remove\", \"path\": \"/states/7\"}]"));
+        assertSame(workflow,
+                   workflowManager.getWorkflow());
+        assertThat(workflowManager.toJson(),
+                   equalToJSON(json));
+
+        // the cached tree was restored as well
+        workflowManager.applyPatch("[{\"op\": \"test\", \"path\": \"/states/1/name\", \"value\": \"state-1\"}]");
+    }
+
+    @Test
+    public void testLazyStateIndexIsUpdated() {
+        WorkflowManagerImpl workflowManager = (WorkflowManagerImpl) getWorkflowManager();
+        workflowManager.setLazyStates(true);
+        workflowManager.setMarkup(getDelayStatesMarkup(10));
+
+        Workflow patched = workflowManager.applyPatch("[{\"op\": \"replace\", \"path\": \"/states/4/name\", \"value\": \"renamed\"}]");
+        assertTrue(patched.getStates() instanceof LazyStateList);
+        assertEquals("renamed",
+                     WorkflowUtils.getStateByNAme("renamed",
+                                                  workflowManager).getName());
+        assertNull(WorkflowUtils.getStateByNAme("state-4",
+                                                workflowManager));
+    }
+
+    private static String getDelayStatesMarkup(int stateCount) {
+        StringBuilder markup = new StringBuilder("{\"name\": \"test-wf\", \"starts-at\": \"state-0\", \"states\": [");
+        for (int i = 0; i < stateCount; i++) {
+            if (i > 0) {
+                markup.append(",");
+            }
+            markup.append("{\"name\": \"state-").append(i)
+                    .append("\", \"type\": \"DELAY\", \"time-delay\": \"PT1S\", \"next-state\": \"state-").append(i + 1)
+                    .append("\", \"end\": ").append(i == stateCount - 1).append("}");
+        }
+        return markup.append("]}").toString();
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package org.serverless.workflow.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.serverless.workflow.api.Workflow;
+import org.serverless.workflow.impl.manager.WorkflowManagerImpl;
+import org.serverless.workflow.impl.registry.WorkflowKey;
+import org.serverless.workflow.impl.registry.WorkflowRegistry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WorkflowRegistryTest extends BaseWorkflowTest {
+
+    @Test
+    public void testRegisterVersions() {
+        WorkflowRegistry workflowRegistry = new WorkflowRegistry((WorkflowManagerImpl) getWorkflowManager());
+        String markup = getFileContents(getResourcePath("basic/singledelaystate.json"));
+
+        WorkflowKey key = workflowRegistry.register(markup);
+        assertEquals("test-wf",
+                     key.getName());
+
+        for (String version : new String[]{"1.2", "1.10", "1.9"}) {
+            workflowRegistry.register(new Workflow().withName("test-wf").withVersion(version).withStartsAt("test-state"));
+        }
+        assertEquals(4,
+                     workflowRegistry.size());
+        assertEquals("1.10",
+                     workflowRegistry.getLatest("test-wf").getVersion());
+        assertEquals("1.9",
+                     workflowRegistry.get("test-wf",
+                                          "1.9").getVersion());
+        assertNull(workflowRegistry.get("test-wf",
+                                        "2.0"));
+        assertNull(workflowRegistry.getLatest("unknown"));
+
+        // publishing a version again replaces it
+        Workflow replacement = new Workflow().withName("test-wf").withVersion("1.9").withStartsAt("other-state");
+        workflowRegistry.register(replacement);
+        assertSame(replacement,
+                   workflowRegistry.get("test-wf",
+                                        "1.9"));
+        assertEquals(4,
+                     workflowRegistry.size());
+
+        assertTrue(workflowRegistry.unregister("test-wf",
+                                               "1.10"));
+        assertFalse(workflowRegistry.unregister("test-wf",
+                                                "1.10"));
+        assertEquals("1.9",
+                     workflowRegistry.getLatest("test-wf").getVersion());
+    }
+
+    @Test
+    public void testEvictionAndReload() {
+        int definitions = 100;
+        int maxLoaded = 10;
+        Map<WorkflowKey, String> markups = new HashMap<>();
+        AtomicInteger reloads = new AtomicInteger();
+
+        WorkflowRegistry workflowRegistry = new WorkflowRegistry((WorkflowManagerImpl) getWorkflowManager(),
+                                                                 maxLoaded,
+                                                                 key -> {
+                                                                     reloads.incrementAndGet();
+                                                                     return markups.get(key);
+                                                                 });
+        for (int i = 0; i < definitions; i++) {
+            String markup = "{\"name\": \"wf-" + i + "\", \"version\": \"1.0\", \"starts-at\": \"test-state\"}";
+            markups.put(workflowRegistry.register(markup),
+                        markup);
+        }
+        assertEquals(definitions,
+                     workflowRegistry.size());
+        assertEquals(maxLoaded,
+                     workflowRegistry.getLoadedCount());
+
+        // recently registered definitions are still loaded
+        assertNotNull(workflowRegistry.get("wf-99",
+                                           "1.0"));
+        assertEquals(0,
+                     reloads.get());
+
+        // cold definitions are parsed again from the source
+        Workflow workflow = workflowRegistry.get("wf-0",
+                                                 "1.0");
+        assertEquals("wf-0",
+                     workflow.getName());
+        assertEquals(1,
+                     reloads.get());
+        assertEquals(maxLoaded,
+                     workflowRegistry.getLoadedCount());
+        assertSame(workflow,
+                   workflowRegistry.get("wf-0",
+                                        "1.0"));
+    }
+
+    @Test
+    public void testBoundedRegistryNeedsSource() {
+        assertThrows(IllegalArgumentException.class,
+                     () -> new WorkflowRegistry((WorkflowManagerImpl) getWorkflowManager(),
+                                                10,
+                                                null));
+    }
+
+    @Test
+    public void testConcurrentPublishAndLookup() throws Exception {
+        WorkflowRegistry workflowRegistry = new WorkflowRegistry((WorkflowManagerImpl) getWorkflowManager());
+        workflowRegistry.register(new Workflow().withName("test-wf").withVersion("0"));
+
+        int versions = 1_000;
+        AtomicInteger missing = new AtomicInteger();
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        executorService.submit(() -> {
+            for (int i = 1; i <= versions; i++) {
+                workflowRegistry.register(new Workflow().withName("test-wf").withVersion(String.valueOf(i)));
+            }
+        });
+        for (int t = 0; t < 3; t++) {
+            executorService.submit(() -> {
+                for (int i = 0; i < 100_000; i++) {
+                    if (workflowRegistry.getLatest("test-wf") == null) {
+                        missing.incrementAndGet();
+                    }
+                }
+            });
+        }
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(1,
+                                                    TimeUnit.MINUTES));
+
+        assertEquals(0,
+                     missing.get());
+        assertEquals(String.valueOf(versions),
+                     workflowRegistry.getLatest("test-wf").getVersion());
+    }
+
+    @Test
+    public void testLoadedCountUnderChurn() throws Exception {
+        int maxLoaded = 5;
+        WorkflowRegistry workflowRegistry = new WorkflowRegistry((WorkflowManagerImpl) getWorkflowManager(),
+                                                                 maxLoaded,
+                                                                 key -> "{\"name\": \"" + key.getName() + "\", \"version\": \""
+                                                                         + key.getVersion() + "\", \"starts-at\": \"test-state\"}");
+
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        for (int t = 0; t < 4; t++) {
+            executorService.submit(() -> {
+                for (int i = 0; i < 2_000; i++) {
+                    String version = String.valueOf(i % 20);
+                    switch (i % 3) {
+                        case 0:
+                            workflowRegistry.register(new Workflow().withName("test-wf").withVersion(version));
+                            break;
+                        case 1:
+                            workflowRegistry.get("test-wf",
+                                                 version);
+                            break;
+                        default:
+                            workflowRegistry.unregister("test-wf",
+                                                        version);
+                    }
+                }
+            });
+        }
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(1,
+                                                    TimeUnit.MINUTES));
+
+        assertTrue(workflowRegistry.getLoadedCount() <= workflowRegistry.size());
+        for (WorkflowKey key : workflowRegistry.getKeys()) {
+            workflowRegistry.unregister(key.getName(),
+                                        key.getVersion());
+        }
+        assertEquals(0,
+                     workflowRegistry.size());
+        assertEquals(0,
+                     workflowRegistry.getLoadedCount());
+        assertNull(workflowRegistry.getLatest("test-wf"));
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package org.serverless.workflow.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.serverless.workflow.api.Workflow;
+import org.serverless.workflow.api.states.EventState;
+import org.serverless.workflow.impl.manager.WorkflowManagerImpl;
+import org.serverless.workflow.impl.propertysource.ResolvedWorkflowCache;
+import org.serverless.workflow.impl.propertysource.WorkflowTemplate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WorkflowTemplateTest extends BaseWorkflowTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {"propertysource/propertysourceeventstatewithtrigger.json", "propertysource/propertysourceeventstatewithtrigger.yml"})
+    public void testResolveTemplate(String model) {
+        WorkflowManagerImpl workflowManager = (WorkflowManagerImpl) getWorkflowManager();
+        WorkflowTemplate template = WorkflowTemplate.compile(getFileContents(getResourcePath(model)),
+                                                             workflowManager);
+        assertTrue(template.getPropertyKeys().contains("workflow.trigger.name"));
+
+        Properties properties = getTenantProperties("tenant-a");
+        Workflow workflow = template.toWorkflow(properties,
+                                                workflowManager);
+
+        assertEquals("tenant-a-wf",
+                     workflow.getName());
+        assertEquals("test-state",
+                     workflow.getStartsAt());
+        assertEquals("tenant-a-trigger",
+                     workflow.getTriggerDefs().get(0).getName());
+        EventState eventState = (EventState) workflow.getStates().get(0);
+        assertEquals("test-state",
+                     eventState.getName());
+        assertEquals("name eq 'tenant-a-trigger'",
+                     eventState.getEvents().get(0).getEventExpression());
+        // values that are not property keys are kept
+        assertEquals("PT5S",
+                     eventState.getEvents().get(0).getActions().get(0).getTimeout());
+    }
+
+    @Test
+    public void testResolvedWorkflowCache() {
+        String markup = getFileContents(getResourcePath("propertysource/propertysourceeventstatewithtrigger.json"));
+        ResolvedWorkflowCache cache = new ResolvedWorkflowCache((WorkflowManagerImpl) getWorkflowManager());
+
+        Workflow tenantA = cache.get(markup,
+                                     getTenantProperties("tenant-a"));
+        Workflow tenantB = cache.get(markup,
+                                     getTenantProperties("tenant-b"));
+        assertNotSame(tenantA,
+                      tenantB);
+        assertEquals("tenant-b-wf",
+                     tenantB.getName());
+
+        // properties the markup does not refer to do not affect the cache key
+        Properties unrelated = getTenantProperties("tenant-a");
+        unrelated.setProperty("unrelated.key",
+                              "value");
+        assertSame(tenantA,
+                   cache.get(markup,
+                             unrelated));
+
+        Map<String, String> map = new HashMap<>();
+        getTenantProperties("tenant-b").forEach((key, value) -> map.put((String) key,
+                                                                        (String) value));
+        assertSame(tenantB,
+                   cache.get(markup,
+                             map));
+
+        assertEquals(2,
+                     cache.getHits());
+        assertEquals(2,
+                     cache.getMisses());
+    }
+
+    @Test
+    public void testResolvedWorkflowCacheTracksManagerProperties() {
+        WorkflowManagerImpl workflowManager = (WorkflowManagerImpl) getWorkflowManager();
+        if (workflowManager.getWorkflowPropertySource() == null) {
+            return;
+        }
+        String markup = getFileContents(getResourcePath("propertysource/propertysourceeventstatewithtrigger.json"));
+        ResolvedWorkflowCache cache = new ResolvedWorkflowCache(workflowManager);
+
+        // the tenant does not define the workflow name, so the manager property source provides it
+        Properties tenantProperties = getTenantProperties("tenant-a");
+        tenantProperties.remove("workflow.name");
+        Properties globalProperties = new Properties();
+        globalProperties.setProperty("workflow.name",
+                                     "global-wf");
+        workflowManager.getWorkflowPropertySource().setPropertySource(globalProperties);
+        Workflow first = cache.get(markup,
+                                   tenantProperties);
+        assertSame(first,
+                   cache.get(markup,
+                             tenantProperties));
+
+        globalProperties.setProperty("workflow.name",
+                                     "changed-wf");
+        workflowManager.getWorkflowPropertySource().setPropertySource(globalProperties);
+        assertNotSame(first,
+                      cache.get(markup,
+                                tenantProperties));
+        assertEquals(2,
+                     cache.getMisses());
+    }
+
+    @Test
+    public void testResolvedWorkflowCacheBoundsTemplates() {
+        ResolvedWorkflowCache cache = new ResolvedWorkflowCache((WorkflowManagerImpl) getWorkflowManager(),
+                                                                2);
+        String markup = getFileContents(getResourcePath("propertysource/propertysourceeventstatewithtrigger.json"));
+        Properties properties = getTenantProperties("tenant-a");
+        for (String suffix : new String[]{"", " ", "  "}) {
+            cache.get(markup + suffix,
+                      properties);
+        }
+        assertEquals(2,
+                     cache.getTemplateCount());
+    }
+
+    private Properties getTenantProperties(String tenant) {
+        Properties properties = new Properties();
+        properties.setProperty("workflow.name",
+                               tenant + "-wf");
+        properties.setProperty("workflow.trigger.name",
+                               tenant + "-trigger");
+        properties.setProperty("workflow.trigger.source",
+                               "testsource");
+        properties.setProperty("workflow.trigger.eventtype",
+                               "testeventtype");
+        properties.setProperty("workflow.trigger.correlationtoken",
+                               "testcorrelationtoken");
+        properties.setProperty("workflow.state.type",
+                               "EVENT");
+        properties.setProperty("workflow.state.name",
+                               "test-state");
+        properties.setProperty("workflow.state.event.nextstate",
+                               "testNextState");
+        properties.setProperty("workflow.state.event.eventexpression",
+                               "name eq '" + tenant + "-trigger'");
+        properties.setProperty("workflow.state.event.actionmode",
+                               "SEQUENTIAL");
+        properties.setProperty("workflow.state.event.timeout",
+                               "testTimeout");
+        properties.setProperty("workflow.state.event.action.function.name",
+                               "testFunction");
+        properties.setProperty("workflow.state.event.action.retry.match",
+                               "testMatch");
+        properties.setProperty("workflow.state.event.action.retry.nextstate",
+                               "testNextRetryState");
+        return properties;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ *
+ *   Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package org.serverless.workflow.impl;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.serverless.workflow.api.events.TriggerEvent;
+import org.serverless.workflow.impl.manager.WorkflowManagerImpl;
+import org.serverless.workflow.impl.warmup.WarmUpResult;
+import org.serverless.workflow.impl.warmup.WorkflowWarmUp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WorkflowWarmUpTest extends BaseWorkflowTest {
+
+    @Test
+    public void testDefaultWorkload() {
+        WorkflowManagerImpl workflowManager = (WorkflowManagerImpl) getWorkflowManager();
+        workflowManager.setMarkup(getFileContents(getResourcePath("basic/singledelaystate.json")));
+        String json = workflowManager.toJson();
+        assertFalse(workflowManager.isWarmedUp());
+        assertNull(workflowManager.getWarmUpResult());
+
+        WarmUpResult result = workflowManager.warmUp(new WorkflowWarmUp(workflowManager).withIterationsPerRound(5)
+                                                             .withMaxRounds(10)
+                                                             .withTolerance(10.0)
+                                                             .withStableRounds(1));
+
+        assertTrue(workflowManager.isWarmedUp());
+        assertSame(result,
+                   workflowManager.getWarmUpResult());
+        assertTrue(result.isStable());
+        assertEquals(2,
+                     result.getRounds());
+        assertEquals(2,
+                     result.getRoundLatencies().size());
+        assertTrue(result.getDuration().toNanos() > 0);
+        for (WarmUpResult.Stage stage : WarmUpResult.Stage.values()) {
+            assertTrue(result.getStageLatency(stage) > 0);
+        }
+
+        // the current workflow is left alone
+        assertEquals(json,
+                     workflowManager.toJson());
+    }
+
+    @Test
+    public void testConfiguredWorkload() {
+        WorkflowManagerImpl workflowManager = (WorkflowManagerImpl) getWorkflowManager();
+
+        WarmUpResult result = workflowManager.warmUp(new WorkflowWarmUp(workflowManager)
+                                                             .withMarkups(Arrays.asList(getFileContents(getResourcePath("expressions/eventstatestriggers-jexl.json")),
+                                                                                        getFileContents(getResourcePath("expressions/eventstatestriggers-jexl.yml"))))
+                                                             .withTriggerEvents(Arrays.asList(new TriggerEvent().withName("test-trigger-1")))
+                                                             .withIterationsPerRound(2)
+                                                             .withTolerance(0.0)
+                                                             .withMaxRounds(3));
+
+        assertEquals(3,
+                     result.getRounds());
+        assertTrue(result.getStageLatency(WarmUpResult.Stage.EVALUATE) > 0);
+    }
+
+    @Test
+    public void testMaxDuration() {
+        WorkflowManagerImpl workflowManager = (WorkflowManagerImpl) getWorkflowManager();
+
+        WarmUpResult result = workflowManager.warmUp(new WorkflowWarmUp(workflowManager).withMaxDuration(Duration.ZERO));
+
+        assertFalse(result.isStable());
+        assertEquals(0,
+                     result.getRounds());
+        assertSame(result,
+                   workflowManager.getWarmUpResult());
+        assertFalse(workflowManager.isWarmedUp());
+    }
+
+    @Test
+    public void testInvalidSettings() {
+        WorkflowWarmUp workflowWarmUp = new WorkflowWarmUp((WorkflowManagerImpl) getWorkflowManager());
+
+        assertThrows(IllegalArgumentException.class,
+                     () -> workflowWarmUp.withIterationsPerRound(0));
+        assertThrows(IllegalArgumentException.class,
+                     () -> workflowWarmUp.withTolerance(-1.0));
+    }
+}